@@ -0,0 +1,75 @@
+import java.util.Random;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.FastAggregation;
+
+/**
+ * Compares the strategy picked by FastAggregation.adaptiveor with the
+ * priority queue and with bufferedor at several buffer sizes, for a range
+ * of input counts and densities. If the adaptive column is far from the
+ * best column on your machine, the cost model in
+ * FastAggregation.adaptiveBufferSize needs adjusting.
+ */
+public class AggregationCalibration {
+	static final int UNIVERSE = 1 << 22;
+	static final int[] COUNTS = { 8, 64, 512 };
+	static final double[] DENSITIES = { 0.0001, 0.01, 0.3 };
+	static final int[] BUFSIZES = { 1024, 8192, 65536 };
+
+	public static void main(String[] args) {
+		Random r = new Random(1234);
+		System.out.printf("%6s %8s %10s %10s", "n", "density", "heap", "adaptive");
+		for (int b : BUFSIZES)
+			System.out.printf(" %10s", "buf" + b);
+		System.out.printf(" %10s%n", "chosen");
+		for (int n : COUNTS) {
+			for (double density : DENSITIES) {
+				EWAHCompressedBitmap[] bitmaps = generate(r, n, density);
+				System.out.printf("%6d %8.4f", n, density);
+				System.out.printf(" %10.2f", time(bitmaps, -1));
+				System.out.printf(" %10.2f", time(bitmaps, 0));
+				for (int b : BUFSIZES)
+					System.out.printf(" %10.2f", time(bitmaps, b));
+				System.out.printf(" %10d%n",
+						FastAggregation.adaptiveBufferSize(bitmaps));
+			}
+		}
+		System.out.println("times in ms; chosen = 0 means the priority queue");
+	}
+
+	static EWAHCompressedBitmap[] generate(Random r, int n, double density) {
+		EWAHCompressedBitmap[] answer = new EWAHCompressedBitmap[n];
+		int cardinality = (int) (UNIVERSE * density);
+		for (int k = 0; k < n; ++k) {
+			int[] positions = new int[cardinality];
+			for (int j = 0; j < cardinality; ++j)
+				positions[j] = r.nextInt(UNIVERSE);
+			java.util.Arrays.sort(positions);
+			answer[k] = EWAHCompressedBitmap.bitmapOf(positions);
+		}
+		return answer;
+	}
+
+	// bufSize < 0: priority queue, 0: adaptive, otherwise bufferedor
+	static double time(EWAHCompressedBitmap[] bitmaps, int bufSize) {
+		int bogus = 0;
+		for (int warmup = 0; warmup < 3; ++warmup)
+			bogus += run(bitmaps, bufSize).sizeInBytes();
+		final int reps = 5;
+		long start = System.nanoTime();
+		for (int rep = 0; rep < reps; ++rep)
+			bogus += run(bitmaps, bufSize).sizeInBytes();
+		long end = System.nanoTime();
+		if (bogus == 0)
+			System.out.print("");
+		return (end - start) / 1e6 / reps;
+	}
+
+	static EWAHCompressedBitmap run(EWAHCompressedBitmap[] bitmaps, int bufSize) {
+		if (bufSize < 0)
+			return FastAggregation.or(bitmaps);
+		if (bufSize == 0)
+			return FastAggregation.adaptiveor(bitmaps);
+		return FastAggregation.bufferedor(bufSize, bitmaps);
+	}
+}
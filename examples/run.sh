@@ -12,4 +12,8 @@ echo "Running BitSetSimpleExample"
 javac -cp "../target/*" BitSetSimpleExample.java && java -cp ../target/*:. BitSetSimpleExample
 echo
 
+echo "Running AggregationCalibration"
+javac -cp "../target/*" AggregationCalibration.java && java -cp ../target/*:. AggregationCalibration
+echo
+
 rm *.class
@@ -0,0 +1,277 @@
+package com.googlecode.javaewah;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * A cache for the results of aggregations over compressed bitmaps, useful
+ * when the same sub-expressions are computed over and over.
+ *
+ * Results are keyed by the operator and by the identity of the operands (not
+ * by their content). The operands of AND, OR and XOR can be given in any
+ * order. The cache is bounded by the total size of the cached results, as
+ * reported by {@link EWAHCompressedBitmap#sizeInBytes()}; the least recently
+ * used results are evicted first.
+ *
+ * An entry is invalidated when one of its operands, or the cached result
+ * itself, is modified (see {@link EWAHCompressedBitmap#getModificationCount()}).
+ * The cached results are shared: they should not be modified, clone them
+ * if needed.
+ *
+ * The cache keeps references to the operands of its entries. This class is
+ * not thread-safe.
+ *
+ * @since 1.2.4
+ */
+public final class AggregationCache {
+
+    private final long maxSizeInBytes;
+    private long sizeInBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSizeInBytes bound on the total size of the cached results
+     */
+    public AggregationCache(final long maxSizeInBytes) {
+        if (maxSizeInBytes < 0)
+            throw new IllegalArgumentException("The size bound should be non-negative");
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Compute (or retrieve) the logical AND of the bitmaps.
+     *
+     * @param bitmaps input bitmaps (at least one)
+     * @return the (shared) result, should not be modified
+     */
+    public EWAHCompressedBitmap and(final EWAHCompressedBitmap... bitmaps) {
+        return get(AND, true, bitmaps);
+    }
+
+    /**
+     * Compute (or retrieve) the logical OR of the bitmaps.
+     *
+     * @param bitmaps input bitmaps (at least one)
+     * @return the (shared) result, should not be modified
+     */
+    public EWAHCompressedBitmap or(final EWAHCompressedBitmap... bitmaps) {
+        return get(OR, true, bitmaps);
+    }
+
+    /**
+     * Compute (or retrieve) the logical XOR of the bitmaps.
+     *
+     * @param bitmaps input bitmaps (at least one)
+     * @return the (shared) result, should not be modified
+     */
+    public EWAHCompressedBitmap xor(final EWAHCompressedBitmap... bitmaps) {
+        return get(XOR, true, bitmaps);
+    }
+
+    /**
+     * Compute (or retrieve) the logical AND NOT of two bitmaps.
+     *
+     * @param a first bitmap
+     * @param b bitmap to be negated
+     * @return the (shared) result, should not be modified
+     */
+    public EWAHCompressedBitmap andNot(final EWAHCompressedBitmap a,
+                                       final EWAHCompressedBitmap b) {
+        return get(ANDNOT, false, a, b);
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.sizeInBytes = 0;
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return total size of the cached results in bytes
+     */
+    public long sizeInBytes() {
+        return this.sizeInBytes;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of requests that required a computation
+     */
+    public long getMissCount() {
+        return this.misses;
+    }
+
+    private EWAHCompressedBitmap get(final int operator, final boolean commutative,
+                                     final EWAHCompressedBitmap... bitmaps) {
+        if (bitmaps.length == 0)
+            throw new IllegalArgumentException("Need at least one bitmap");
+        final Key key = new Key(operator, commutative, bitmaps);
+        final Entry cached = this.entries.get(key);
+        if (cached != null) {
+            if (cached.isValid(key.operands)) {
+                this.hits++;
+                return cached.result;
+            }
+            remove(key);
+        }
+        this.misses++;
+        final EWAHCompressedBitmap result = compute(operator, bitmaps);
+        final Entry entry = new Entry(key.operands, result);
+        if (entry.sizeInBytes <= this.maxSizeInBytes) {
+            this.entries.put(key, entry);
+            this.sizeInBytes += entry.sizeInBytes;
+            evict();
+        }
+        return result;
+    }
+
+    private static EWAHCompressedBitmap compute(final int operator,
+                                                final EWAHCompressedBitmap... bitmaps) {
+        if (bitmaps.length == 1 && operator != ANDNOT) {
+            try {
+                return bitmaps[0].clone();
+            } catch (CloneNotSupportedException e) {
+                throw new RuntimeException(e); // cannot happen
+            }
+        }
+        switch (operator) {
+            case AND:
+                return EWAHCompressedBitmap.and(bitmaps);
+            case OR:
+                return EWAHCompressedBitmap.or(bitmaps);
+            case XOR:
+                return EWAHCompressedBitmap.xor(bitmaps);
+            case ANDNOT:
+                return bitmaps[0].andNot(bitmaps[1]);
+            default:
+                throw new IllegalStateException("Unknown operator");
+        }
+    }
+
+    private void remove(final Key key) {
+        final Entry e = this.entries.remove(key);
+        if (e != null)
+            this.sizeInBytes -= e.sizeInBytes;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<Key, Entry>> i = this.entries.entrySet().iterator();
+        while (this.sizeInBytes > this.maxSizeInBytes && i.hasNext()) {
+            this.sizeInBytes -= i.next().getValue().sizeInBytes;
+            i.remove();
+        }
+    }
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int XOR = 2;
+    private static final int ANDNOT = 3;
+
+    /**
+     * Operator and operands, compared by identity.
+     */
+    static final class Key {
+        final int operator;
+        final EWAHCompressedBitmap[] operands;
+        private final int hashCode;
+
+        Key(final int operator, final boolean commutative,
+            final EWAHCompressedBitmap... bitmaps) {
+            this.operator = operator;
+            this.operands = bitmaps.clone();
+            if (commutative)
+                sortByIdentity(this.operands);
+            int h = operator;
+            for (EWAHCompressedBitmap b : this.operands)
+                h = 31 * h + System.identityHashCode(b);
+            this.hashCode = h;
+        }
+
+        // insertion sort on the identity hash codes: two distinct bitmaps
+        // sharing a hash code may end up in either order, which can only
+        // cause a cache miss
+        private static void sortByIdentity(final EWAHCompressedBitmap[] a) {
+            for (int i = 1; i < a.length; ++i) {
+                final EWAHCompressedBitmap x = a[i];
+                final int hx = System.identityHashCode(x);
+                int j = i - 1;
+                while (j >= 0 && System.identityHashCode(a[j]) > hx) {
+                    a[j + 1] = a[j];
+                    --j;
+                }
+                a[j + 1] = x;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Key k = (Key) o;
+            if (k.operator != this.operator || k.operands.length != this.operands.length)
+                return false;
+            for (int i = 0; i < this.operands.length; ++i)
+                if (k.operands[i] != this.operands[i])
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * A cached result with the modification counts it depends on.
+     */
+    static final class Entry {
+        final EWAHCompressedBitmap result;
+        final int resultModificationCount;
+        final int[] operandModificationCounts;
+        final long sizeInBytes;
+
+        Entry(final EWAHCompressedBitmap[] operands, final EWAHCompressedBitmap result) {
+            this.result = result;
+            this.resultModificationCount = result.getModificationCount();
+            this.operandModificationCounts = new int[operands.length];
+            for (int i = 0; i < operands.length; ++i)
+                this.operandModificationCounts[i] = operands[i].getModificationCount();
+            this.sizeInBytes = result.sizeInBytes();
+        }
+
+        boolean isValid(final EWAHCompressedBitmap[] operands) {
+            if (this.result.getModificationCount() != this.resultModificationCount)
+                return false;
+            for (int i = 0; i < operands.length; ++i)
+                if (operands[i].getModificationCount() != this.operandModificationCounts[i])
+                    return false;
+            return true;
+        }
+    }
+}
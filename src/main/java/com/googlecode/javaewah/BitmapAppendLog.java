@@ -0,0 +1,242 @@
+package com.googlecode.javaewah;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * <p>Persists a bitmap that only grows at the tail as a log of records
+ * appended to a file. When bits are appended (with set in increasing
+ * order, addWord, addStreamOfEmptyWords, setSizeInBits and so on), only
+ * the words from the last set bit on and the running length word that
+ * covers this bit can change: each {@link #checkpoint()} writes these
+ * words, not the whole bitmap, so that its cost is proportional to the
+ * new data.</p>
+ *
+ * <pre>
+ * FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+ *         StandardOpenOption.READ, StandardOpenOption.WRITE);
+ * BitmapAppendLog log = new BitmapAppendLog(channel); // replays the log
+ * EWAHCompressedBitmap rows = log.getBitmap();
+ * rows.set(nextRow);
+ * log.checkpoint(); // the new row is on disk
+ * </pre>
+ *
+ * <p>Each record carries a CRC32 checksum. When the log is opened, the
+ * records are replayed in order; a record that was only partly written
+ * (after a crash during a checkpoint) is discarded along with anything
+ * after it, so that the bitmap is restored as of the last complete
+ * checkpoint.</p>
+ *
+ * <p>Other modifications (clearing a bit, negating, and so on) can change
+ * words that a checkpoint does not write: after such a modification, call
+ * {@link #fullCheckpoint()} instead. The channel should be open for
+ * reading and writing, and it should remain open while the log is in use.
+ * A log is not thread-safe.</p>
+ *
+ * @since 1.2.4
+ */
+public final class BitmapAppendLog {
+
+    // 0xEA 'L' 'O' 'G'
+    private static final int RECORD_MAGIC = 0xEA4C4F47;
+
+    // magic, size in bits, running length word position, marker index,
+    // marker, first word index and number of words
+    private static final int RECORD_HEADER_SIZE_IN_BYTES = 6 * 4 + 8;
+
+    private static final int CHECKSUM_SIZE_IN_BYTES = 4;
+
+    private final FileChannel channel;
+
+    private final EWAHCompressedBitmap bitmap;
+
+    // end of the last complete record
+    private long end;
+
+    // as of the last checkpoint, position of the word holding the last
+    // set bit and of the running length word covering it: appending
+    // cannot modify the words before, except this running length word
+    private int lastWord;
+
+    private int lastMarker = -1;
+
+    /**
+     * Open the log stored in the file and replay it. An empty file gives
+     * an empty bitmap. An incomplete record following a complete one at
+     * the end of the file is discarded. A non-empty file that does not
+     * start with a complete record is left untouched.
+     *
+     * @param channel the file, open for reading and writing
+     * @throws IOException if the file cannot be read or is not a log
+     */
+    public BitmapAppendLog(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.bitmap = new EWAHCompressedBitmap();
+        recover();
+    }
+
+    /**
+     * The bitmap restored from the log, which later checkpoints persist.
+     *
+     * @return the bitmap
+     */
+    public EWAHCompressedBitmap getBitmap() {
+        return this.bitmap;
+    }
+
+    /**
+     * Size of the log.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return this.end;
+    }
+
+    /**
+     * Append a record with the running length word and the words that
+     * changed since the last checkpoint, and force it to the storage
+     * device. Only valid if the bitmap grew at the tail since the last
+     * checkpoint.
+     *
+     * @throws IOException if the record cannot be written
+     */
+    public void checkpoint() throws IOException {
+        final int from = Math.min(this.lastWord, this.bitmap.buffer.sizeInWords());
+        append(from, this.lastMarker < from ? this.lastMarker : -1);
+        locateLastSetBit();
+    }
+
+    /**
+     * Append a record with all the words of the bitmap, and force it to
+     * the storage device. This is valid whatever the modifications of the
+     * bitmap since the last checkpoint.
+     *
+     * @throws IOException if the record cannot be written
+     */
+    public void fullCheckpoint() throws IOException {
+        append(0, -1);
+        this.lastWord = 0;
+        this.lastMarker = -1;
+        locateLastSetBit();
+    }
+
+    private void append(final int from, final int marker) throws IOException {
+        final Buffer buffer = this.bitmap.buffer;
+        final int sizeInWords = buffer.sizeInWords();
+        final int count = sizeInWords - from;
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE_IN_BYTES
+                + 8 * count + CHECKSUM_SIZE_IN_BYTES);
+        record.putInt(RECORD_MAGIC);
+        record.putInt(this.bitmap.sizeInBits());
+        record.putInt(this.bitmap.runningLengthWordPosition());
+        record.putInt(marker);
+        record.putLong(marker >= 0 ? buffer.getWord(marker) : 0);
+        record.putInt(from);
+        record.putInt(count);
+        for (int k = from; k < sizeInWords; ++k)
+            record.putLong(buffer.getWord(k));
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        long position = this.end;
+        while (record.hasRemaining())
+            position += this.channel.write(record, position);
+        this.channel.force(false);
+        this.end = position;
+    }
+
+    // the words before the last set bit as of the last checkpoint did not
+    // change, so that the search starts from there
+    private void locateLastSetBit() {
+        final Buffer buffer = this.bitmap.buffer;
+        final int sizeInWords = buffer.sizeInWords();
+        final int skipped = this.lastWord;
+        int marker = Math.max(this.lastMarker, 0);
+        while (marker < sizeInWords) {
+            if (RunningLengthWord.getRunningBit(buffer, marker)
+                    && RunningLengthWord.getRunningLength(buffer, marker) > 0) {
+                this.lastMarker = marker;
+                this.lastWord = marker + 1;
+            }
+            final int literals = RunningLengthWord.getNumberOfLiteralWords(buffer, marker);
+            for (int k = marker + literals; k > marker && k >= skipped; --k) {
+                if (buffer.getWord(k) != 0) {
+                    this.lastMarker = marker;
+                    this.lastWord = k;
+                    break;
+                }
+            }
+            marker += literals + 1;
+        }
+    }
+
+    private void recover() throws IOException {
+        final long fileSize = this.channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE_IN_BYTES);
+        int sizeInWords = 0;
+        while (true) {
+            header.clear();
+            if (!readFully(header, this.end, fileSize))
+                break;
+            // a file that does not start with a record is not a log, and
+            // must not be truncated
+            if (this.end == 0 && header.getInt(0) != RECORD_MAGIC)
+                throw new IOException("Not a bitmap log: no record at the start of the file");
+            final int count = header.getInt(RECORD_HEADER_SIZE_IN_BYTES - 4);
+            if (header.getInt(0) != RECORD_MAGIC || count < 0
+                    || count > (fileSize - this.end - RECORD_HEADER_SIZE_IN_BYTES) / 8)
+                break;
+            final ByteBuffer body = ByteBuffer.allocate(8 * count + CHECKSUM_SIZE_IN_BYTES);
+            if (!readFully(body, this.end + RECORD_HEADER_SIZE_IN_BYTES, fileSize))
+                break;
+            final CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, RECORD_HEADER_SIZE_IN_BYTES);
+            crc.update(body.array(), 0, 8 * count);
+            if (body.getInt(8 * count) != (int) crc.getValue())
+                break;
+            final int sizeInBits = header.getInt(4);
+            final int rlwPosition = header.getInt(8);
+            final int marker = header.getInt(12);
+            final int from = header.getInt(24);
+            if (from > sizeInWords || marker >= from || sizeInBits < 0
+                    || rlwPosition < 0 || rlwPosition >= from + count)
+                throw new IOException("Not a bitmap log: inconsistent record at " + this.end);
+            final long[] words = new long[count];
+            body.flip();
+            body.asLongBuffer().get(words);
+            this.bitmap.replaceTail(marker, header.getLong(16), from, words, sizeInBits, rlwPosition);
+            this.end += RECORD_HEADER_SIZE_IN_BYTES + body.capacity();
+            sizeInWords = from + count;
+        }
+        if (this.end > 0 && !this.bitmap.validate())
+            throw new IOException("Not a bitmap log: the replayed bitmap is not well formed");
+        if (this.end == 0 && fileSize > 0)
+            throw new IOException("Not a bitmap log: no complete record in the file");
+        // what follows the last complete record is lost
+        if (fileSize > this.end)
+            this.channel.truncate(this.end);
+        locateLastSetBit();
+    }
+
+    // false if the file ends first
+    private boolean readFully(final ByteBuffer target, long position, final long fileSize) throws IOException {
+        if (position + target.remaining() > fileSize)
+            return false;
+        while (target.hasRemaining()) {
+            final int read = this.channel.read(target, position);
+            if (read < 0)
+                return false;
+            position += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,404 @@
+package com.googlecode.javaewah;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * A Boolean expression over compressed bitmaps. Expressions are built from
+ * leaves ({@link #of(EWAHCompressedBitmap)}) and from the AND, OR, XOR,
+ * ANDNOT, NOT and THRESHOLD operators, and they are evaluated lazily: each
+ * operator becomes an {@link IteratingRLW} pipeline built with
+ * {@link IteratorAggregation}, so that no intermediate bitmap is created.
+ * Only the root is materialized, together with the nodes that appear more
+ * than once in the expression (so that they are computed once) and the
+ * operands of THRESHOLD nodes.
+ *
+ * The operands of an AND node are reordered so that the smallest ones
+ * (as estimated from {@link EWAHCompressedBitmap#sizeInBytes()}) come first.
+ *
+ * The result has the size in bits of the largest leaf; bits beyond the
+ * size in bits of a leaf are considered to be false. NOT is relative to the
+ * expression being evaluated: it yields true bits up to the size in bits of
+ * the root.
+ *
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * BitmapExpression e = BitmapExpression.andNot(
+ *         BitmapExpression.and(BitmapExpression.of(a),
+ *                 BitmapExpression.or(BitmapExpression.of(b), BitmapExpression.of(c))),
+ *         BitmapExpression.of(d));
+ * EWAHCompressedBitmap result = e.evaluate();
+ * </code>
+ * </pre>
+ *
+ * Expressions are immutable, but the leaves are not copied: modifying a
+ * leaf bitmap changes the result of later evaluations.
+ *
+ * @since 1.2.4
+ */
+public abstract class BitmapExpression {
+
+    private final int sizeInBits;
+
+    private final long estimatedSizeInWords;
+
+    // whether a NOT appears in the expression, so that its value extends
+    // to the size in bits of the root being evaluated
+    private final boolean negated;
+
+    private BitmapExpression(final int sizeInBits, final long estimatedSizeInWords,
+                             final boolean negated) {
+        this.sizeInBits = sizeInBits;
+        this.estimatedSizeInWords = estimatedSizeInWords;
+        this.negated = negated;
+    }
+
+    /**
+     * Create a leaf expression.
+     *
+     * @param bitmap the bitmap
+     * @return an expression whose value is the bitmap
+     */
+    public static BitmapExpression of(final EWAHCompressedBitmap bitmap) {
+        return new Leaf(bitmap);
+    }
+
+    /**
+     * Create an AND expression.
+     *
+     * @param operands the operands (at least one)
+     * @return an expression whose value is the intersection of the operands
+     */
+    public static BitmapExpression and(final BitmapExpression... operands) {
+        checkOperands(operands);
+        long estimate = Long.MAX_VALUE;
+        for (BitmapExpression e : operands)
+            estimate = Math.min(estimate, e.estimatedSizeInWords);
+        final BitmapExpression[] sorted = operands.clone();
+        Arrays.sort(sorted, BY_ESTIMATED_SIZE);
+        return new Operator(AND, maxSizeInBits(sorted), estimate, sorted);
+    }
+
+    /**
+     * Create an OR expression.
+     *
+     * @param operands the operands (at least one)
+     * @return an expression whose value is the union of the operands
+     */
+    public static BitmapExpression or(final BitmapExpression... operands) {
+        checkOperands(operands);
+        return new Operator(OR, maxSizeInBits(operands), sumOfEstimates(operands), operands.clone());
+    }
+
+    /**
+     * Create an XOR expression.
+     *
+     * @param operands the operands (at least one)
+     * @return an expression whose value is the symmetric difference of the
+     * operands
+     */
+    public static BitmapExpression xor(final BitmapExpression... operands) {
+        checkOperands(operands);
+        return new Operator(XOR, maxSizeInBits(operands), sumOfEstimates(operands), operands.clone());
+    }
+
+    /**
+     * Create an ANDNOT expression.
+     *
+     * @param a the first operand
+     * @param b the operand to be negated
+     * @return an expression whose value is a and not b
+     */
+    public static BitmapExpression andNot(final BitmapExpression a, final BitmapExpression b) {
+        return new Operator(ANDNOT, Math.max(a.sizeInBits, b.sizeInBits),
+                a.estimatedSizeInWords, a, b);
+    }
+
+    /**
+     * Create a NOT expression. When it is part of a larger expression, the
+     * negation extends to the size in bits of the expression being
+     * evaluated, not only to the size in bits of its operand.
+     *
+     * @param a the operand
+     * @return an expression whose value is the negation of the operand
+     */
+    public static BitmapExpression not(final BitmapExpression a) {
+        return new Operator(NOT, a.sizeInBits, a.estimatedSizeInWords, a);
+    }
+
+    /**
+     * Create a THRESHOLD expression: bits are true where at least t of the
+     * operands have a true bit.
+     *
+     * @param t        the threshold (at least one)
+     * @param operands the operands (at least one)
+     * @return the threshold expression
+     */
+    public static BitmapExpression threshold(final int t, final BitmapExpression... operands) {
+        checkOperands(operands);
+        if (t < 1)
+            throw new IllegalArgumentException("The threshold should be at least one");
+        return new Threshold(t, maxSizeInBits(operands), sumOfEstimates(operands), operands.clone());
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @return the value of the expression
+     */
+    public EWAHCompressedBitmap evaluate() {
+        final EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+        evaluateWithContainer(answer);
+        return answer;
+    }
+
+    /**
+     * Evaluate the expression, writing the result to a container. The
+     * container should be empty. Its size in bits is set to the size in
+     * bits of the expression.
+     *
+     * @param container where the result is written
+     */
+    public void evaluateWithContainer(final BitmapStorage container) {
+        IteratorUtil.materialize(iterator(new Evaluation(this)), container);
+        container.setSizeInBitsWithinLastWord(this.sizeInBits);
+    }
+
+    /**
+     * @return the size in bits of the value of the expression
+     */
+    public int sizeInBits() {
+        return this.sizeInBits;
+    }
+
+    /**
+     * Estimate of the size of the value of the expression, used to order
+     * AND operands.
+     *
+     * @return estimated size in 64-bit words
+     */
+    public long estimatedSizeInWords() {
+        return this.estimatedSizeInWords;
+    }
+
+    // returns an iterator over the value, materializing the shared nodes
+    IteratingRLW iterator(final Evaluation evaluation) {
+        if (!evaluation.isShared(this))
+            return pipeline(evaluation);
+        EWAHCompressedBitmap value = evaluation.materialized.get(this);
+        if (value == null) {
+            value = IteratorUtil.materialize(pipeline(evaluation));
+            evaluation.materialized.put(this, value);
+        }
+        return value.getIteratingRLW();
+    }
+
+    abstract IteratingRLW pipeline(Evaluation evaluation);
+
+    abstract BitmapExpression[] operands();
+
+    // materialized value, as used by threshold nodes
+    EWAHCompressedBitmap materialize(final Evaluation evaluation) {
+        if (evaluation.isShared(this)) {
+            iterator(evaluation);
+            return evaluation.materialized.get(this);
+        }
+        final EWAHCompressedBitmap answer = IteratorUtil.materialize(iterator(evaluation));
+        // the value has at most as many words as its size in bits requires
+        answer.setSizeInBitsWithinLastWord(this.negated ? evaluation.sizeInBits : this.sizeInBits);
+        return answer;
+    }
+
+    private static void checkOperands(final BitmapExpression[] operands) {
+        if (operands.length == 0)
+            throw new IllegalArgumentException("Need at least one operand");
+    }
+
+    private static int maxSizeInBits(final BitmapExpression[] operands) {
+        int answer = 0;
+        for (BitmapExpression e : operands)
+            answer = Math.max(answer, e.sizeInBits);
+        return answer;
+    }
+
+    private static boolean anyNegated(final BitmapExpression[] operands) {
+        for (BitmapExpression e : operands)
+            if (e.negated)
+                return true;
+        return false;
+    }
+
+    private static long sumOfEstimates(final BitmapExpression[] operands) {
+        long answer = 0;
+        for (BitmapExpression e : operands)
+            answer += e.estimatedSizeInWords;
+        return answer;
+    }
+
+    private static final Comparator<BitmapExpression> BY_ESTIMATED_SIZE = new Comparator<BitmapExpression>() {
+        @Override
+        public int compare(BitmapExpression a, BitmapExpression b) {
+            return a.estimatedSizeInWords < b.estimatedSizeInWords ? -1
+                    : a.estimatedSizeInWords == b.estimatedSizeInWords ? 0 : 1;
+        }
+    };
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int XOR = 2;
+    private static final int ANDNOT = 3;
+    private static final int NOT = 4;
+
+    /**
+     * State of a single evaluation: the number of parents of each node and
+     * the values of the shared nodes computed so far.
+     */
+    static final class Evaluation {
+        final IdentityHashMap<BitmapExpression, Integer> parents = new IdentityHashMap<BitmapExpression, Integer>();
+        final IdentityHashMap<BitmapExpression, EWAHCompressedBitmap> materialized = new IdentityHashMap<BitmapExpression, EWAHCompressedBitmap>();
+        final int sizeInBits;
+        final int universeInWords;
+        final int bufSize;
+
+        Evaluation(final BitmapExpression root) {
+            countParents(root);
+            this.sizeInBits = root.sizeInBits;
+            this.universeInWords = (root.sizeInBits + EWAHCompressedBitmap.WORD_IN_BITS - 1)
+                    / EWAHCompressedBitmap.WORD_IN_BITS;
+            this.bufSize = Math.max(1, Math.min(this.universeInWords,
+                    IteratorAggregation.DEFAULT_MAX_BUF_SIZE));
+        }
+
+        private void countParents(final BitmapExpression root) {
+            for (BitmapExpression child : root.operands()) {
+                final Integer count = this.parents.get(child);
+                this.parents.put(child, count == null ? 1 : count + 1);
+                if (count == null)
+                    countParents(child);
+            }
+        }
+
+        boolean isShared(final BitmapExpression e) {
+            final Integer count = this.parents.get(e);
+            return count != null && count > 1;
+        }
+
+        // an iterator over universeInWords words of ones
+        IteratingRLW ones() {
+            final EWAHCompressedBitmap answer = new EWAHCompressedBitmap(1);
+            answer.addStreamOfEmptyWords(true, this.universeInWords);
+            return answer.getIteratingRLW();
+        }
+    }
+
+    static final class Leaf extends BitmapExpression {
+        private static final BitmapExpression[] NO_OPERANDS = new BitmapExpression[0];
+        final EWAHCompressedBitmap bitmap;
+
+        Leaf(final EWAHCompressedBitmap bitmap) {
+            super(bitmap.sizeInBits(), bitmap.sizeInBytes() / (EWAHCompressedBitmap.WORD_IN_BITS / 8), false);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        IteratingRLW iterator(final Evaluation evaluation) {
+            // leaves are never worth materializing
+            return this.bitmap.getIteratingRLW();
+        }
+
+        @Override
+        IteratingRLW pipeline(final Evaluation evaluation) {
+            return this.bitmap.getIteratingRLW();
+        }
+
+        @Override
+        EWAHCompressedBitmap materialize(final Evaluation evaluation) {
+            return this.bitmap;
+        }
+
+        @Override
+        BitmapExpression[] operands() {
+            return NO_OPERANDS;
+        }
+    }
+
+    static final class Operator extends BitmapExpression {
+        final int type;
+        final BitmapExpression[] operands;
+
+        Operator(final int type, final int sizeInBits, final long estimate,
+                 final BitmapExpression... operands) {
+            super(sizeInBits, estimate, type == NOT || anyNegated(operands));
+            this.type = type;
+            this.operands = operands;
+        }
+
+        @Override
+        IteratingRLW pipeline(final Evaluation evaluation) {
+            final int bufSize = evaluation.bufSize;
+            switch (this.type) {
+                case AND:
+                    return IteratorAggregation.bufferedand(bufSize, iterators(evaluation));
+                case OR:
+                    return IteratorAggregation.bufferedor(bufSize, iterators(evaluation));
+                case XOR:
+                    return IteratorAggregation.bufferedxor(bufSize, iterators(evaluation));
+                case ANDNOT:
+                    return IteratorAggregation.bufferedand(bufSize,
+                            this.operands[0].iterator(evaluation),
+                            IteratorAggregation.bufferedxor(bufSize,
+                                    this.operands[1].iterator(evaluation), evaluation.ones()));
+                case NOT:
+                    return IteratorAggregation.bufferedxor(bufSize,
+                            this.operands[0].iterator(evaluation), evaluation.ones());
+                default:
+                    throw new IllegalStateException("Unknown operator");
+            }
+        }
+
+        private IteratingRLW[] iterators(final Evaluation evaluation) {
+            final IteratingRLW[] answer = new IteratingRLW[this.operands.length];
+            for (int k = 0; k < answer.length; ++k)
+                answer[k] = this.operands[k].iterator(evaluation);
+            return answer;
+        }
+
+        @Override
+        BitmapExpression[] operands() {
+            return this.operands;
+        }
+    }
+
+    static final class Threshold extends BitmapExpression {
+        final int t;
+        final BitmapExpression[] operands;
+
+        Threshold(final int t, final int sizeInBits, final long estimate,
+                  final BitmapExpression... operands) {
+            super(sizeInBits, estimate, anyNegated(operands));
+            this.t = t;
+            this.operands = operands;
+        }
+
+        @Override
+        IteratingRLW pipeline(final Evaluation evaluation) {
+            final EWAHCompressedBitmap[] values = new EWAHCompressedBitmap[this.operands.length];
+            for (int k = 0; k < values.length; ++k)
+                values[k] = this.operands[k].materialize(evaluation);
+            return EWAHCompressedBitmap.threshold(this.t, values).getIteratingRLW();
+        }
+
+        @Override
+        BitmapExpression[] operands() {
+            return this.operands;
+        }
+    }
+}
@@ -33,19 +33,14 @@ public class BufferedIterator implements IteratingRLW, Cloneable {
     @Override
     public void discardFirstWords(long x) {
         while (x > 0) {
-            if (this.iteratingBrlw.getRunningLength() > x) {
+            final long size = this.iteratingBrlw.size();
+            if (size > x) {
                 this.iteratingBrlw.discardFirstWords(x);
                 return;
             }
-            this.iteratingBrlw.discardFirstWords(this.iteratingBrlw.getRunningLength());
-            x -= this.iteratingBrlw.getRunningLength();
-            long toDiscard = x > this.iteratingBrlw.getNumberOfLiteralWords()
-                    ? this.iteratingBrlw.getNumberOfLiteralWords()
-                    : x;
-
-            this.iteratingBrlw.discardFirstWords(toDiscard);
-            x -= toDiscard;
-            if ((x > 0) || (this.iteratingBrlw.size() == 0)) {
+            this.iteratingBrlw.discardFirstWords(size);
+            x -= size;
+            if (this.iteratingBrlw.size() == 0) {
                 if (!this.next()) {
                     break;
                 }
@@ -55,14 +50,14 @@ public class BufferedIterator implements IteratingRLW, Cloneable {
 	@Override
 	public void discardLiteralWords(long x) {
 		this.iteratingBrlw.discardLiteralWords(x);
-        if (this.iteratingBrlw.getNumberOfLiteralWords() == 0)
+        if (this.iteratingBrlw.size() == 0)
             this.next();		
 	}
 	
     @Override
     public void discardRunningWords() {
         this.iteratingBrlw.discardRunningWords();
-        if (this.iteratingBrlw.getNumberOfLiteralWords() == 0)
+        if (this.iteratingBrlw.size() == 0)
             this.next();
     }
 
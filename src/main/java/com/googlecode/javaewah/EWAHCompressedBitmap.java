@@ -5,15 +5,23 @@ package com.googlecode.javaewah;
  * Licensed under the Apache License, Version 2.0.
  */
 
+import com.googlecode.javaewah.datastructure.BitSet;
+import com.googlecode.javaewah.datastructure.WordArray;
+import com.googlecode.javaewah.symmetric.ParallelRunningBitmapMerge;
 import com.googlecode.javaewah.symmetric.RunningBitmapMerge;
+import com.googlecode.javaewah.symmetric.SumFuncBitmap;
 import com.googlecode.javaewah.symmetric.ThresholdFuncBitmap;
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
 
 
 /**
@@ -140,18 +148,32 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      * that a bitmap was serialized at this location. It is effectively "deserialized"
      * though the actual content is not copied.
      * This might be useful for implementing memory-mapped bitmaps.
+     * 
+     * Both the legacy format of {@link #serialize(DataOutput)} and the
+     * little-endian format of {@link #serializeLittleEndian(DataOutput)}
+     * are recognized. With the latter, the words are read in little-endian
+     * order, which is the native order of most processors.
      *
      * @param buffer data source
      */
     public EWAHCompressedBitmap(ByteBuffer buffer) {
-        IntBuffer ib = buffer.asIntBuffer();
-        this.sizeInBits = ib.get(0);
-        int sizeInWords = ib.get(1);
-        int rlwposition = ib.get(2 + sizeInWords * 2);
-        LongBuffer lb = buffer.asLongBuffer();
-        lb.position(1);
-        this.buffer = new LongBufferWrapper(lb.slice(), sizeInWords);
-        this.rlw = new RunningLengthWord(this.buffer, rlwposition);
+        if (isLittleEndianSerialization(buffer)) {
+            final ByteBuffer b = littleEndianContent(buffer);
+            this.sizeInBits = b.getInt(8);
+            int sizeInWords = b.getInt(12);
+            b.position(LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES);
+            this.buffer = new LongBufferWrapper(b.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(), sizeInWords);
+            this.rlw = new RunningLengthWord(this.buffer, b.getInt(16));
+        } else {
+            IntBuffer ib = buffer.asIntBuffer();
+            this.sizeInBits = ib.get(0);
+            int sizeInWords = ib.get(1);
+            int rlwposition = ib.get(2 + sizeInWords * 2);
+            LongBuffer lb = buffer.asLongBuffer();
+            lb.position(1);
+            this.buffer = new LongBufferWrapper(lb.slice(), sizeInWords);
+            this.rlw = new RunningLengthWord(this.buffer, rlwposition);
+        }
     }
     
     /**
@@ -224,6 +246,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      *                       be 64)
      */
     public void addWord(final long newData, final int bitsThatMatter) {
+        this.modificationCount++;
         this.sizeInBits += bitsThatMatter;
         if (newData == 0) {
             insertEmptyWord(false);
@@ -264,6 +287,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      */
     @Override
     public void addLiteralWord(final long newData) {
+        this.modificationCount++;
         this.sizeInBits += WORD_IN_BITS;
         insertLiteralWord(newData);
     }
@@ -298,6 +322,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
     @Override
     public void addStreamOfLiteralWords(final Buffer buffer, final int start,
                                         final int number) {
+        this.modificationCount++;
         int leftOverNumber = number;
         while (leftOverNumber > 0) {
             final int numberOfLiteralWords = this.rlw.getNumberOfLiteralWords();
@@ -328,6 +353,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
     public void addStreamOfEmptyWords(final boolean v, long number) {
         if (number == 0)
             return;
+        this.modificationCount++;
         this.sizeInBits += (int)(number * WORD_IN_BITS);
         fastaddStreamOfEmptyWords(v, number);
     }
@@ -344,6 +370,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
     @Override
     public void addStreamOfNegatedLiteralWords(final Buffer buffer,
                                                final int start, final int number) {
+        this.modificationCount++;
         int leftOverNumber = number;
         while (leftOverNumber > 0) {
             final int numberOfLiteralWords = this.rlw.getNumberOfLiteralWords();
@@ -583,6 +610,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      */
     @Override
     public void clear() {
+        this.modificationCount++;
         this.sizeInBits = 0;
         this.buffer.clear();
         this.rlw.position = 0;
@@ -624,7 +652,13 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public void deserialize(DataInput in) throws IOException {
-        this.sizeInBits = in.readInt();
+        this.modificationCount++;
+        final int first = in.readInt();
+        if (first == LITTLE_ENDIAN_MAGIC) {
+            deserializeLittleEndian(in);
+            return;
+        }
+        this.sizeInBits = first;
         int sizeInWords = in.readInt();
         this.buffer.clear();//This creates a buffer with 1 word in it already!
         this.buffer.removeLastWord();
@@ -635,6 +669,417 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
         this.rlw = new RunningLengthWord(this.buffer, in.readInt());
     }
 
+    /**
+     * Serialize in a little-endian format, which starts with a 24-byte
+     * header (the bytes 0xEA 'W' 'A' 'H', a version number, the word size,
+     * the size in bits, the number of words and the position of the
+     * current running length word) followed by the words in little-endian
+     * order. On most processors, this is the native order: a
+     * memory-mapped bitmap in this format (see the ByteBuffer constructor)
+     * does not need to swap the bytes of each word it reads. The words are
+     * aligned on 8 bytes relative to the beginning of the header.
+     * 
+     * The format is recognized by {@link #deserialize(DataInput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeLittleEndian(DataOutput out) throws IOException {
+        out.writeInt(LITTLE_ENDIAN_MAGIC);
+        out.writeByte(LITTLE_ENDIAN_VERSION);
+        out.writeByte(WORD_IN_BITS);
+        out.writeShort(0);
+        out.writeInt(Integer.reverseBytes(this.sizeInBits));
+        final int siw = this.buffer.sizeInWords();
+        out.writeInt(Integer.reverseBytes(siw));
+        out.writeInt(Integer.reverseBytes(this.rlw.position));
+        out.writeInt(0);
+        for(int i = 0; i < siw; ++i) {
+            out.writeLong(Long.reverseBytes(this.buffer.getWord(i)));
+        }
+    }
+
+    /**
+     * Report the number of bytes required to serialize this bitmap with
+     * {@link #serializeLittleEndian(DataOutput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the size in bytes
+     * @since 1.2.4
+     */
+    public int serializedSizeInBytesLittleEndian() {
+        return this.sizeInBytes() + LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Checks whether a bitmap serialized with
+     * {@link #serializeLittleEndian(DataOutput)} (rather than with
+     * {@link #serialize(DataOutput)}) starts at the current position of the
+     * buffer. The buffer is not modified.
+     *
+     * @param buffer the buffer
+     * @return whether the buffer starts with the little-endian header
+     * @since 1.2.4
+     */
+    public static boolean isLittleEndianSerialization(ByteBuffer buffer) {
+        return buffer.remaining() >= LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES
+                && buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(buffer.position()) == LITTLE_ENDIAN_MAGIC;
+    }
+
+    private void deserializeLittleEndian(DataInput in) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != LITTLE_ENDIAN_VERSION)
+            throw new IOException("Unsupported format version: " + version);
+        final int wordSize = in.readUnsignedByte();
+        if (wordSize != WORD_IN_BITS)
+            throw new IOException("Expected 64-bit words, found " + wordSize + "-bit words");
+        in.readShort();
+        this.sizeInBits = Integer.reverseBytes(in.readInt());
+        int sizeInWords = Integer.reverseBytes(in.readInt());
+        final int rlwPosition = Integer.reverseBytes(in.readInt());
+        in.readInt();
+        this.buffer.clear();//This creates a buffer with 1 word in it already!
+        this.buffer.removeLastWord();
+        this.buffer.ensureCapacity(sizeInWords);
+        for(int i = 0; i < sizeInWords; ++i) {
+            this.buffer.push_back(Long.reverseBytes(in.readLong()));
+        }
+        this.rlw = new RunningLengthWord(this.buffer, rlwPosition);
+    }
+
+    // the little-endian content, from the header on, after checking the header
+    private static ByteBuffer littleEndianContent(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.get(4) != LITTLE_ENDIAN_VERSION)
+            throw new IllegalArgumentException("Unsupported format version: " + b.get(4));
+        if (b.get(5) != WORD_IN_BITS)
+            throw new IllegalArgumentException("Expected 64-bit words, found " + b.get(5) + "-bit words");
+        return b;
+    }
+
+    /**
+     * Serialize like {@link #serialize(DataOutput)}, followed by a 16-byte
+     * footer: the bytes 0xEA 'C' 'R' 'C', the cardinality, the number of
+     * running length words and a CRC32 checksum of all the preceding
+     * bytes. The footer is ignored by {@link #deserialize(DataInput)} and
+     * by the ByteBuffer constructor, but it lets {@link #validate(ByteBuffer)}
+     * detect a truncated or corrupted bitmap before it is mapped.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeWithChecksum(DataOutput out) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer chunk = ByteBuffer.allocate(CHECKSUM_CHUNK_SIZE_IN_BYTES);
+        chunk.putInt(this.sizeInBits);
+        final int siw = this.buffer.sizeInWords();
+        chunk.putInt(siw);
+        for(int i = 0; i < siw; ++i) {
+            if (chunk.remaining() < 8)
+                writeChunk(chunk, crc, out);
+            chunk.putLong(this.buffer.getWord(i));
+        }
+        if (chunk.remaining() < 4 * 4)
+            writeChunk(chunk, crc, out);
+        chunk.putInt(this.rlw.position);
+        chunk.putInt(CHECKSUM_FOOTER_MAGIC);
+        chunk.putInt(this.cardinality());
+        chunk.putInt(checkStructure());
+        writeChunk(chunk, crc, out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Report the number of bytes required to serialize this bitmap with
+     * {@link #serializeWithChecksum(DataOutput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the size in bytes
+     * @since 1.2.4
+     */
+    public int serializedSizeInBytesWithChecksum() {
+        return this.serializedSizeInBytes() + CHECKSUM_FOOTER_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Check, in one pass over the running length words, that the bitmap is
+     * well formed: the literal words announced by each running length word
+     * are within the buffer, the last running length word is the current
+     * one and the words do not cover more bits than the size in bits. A
+     * bitmap mapped from a truncated or corrupted buffer can fail
+     * otherwise with an exception deep in an iterator, or give wrong
+     * answers.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return whether the bitmap is well formed
+     * @since 1.2.4
+     */
+    public boolean validate() {
+        return checkStructure() >= 0;
+    }
+
+    /**
+     * Check that a bitmap serialized at the current position of the buffer
+     * (in any of the formats recognized by the ByteBuffer constructor) is
+     * well formed, without copying it: the header must agree with the
+     * length of the buffer and the words must pass {@link #validate()}. If
+     * the bitmap was serialized with {@link #serializeWithChecksum(DataOutput)},
+     * the checksum, the cardinality and the number of running length words
+     * recorded in the footer are also checked. The buffer is not modified.
+     *
+     * @param buffer the buffer
+     * @return whether a well-formed bitmap starts at the current position
+     * @since 1.2.4
+     */
+    public static boolean validate(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.slice();
+        final int length;
+        if (isLittleEndianSerialization(b)) {
+            final int sizeInWords = b.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(12);
+            if (sizeInWords < 1 || sizeInWords > (b.remaining() - LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES) / 8)
+                return false;
+            length = LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES + sizeInWords * 8;
+        } else {
+            if (b.remaining() < 3 * 4)
+                return false;
+            final int sizeInWords = b.getInt(4);
+            if (sizeInWords < 1 || sizeInWords > (b.remaining() - 3 * 4) / 8)
+                return false;
+            length = 3 * 4 + sizeInWords * 8;
+        }
+        final EWAHCompressedBitmap bitmap;
+        try {
+            bitmap = new EWAHCompressedBitmap(b.duplicate());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        final int markers = bitmap.checkStructure();
+        if (markers < 0)
+            return false;
+        if (b.remaining() >= length + CHECKSUM_FOOTER_SIZE_IN_BYTES && b.getInt(length) == CHECKSUM_FOOTER_MAGIC) {
+            final ByteBuffer covered = b.duplicate();
+            covered.limit(length + CHECKSUM_FOOTER_SIZE_IN_BYTES - 4);
+            final CRC32 crc = new CRC32();
+            crc.update(covered);
+            return b.getInt(length + CHECKSUM_FOOTER_SIZE_IN_BYTES - 4) == (int) crc.getValue()
+                    && b.getInt(length + 8) == markers
+                    && b.getInt(length + 4) == bitmap.cardinality();
+        }
+        return true;
+    }
+
+    // number of running length words, or -1 if the bitmap is not well formed
+    private int checkStructure() {
+        if (this.sizeInBits < 0)
+            return -1;
+        final int siw = this.buffer.sizeInWords();
+        int markers = 0;
+        int last = -1;
+        long coveredWords = 0;
+        for (int pos = 0; pos < siw; ++pos) {
+            final int literals = RunningLengthWord.getNumberOfLiteralWords(this.buffer, pos);
+            if (literals > siw - pos - 1)
+                return -1;
+            coveredWords += RunningLengthWord.getRunningLength(this.buffer, pos) + literals;
+            last = pos;
+            ++markers;
+            pos += literals;
+        }
+        if (last != this.rlw.position
+                || coveredWords > (this.sizeInBits + (long) WORD_IN_BITS - 1) / WORD_IN_BITS)
+            return -1;
+        return markers;
+    }
+
+    private static void writeChunk(ByteBuffer chunk, CRC32 crc, DataOutput out) throws IOException {
+        crc.update(chunk.array(), 0, chunk.position());
+        out.write(chunk.array(), 0, chunk.position());
+        chunk.clear();
+    }
+
+    /**
+     * Serialize in a compact format meant for cold storage. Each running
+     * length word is written as two variable-length integers (running
+     * length and running bit, then number of literal words), which takes
+     * a few bytes instead of 8. If packLiterals is true, each literal
+     * word is written as a one-byte mask of its nonzero bytes followed by
+     * these bytes, which pays off when the literal words are sparse;
+     * otherwise the literal words are written as they are.
+     * 
+     * The format is read back with {@link #deserializeCompact(DataInput)}
+     * or, one word at a time, with
+     * {@link #deserializeCompact(DataInput, BitmapStorage)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out          the DataOutput stream
+     * @param packLiterals whether to byte-pack the literal words
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeCompact(DataOutput out, boolean packLiterals) throws IOException {
+        out.writeByte(COMPACT_VERSION);
+        out.writeByte(WORD_IN_BITS);
+        out.writeByte(packLiterals ? COMPACT_PACKED_LITERALS : 0);
+        writeVarLong(out, this.sizeInBits);
+        final int siw = this.buffer.sizeInWords();
+        for (int pos = 0; pos < siw; ) {
+            final long rl = RunningLengthWord.getRunningLength(this.buffer, pos);
+            final boolean rb = RunningLengthWord.getRunningBit(this.buffer, pos);
+            final int literals = RunningLengthWord.getNumberOfLiteralWords(this.buffer, pos);
+            // zero is kept for the end of the bitmap
+            writeVarLong(out, ((rl << 1) | (rb ? 1 : 0)) + 1);
+            writeVarLong(out, literals);
+            for (int k = pos + 1; k <= pos + literals; ++k) {
+                if (packLiterals)
+                    writePackedWord(out, this.buffer.getWord(k));
+                else
+                    out.writeLong(this.buffer.getWord(k));
+            }
+            pos += literals + 1;
+        }
+        out.writeByte(0);
+    }
+
+    /**
+     * Deserialize a bitmap written by
+     * {@link #serializeCompact(DataOutput, boolean)}.
+     *
+     * @param in the DataInput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void deserializeCompact(DataInput in) throws IOException {
+        this.clear();
+        deserializeCompact(in, this);
+    }
+
+    /**
+     * Decode a bitmap written by
+     * {@link #serializeCompact(DataOutput, boolean)}, feeding its words to
+     * the container as they are read: the compressed words need not be
+     * expanded in memory first. For example, a {@link BitCounter}
+     * computes the cardinality of the stored bitmap.
+     *
+     * @param in        the DataInput stream
+     * @param container where the words are written
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public static void deserializeCompact(DataInput in, BitmapStorage container) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != COMPACT_VERSION)
+            throw new IOException("Unsupported format version: " + version);
+        final int wordSize = in.readUnsignedByte();
+        if (wordSize != WORD_IN_BITS)
+            throw new IOException("Expected 64-bit words, found " + wordSize + "-bit words");
+        final boolean packed = (in.readUnsignedByte() & COMPACT_PACKED_LITERALS) != 0;
+        final long sizeInBits = readVarLong(in);
+        if (sizeInBits < 0 || sizeInBits > Integer.MAX_VALUE)
+            throw new IOException("Invalid size in bits: " + sizeInBits);
+        // a corrupt count must not expand into more words than the bitmap has
+        final long sizeInWords = (sizeInBits + WORD_IN_BITS - 1) / WORD_IN_BITS;
+        long words = 0;
+        for (long marker = readVarLong(in); marker != 0; marker = readVarLong(in)) {
+            final long runningLength = (marker - 1) >>> 1;
+            if (runningLength > sizeInWords - words)
+                throw new IOException("Invalid running length: " + runningLength);
+            container.addStreamOfEmptyWords(((marker - 1) & 1) != 0, runningLength);
+            words += runningLength;
+            final long literals = readVarLong(in);
+            if (literals < 0 || literals > sizeInWords - words)
+                throw new IOException("Invalid number of literal words: " + literals);
+            for (long k = 0; k < literals; ++k)
+                container.addWord(packed ? readPackedWord(in) : in.readLong());
+            words += literals;
+        }
+        container.setSizeInBitsWithinLastWord((int) sizeInBits);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    // a mask of the nonzero bytes, then these bytes
+    private static void writePackedWord(DataOutput out, long word) throws IOException {
+        int mask = 0;
+        for (int k = 0; k < 8; ++k)
+            if (((word >>> (8 * k)) & 0xFF) != 0)
+                mask |= 1 << k;
+        out.writeByte(mask);
+        for (int k = 0; k < 8; ++k)
+            if ((mask & (1 << k)) != 0)
+                out.writeByte((int) (word >>> (8 * k)));
+    }
+
+    private static long readPackedWord(DataInput in) throws IOException {
+        final int mask = in.readUnsignedByte();
+        long word = 0;
+        for (int k = 0; k < 8; ++k)
+            if ((mask & (1 << k)) != 0)
+                word |= (long) in.readUnsignedByte() << (8 * k);
+        return word;
+    }
+
+    /**
+     * Position of the current running length word, the only marker that
+     * appending to the bitmap modifies.
+     *
+     * @return the position in the buffer
+     */
+    int runningLengthWordPosition() {
+        return this.rlw.position;
+    }
+
+    /**
+     * Replace the words from the given position on, used to replay the
+     * records of a {@link BitmapAppendLog}.
+     *
+     * @param marker       position of a word to overwrite before the
+     *                     replaced words, or -1
+     * @param markerWord   new value of this word
+     * @param from         position of the first replaced word
+     * @param words        the new words
+     * @param sizeInBits   the new size in bits
+     * @param rlwPosition  the new position of the current running length word
+     */
+    void replaceTail(int marker, long markerWord, int from, long[] words, int sizeInBits, int rlwPosition) {
+        this.modificationCount++;
+        while (this.buffer.sizeInWords() > from)
+            this.buffer.removeLastWord();
+        if (marker >= 0)
+            this.buffer.setWord(marker, markerWord);
+        this.buffer.ensureCapacity(from + words.length);
+        for (long word : words)
+            this.buffer.push_back(word);
+        this.sizeInBits = sizeInBits;
+        this.rlw = new RunningLengthWord(this.buffer, rlwPosition);
+    }
+
     /**
      * Check to see whether the two compressed bitmaps contain the same set
      * bits.
@@ -845,6 +1290,167 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
         return false;
     }
 
+    /**
+     * Returns a new compressed bitmap containing the bitwise AND values of
+     * the current bitmap with an uncompressed bitmap (such as a
+     * {@link com.googlecode.javaewah.datastructure.BitSet} or an
+     * {@link com.googlecode.javaewah.datastructure.ImmutableBitSet}). The
+     * runs of the current bitmap are streamed against the uncompressed
+     * words: no conversion takes place.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param a the uncompressed bitmap (it will not be modified)
+     * @return the EWAH compressed bitmap
+     * @since 1.2.4
+     */
+    public EWAHCompressedBitmap and(final WordArray a) {
+        final EWAHCompressedBitmap container = new EWAHCompressedBitmap(this.buffer.sizeInWords());
+        andWordsToContainer(a, container);
+        container.setSizeInBitsWithinLastWord(Math.max(sizeInBits(), a.getNumberOfWords() * WORD_IN_BITS));
+        return container;
+    }
+
+    /**
+     * Returns a new compressed bitmap containing the bitwise AND NOT values
+     * of the current bitmap with an uncompressed bitmap (such as a
+     * {@link com.googlecode.javaewah.datastructure.BitSet} or an
+     * {@link com.googlecode.javaewah.datastructure.ImmutableBitSet}):
+     * the bits of the current bitmap that are not set in the uncompressed
+     * bitmap.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param a the uncompressed bitmap (it will not be modified)
+     * @return the EWAH compressed bitmap
+     * @since 1.2.4
+     */
+    public EWAHCompressedBitmap andNot(final WordArray a) {
+        final EWAHCompressedBitmap container = new EWAHCompressedBitmap(this.buffer.sizeInWords());
+        final int n = a.getNumberOfWords();
+        final IteratingRLW i = getIteratingRLW();
+        int pos = 0;
+        do {
+            final long rl = i.getRunningLength();
+            if (i.getRunningBit()) {
+                final int end = (int) Math.min(pos + rl, n);
+                for (int k = pos; k < end; ++k)
+                    container.addWord(~a.getWord(k));
+                container.addStreamOfEmptyWords(true, pos + rl - Math.max(pos, end));
+            } else {
+                container.addStreamOfEmptyWords(false, rl);
+            }
+            pos += rl;
+            for (int k = 0; k < i.getNumberOfLiteralWords(); ++k, ++pos)
+                container.addWord(pos < n ? i.getLiteralWordAt(k) & ~a.getWord(pos) : i.getLiteralWordAt(k));
+        } while (i.next());
+        container.setSizeInBitsWithinLastWord(Math.max(sizeInBits(), n * WORD_IN_BITS));
+        return container;
+    }
+
+    /**
+     * Returns a new compressed bitmap containing the bitwise OR values of
+     * the current bitmap with an uncompressed bitmap (such as a
+     * {@link com.googlecode.javaewah.datastructure.BitSet} or an
+     * {@link com.googlecode.javaewah.datastructure.ImmutableBitSet}).
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param a the uncompressed bitmap (it will not be modified)
+     * @return the EWAH compressed bitmap
+     * @since 1.2.4
+     */
+    public EWAHCompressedBitmap or(final WordArray a) {
+        final int n = a.getNumberOfWords();
+        final EWAHCompressedBitmap container = new EWAHCompressedBitmap(this.buffer.sizeInWords() + n);
+        final IteratingRLW i = getIteratingRLW();
+        int pos = 0;
+        do {
+            final long rl = i.getRunningLength();
+            if (i.getRunningBit()) {
+                container.addStreamOfEmptyWords(true, rl);
+            } else {
+                final int end = (int) Math.min(pos + rl, n);
+                for (int k = pos; k < end; ++k)
+                    container.addWord(a.getWord(k));
+                container.addStreamOfEmptyWords(false, pos + rl - Math.max(pos, end));
+            }
+            pos += rl;
+            for (int k = 0; k < i.getNumberOfLiteralWords(); ++k, ++pos)
+                container.addWord(pos < n ? i.getLiteralWordAt(k) | a.getWord(pos) : i.getLiteralWordAt(k));
+        } while (i.next());
+        for (; pos < n; ++pos)
+            container.addWord(a.getWord(pos));
+        container.setSizeInBitsWithinLastWord(Math.max(sizeInBits(), n * WORD_IN_BITS));
+        return container;
+    }
+
+    /**
+     * Returns the cardinality of the result of a bitwise AND of the values
+     * of the current bitmap with an uncompressed bitmap (such as a
+     * {@link com.googlecode.javaewah.datastructure.BitSet} or an
+     * {@link com.googlecode.javaewah.datastructure.ImmutableBitSet}),
+     * without computing the result.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param a the uncompressed bitmap (it will not be modified)
+     * @return the cardinality
+     * @since 1.2.4
+     */
+    public int andCardinality(final WordArray a) {
+        final BitCounter counter = new BitCounter();
+        andWordsToContainer(a, counter);
+        return counter.getCount();
+    }
+
+    /**
+     * Return true if the current bitmap and an uncompressed bitmap (such
+     * as a {@link com.googlecode.javaewah.datastructure.BitSet} or an
+     * {@link com.googlecode.javaewah.datastructure.ImmutableBitSet}) have
+     * both at least one true bit in the same position.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param a the uncompressed bitmap (it will not be modified)
+     * @return whether they intersect
+     * @since 1.2.4
+     */
+    public boolean intersects(final WordArray a) {
+        NonEmptyVirtualStorage nevs = new NonEmptyVirtualStorage();
+        try {
+            andWordsToContainer(a, nevs);
+        } catch (NonEmptyVirtualStorage.NonEmptyException nee) {
+            return true;
+        }
+        return false;
+    }
+
+    // streams the runs of the current bitmap against uncompressed words
+    private void andWordsToContainer(final WordArray a, final BitmapStorage container) {
+        final int n = a.getNumberOfWords();
+        final IteratingRLW i = getIteratingRLW();
+        int pos = 0;
+        do {
+            final long rl = i.getRunningLength();
+            if (i.getRunningBit()) {
+                final int end = (int) Math.min(pos + rl, n);
+                for (int k = pos; k < end; ++k)
+                    container.addWord(a.getWord(k));
+                container.addStreamOfEmptyWords(false, pos + rl - Math.max(pos, end));
+            } else {
+                container.addStreamOfEmptyWords(false, rl);
+            }
+            pos += rl;
+            final int nl = i.getNumberOfLiteralWords();
+            for (int k = 0; k < nl && pos + k < n; ++k)
+                container.addWord(i.getLiteralWordAt(k) & a.getWord(pos + k));
+            if (pos + nl > n)
+                container.addStreamOfEmptyWords(false, pos + nl - Math.max(pos, n));
+            pos += nl;
+        } while (i.next());
+    }
+
     /**
      * Iterator over the set bits (this is what most people will want to use
      * to browse the content if they want an iterator). The location of the
@@ -944,6 +1550,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      */
     @Override
     public void not() {
+        this.modificationCount++;
         final EWAHIterator i = this.getEWAHIterator();
         if (!i.hasNext())
             return;
@@ -1238,6 +1845,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      * @param value the value 
      */
     private boolean set(int i, boolean value) {    	
+        this.modificationCount++;
         if ((i > Integer.MAX_VALUE - WORD_IN_BITS) || (i < 0))
             throw new IndexOutOfBoundsException(
                     "Position should be between 0 and "
@@ -1413,6 +2021,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
     @Override
     public void setSizeInBitsWithinLastWord(final int size) {
         // TODO: This method could be replaced with setSizeInBits
+        this.modificationCount++;
         if ((size + WORD_IN_BITS - 1) / WORD_IN_BITS > (this.sizeInBits + WORD_IN_BITS - 1) / WORD_IN_BITS) {
             setSizeInBits(size,false);
             return;
@@ -1452,6 +2061,7 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
         if (size <= this.sizeInBits) {
             return false;
         }
+        this.modificationCount++;
         if ((this.sizeInBits % WORD_IN_BITS) != 0) {
             if (!defaultValue) {
                 if (this.rlw.getNumberOfLiteralWords() > 0) {
@@ -1578,6 +2188,65 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
         (new RunningBitmapMerge()).symmetric(new ThresholdFuncBitmap(t), container, bitmaps);
     }
 
+    /**
+     * Compute a Boolean threshold function in parallel: bits are true where
+     * at least t bitmaps have a true bit. The word space is split into
+     * ranges that are processed concurrently on the pool (see
+     * {@link ParallelRunningBitmapMerge}).
+     *
+     * @param pool    where the work is done
+     * @param t       the threshold
+     * @param bitmaps input data
+     * @return the aggregated bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap threshold(final ForkJoinPool pool, final int t,
+            final EWAHCompressedBitmap... bitmaps) {
+        final EWAHCompressedBitmap container = new EWAHCompressedBitmap();
+        thresholdWithContainer(pool, container, t, bitmaps);
+        return container;
+    }
+
+    /**
+     * Compute a Boolean threshold function in parallel: bits are true where
+     * at least t bitmaps have a true bit.
+     * 
+     * The content of the container is overwritten.
+     *
+     * @param pool      where the work is done
+     * @param container where we write the aggregated bitmap
+     * @param t         the threshold
+     * @param bitmaps   input data
+     * @since 1.2.4
+     */
+    public static void thresholdWithContainer(final ForkJoinPool pool,
+            final BitmapStorage container, final int t, final EWAHCompressedBitmap... bitmaps) {
+        (new ParallelRunningBitmapMerge(pool)).symmetric(
+                new ThresholdFuncBitmap(t), container, bitmaps);
+    }
+
+    /**
+     * Compute, at each position, the number of bitmaps that have a true bit.
+     * The counts are returned in a bit-sliced manner: the bitmap at index j
+     * has a true bit where the count has a one as its binary digit of
+     * weight 2^j. There are as many bitmaps as there are binary digits in
+     * the number of inputs; they all have the size in bits of the largest
+     * input.
+     *
+     * @param bitmaps input data
+     * @return the slices, least significant first
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap[] sum(final EWAHCompressedBitmap... bitmaps) {
+        final SumFuncBitmap f = new SumFuncBitmap();
+        (new RunningBitmapMerge()).symmetric(f, new EWAHCompressedBitmap(), bitmaps);
+        final EWAHCompressedBitmap[] slices = f.getSlices();
+        final int size = maxSizeInBits(bitmaps);
+        for (EWAHCompressedBitmap slice : slices)
+            slice.setSizeInBitsWithinLastWord(size);
+        return slices;
+    }
+
     /**
      * Populate an array of (sorted integers) corresponding to the location
      * of the set bits.
@@ -1618,6 +2287,110 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
 
     }
 
+    /**
+     * Returns the uncompressed words of the bitmap (bit i is bit i % 64 of
+     * word i / 64, as in java.util.BitSet): there are as many words as
+     * needed to cover sizeInBits() bits. Fills are written with
+     * Arrays.fill and literal words are copied in bulk, so this is much
+     * faster than going through the set bits. A java.util.BitSet can be
+     * obtained with java.util.BitSet.valueOf(bitmap.toLongArray()).
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the words
+     * @since 1.2.4
+     */
+    public long[] toLongArray() {
+        final long[] answer = new long[(this.sizeInBits + WORD_IN_BITS - 1) / WORD_IN_BITS];
+        final long[] words = this.buffer instanceof LongArray ? ((LongArray) this.buffer).words() : null;
+        int pos = 0;
+        final EWAHIterator i = this.getEWAHIterator();
+        while (i.hasNext() && pos < answer.length) {
+            RunningLengthWord localRlw = i.next();
+            final int end = (int) Math.min(pos + localRlw.getRunningLength(), answer.length);
+            if (localRlw.getRunningBit())
+                Arrays.fill(answer, pos, end, ~0l);
+            pos = end;
+            final int number = Math.min(localRlw.getNumberOfLiteralWords(), answer.length - pos);
+            if (words != null) {
+                System.arraycopy(words, i.literalWords(), answer, pos, number);
+            } else {
+                for (int j = 0; j < number; ++j)
+                    answer[pos + j] = i.buffer().getWord(i.literalWords() + j);
+            }
+            pos += number;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns an uncompressed copy of the bitmap (see {@link #toLongArray()}).
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the uncompressed bitmap
+     * @since 1.2.4
+     */
+    public BitSet toBitSet() {
+        return BitSet.valueOf(toLongArray());
+    }
+
+    /**
+     * Returns a compressed bitmap made of the given uncompressed words
+     * (bit i is bit i % 64 of word i / 64, as in java.util.BitSet). Words
+     * made of zeros or ones become fills, and sequences of literal words
+     * are copied in bulk. The size in bits is 64 times the number of
+     * words.
+     *
+     * @param words the words (they will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap fromLongArray(final long[] words) {
+        final EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+        final LongArray source = new LongArray(words);
+        int k = 0;
+        while (k < words.length) {
+            final long w = words[k];
+            int end = k + 1;
+            if (w == 0 || w == ~0l) {
+                while (end < words.length && words[end] == w)
+                    ++end;
+                answer.addStreamOfEmptyWords(w != 0, end - k);
+            } else {
+                while (end < words.length && words[end] != 0 && words[end] != ~0l)
+                    ++end;
+                answer.addStreamOfLiteralWords(source, k, end - k);
+            }
+            k = end;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns a compressed copy of an uncompressed bitmap (see
+     * {@link #fromLongArray(long[])}).
+     *
+     * @param bitset the uncompressed bitmap (it will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap fromBitSet(final BitSet bitset) {
+        return fromLongArray(bitset.toLongArray());
+    }
+
+    /**
+     * Returns a compressed copy of a java.util.BitSet (see
+     * {@link #fromLongArray(long[])}).
+     *
+     * @param bitset the uncompressed bitmap (it will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap fromBitSet(final java.util.BitSet bitset) {
+        return fromLongArray(bitset.toLongArray());
+    }
+
     /**
      * A more detailed string describing the bitmap (useful for debugging).
      * A JSON output is produced.
@@ -1685,6 +2458,8 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      * @param other bitmap to swap with
      */
     public void swap(final EWAHCompressedBitmap other) {
+        this.modificationCount++;
+        other.modificationCount++;
         this.buffer.swap(other.buffer);
 
         int tmp2 = this.rlw.position;
@@ -1696,12 +2471,123 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
         other.sizeInBits = tmp3;
     }
 
+    /**
+     * Number of times this bitmap has been modified. The count changes
+     * whenever the content or the size in bits of the bitmap may have
+     * changed (it can change even when they did not). This can be used to
+     * detect that a bitmap was modified, e.g., to invalidate cached results.
+     *
+     * @return the modification count
+     */
+    public int getModificationCount() {
+        return this.modificationCount;
+    }
+
+    /**
+     * Computes the bitwise AND of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. This is equivalent to
+     * <code>swap(and(a))</code>, but when the buffer of the previous content
+     * is small (at most 256 words), it is kept and recycled by later in-place
+     * operations, so that folding many small bitmaps into an accumulator does
+     * not allocate a new bitmap each time. Larger buffers are released, so
+     * that a bitmap does not hold on to twice its memory; {@link #trim()}
+     * releases the kept buffer as well.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void andInPlace(final EWAHCompressedBitmap a) {
+        final EWAHCompressedBitmap target = scratch();
+        andToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise AND NOT of the current bitmap with some other
+     * bitmap and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void andNotInPlace(final EWAHCompressedBitmap a) {
+        final EWAHCompressedBitmap target = scratch();
+        andNotToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise OR of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void orInPlace(final EWAHCompressedBitmap a) {
+        final EWAHCompressedBitmap target = scratch();
+        orToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise XOR of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void xorInPlace(final EWAHCompressedBitmap a) {
+        final EWAHCompressedBitmap target = scratch();
+        xorToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * For internal use: the bitmap used by the in-place operations.
+     *
+     * @return an empty bitmap whose buffer can be reused
+     */
+    private EWAHCompressedBitmap scratch() {
+        if (this.scratch == null)
+            this.scratch = new EWAHCompressedBitmap(this.buffer.sizeInWords());
+        return this.scratch;
+    }
+
+    /**
+     * For internal use: after an in-place operation, keep the previous
+     * content for the next one only if it is a small array (and not, e.g.,
+     * a wrapped buffer that must not be overwritten).
+     *
+     * @param previous the bitmap holding the previous content
+     */
+    private void recycle(final EWAHCompressedBitmap previous) {
+        if (!(previous.buffer instanceof LongArray)
+                || ((LongArray) previous.buffer).capacity() > MAX_SCRATCH_SIZE_IN_WORDS)
+            this.scratch = null;
+    }
+
     /**
      * Reduce the internal buffer to its minimal allowable size. 
      * This can free memory.
+     * It also releases the buffer kept by the in-place operations.
      */
     public void trim() {
         this.buffer.trim();
+        this.scratch = null;
     }
 
     /**
@@ -2160,6 +3046,16 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      */
     private int sizeInBits = 0;
 
+    /**
+     * scratch: bitmap recycled by the in-place operations (may be null).
+     */
+    private transient EWAHCompressedBitmap scratch = null;
+
+    /**
+     * modificationCount: incremented whenever the bitmap is modified.
+     */
+    private int modificationCount = 0;
+
     /**
      * whether we adjust after some aggregation by adding in zeroes *
      */
@@ -2170,6 +3066,28 @@ public final class EWAHCompressedBitmap implements Cloneable, Externalizable,
      */
     public static final int WORD_IN_BITS = 64;
 
+    // header of the little-endian serialization format: 0xEA 'W' 'A' 'H'
+    private static final int LITTLE_ENDIAN_MAGIC = 0xEA574148;
+
+    private static final int LITTLE_ENDIAN_VERSION = 1;
+
+    private static final int LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES = 24;
+
+    // footer of the checksummed serialization: 0xEA 'C' 'R' 'C'
+    private static final int CHECKSUM_FOOTER_MAGIC = 0xEA435243;
+
+    private static final int CHECKSUM_FOOTER_SIZE_IN_BYTES = 16;
+
+    private static final int CHECKSUM_CHUNK_SIZE_IN_BYTES = 8192;
+
+    // largest buffer kept by the in-place operations
+    private static final int MAX_SCRATCH_SIZE_IN_WORDS = 256;
+
+    private static final int COMPACT_VERSION = 1;
+
+    // flag of the compact serialization: the literal words are byte-packed
+    private static final int COMPACT_PACKED_LITERALS = 1;
+
     static final long serialVersionUID = 1L;
 
 }
@@ -201,6 +201,24 @@ public final class IteratingBufferedRunningLengthWord implements IteratingRLW,
         return this.buffer.getWord(this.literalWordStartPosition + index);
     }
 
+    /**
+     * Gets the array backing the bitmap, if any: the literal words of the
+     * current running length word are then stored from index
+     * {@link #literalWordArrayOffset()}.
+     *
+     * @return the array, or null if the bitmap is not backed by an array
+     */
+    long[] literalWordArray() {
+        return this.buffer instanceof LongArray ? ((LongArray) this.buffer).words() : null;
+    }
+
+    /**
+     * @return the index of the first literal word in the backing array
+     */
+    int literalWordArrayOffset() {
+        return this.literalWordStartPosition;
+    }
+
     /**
      * Gets the number of literal words for the current running length word.
      *
@@ -1,5 +1,7 @@
 package com.googlecode.javaewah;
 
+import com.googlecode.javaewah.datastructure.WordKernels;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -336,6 +338,12 @@ public final class IteratorAggregation {
         }
     }
 
+    // the array holding the literal words of the iterator, or null
+    private static long[] literalWordArray(final IteratingRLW i) {
+        return i instanceof IteratingBufferedRunningLengthWord
+                ? ((IteratingBufferedRunningLengthWord) i).literalWordArray() : null;
+    }
+
     protected static int inplaceor(long[] bitmap, IteratingRLW i) {
 
         int pos = 0;
@@ -347,9 +355,15 @@ public final class IteratorAggregation {
                     java.util.Arrays.fill(bitmap, pos, pos + L, ~0l);
                 pos += L;
                 final int LR = i.getNumberOfLiteralWords();
-
-                for (int k = 0; k < LR; ++k)
-                    bitmap[pos++] |= i.getLiteralWordAt(k);
+                final long[] words = literalWordArray(i);
+                if (words != null) {
+                    WordKernels.or(bitmap, pos, words,
+                            ((IteratingBufferedRunningLengthWord) i).literalWordArrayOffset(), LR);
+                    pos += LR;
+                } else {
+                    for (int k = 0; k < LR; ++k)
+                        bitmap[pos++] |= i.getLiteralWordAt(k);
+                }
                 if (!i.next()) {
                     return pos;
                 }
@@ -388,8 +402,15 @@ public final class IteratorAggregation {
                 }
                 pos += L;
                 final int LR = i.getNumberOfLiteralWords();
-                for (int k = 0; k < LR; ++k)
-                    bitmap[pos++] ^= i.getLiteralWordAt(k);
+                final long[] words = literalWordArray(i);
+                if (words != null) {
+                    WordKernels.xor(bitmap, pos, words,
+                            ((IteratingBufferedRunningLengthWord) i).literalWordArrayOffset(), LR);
+                    pos += LR;
+                } else {
+                    for (int k = 0; k < LR; ++k)
+                        bitmap[pos++] ^= i.getLiteralWordAt(k);
+                }
                 if (!i.next()) {
                     return pos;
                 }
@@ -429,8 +450,15 @@ public final class IteratorAggregation {
                 }
                 pos += L;
                 final int LR = i.getNumberOfLiteralWords();
-                for (int k = 0; k < LR; ++k)
-                    bitmap[pos++] &= i.getLiteralWordAt(k);
+                final long[] words = literalWordArray(i);
+                if (words != null) {
+                    WordKernels.and(bitmap, pos, words,
+                            ((IteratingBufferedRunningLengthWord) i).literalWordArrayOffset(), LR);
+                    pos += LR;
+                } else {
+                    for (int k = 0; k < LR; ++k)
+                        bitmap[pos++] &= i.getLiteralWordAt(k);
+                }
                 if (!i.next()) {
                     return pos;
                 }
@@ -0,0 +1,123 @@
+package com.googlecode.javaewah;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Computes the union of many bitmaps incrementally. Unlike a chain of calls
+ * to {@link EWAHCompressedBitmap#or(EWAHCompressedBitmap)}, intermediate
+ * results are not normalized: literal words made of ones are not turned into
+ * fills, and the size in bits is only adjusted when the result is requested.
+ * Two buffers are recycled, so that adding a bitmap does not allocate once
+ * the buffers are large enough.
+ *
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * LazyOrAccumulator acc = new LazyOrAccumulator();
+ * for (EWAHCompressedBitmap b : bitmaps)
+ *     acc.add(b);
+ * EWAHCompressedBitmap union = acc.finish();
+ * </code>
+ * </pre>
+ *
+ * This class is not thread-safe.
+ *
+ * @since 1.2.4
+ */
+public final class LazyOrAccumulator {
+
+    private EWAHCompressedBitmap accumulator = new EWAHCompressedBitmap();
+
+    private EWAHCompressedBitmap scratch = new EWAHCompressedBitmap();
+
+    private int sizeInBits = 0;
+
+    /**
+     * Add a bitmap to the union. The bitmap is not modified.
+     *
+     * @param a the bitmap
+     */
+    public void add(final EWAHCompressedBitmap a) {
+        this.sizeInBits = Math.max(this.sizeInBits, a.sizeInBits());
+        this.scratch.clear();
+        lazyor(this.accumulator, a, this.scratch);
+        final EWAHCompressedBitmap tmp = this.accumulator;
+        this.accumulator = this.scratch;
+        this.scratch = tmp;
+    }
+
+    /**
+     * Returns the union of the bitmaps added so far, in canonical form and
+     * with the size in bits of the largest bitmap. The accumulator can
+     * still be used afterward.
+     *
+     * @return the union
+     */
+    public EWAHCompressedBitmap finish() {
+        final EWAHCompressedBitmap answer = new EWAHCompressedBitmap(
+                this.accumulator.buffer.sizeInWords());
+        finishToContainer(answer);
+        return answer;
+    }
+
+    /**
+     * Writes the union of the bitmaps added so far to a container, in
+     * canonical form and with the size in bits of the largest bitmap. The
+     * container should be empty.
+     *
+     * @param container where we write
+     */
+    public void finishToContainer(final BitmapStorage container) {
+        // addWord turns literal words made of ones back into fills
+        IteratorUtil.materialize(this.accumulator.getIteratingRLW(), container);
+        container.setSizeInBitsWithinLastWord(this.sizeInBits);
+    }
+
+    /**
+     * Forget the bitmaps added so far, keeping the buffers.
+     */
+    public void clear() {
+        this.accumulator.clear();
+        this.sizeInBits = 0;
+    }
+
+    // like EWAHCompressedBitmap.orToContainer but the literal words are
+    // appended without checking for fills and the size is not adjusted
+    private static void lazyor(final EWAHCompressedBitmap x,
+                               final EWAHCompressedBitmap y,
+                               final EWAHCompressedBitmap container) {
+        final IteratingBufferedRunningLengthWord rlwi = new IteratingBufferedRunningLengthWord(x);
+        final IteratingBufferedRunningLengthWord rlwj = new IteratingBufferedRunningLengthWord(y);
+        while ((rlwi.size() > 0) && (rlwj.size() > 0)) {
+            while ((rlwi.getRunningLength() > 0)
+                    || (rlwj.getRunningLength() > 0)) {
+                final boolean i_is_prey = rlwi.getRunningLength() < rlwj.getRunningLength();
+                final IteratingBufferedRunningLengthWord prey = i_is_prey ? rlwi : rlwj;
+                final IteratingBufferedRunningLengthWord predator = i_is_prey ? rlwj : rlwi;
+                if (predator.getRunningBit()) {
+                    container.addStreamOfEmptyWords(true, predator.getRunningLength());
+                    prey.discardFirstWords(predator.getRunningLength());
+                } else {
+                    final long index = prey.discharge(container, predator.getRunningLength());
+                    container.addStreamOfEmptyWords(false, predator.getRunningLength() - index);
+                }
+                predator.discardRunningWords();
+            }
+            final int nbre_literal = Math.min(rlwi.getNumberOfLiteralWords(),
+                    rlwj.getNumberOfLiteralWords());
+            if (nbre_literal > 0) {
+                for (int k = 0; k < nbre_literal; ++k)
+                    container.addLiteralWord(rlwi.getLiteralWordAt(k) | rlwj.getLiteralWordAt(k));
+                rlwi.discardLiteralWords(nbre_literal);
+                rlwj.discardLiteralWords(nbre_literal);
+            }
+        }
+        final boolean i_remains = rlwi.size() > 0;
+        final IteratingBufferedRunningLengthWord remaining = i_remains ? rlwi : rlwj;
+        remaining.discharge(container);
+    }
+}
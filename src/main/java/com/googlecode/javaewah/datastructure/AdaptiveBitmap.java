@@ -0,0 +1,757 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+import com.googlecode.javaewah.IteratingRLW;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * <p>A bitmap which picks its representation according to its content:</p>
+ * <ul>
+ * <li>a sorted array of integers, for very sparse bitmaps (4 bytes per set
+ * bit, whereas EWAH needs up to 16 bytes for an isolated bit);</li>
+ * <li>an {@link EWAHCompressedBitmap}, for bitmaps having long runs;</li>
+ * <li>a {@link BitSet}, for dense bitmaps without runs.</li>
+ * </ul>
+ *
+ * <p>The representation is reconsidered as the bitmap is modified (after a
+ * number of modifications proportional to the cardinality, so that the cost
+ * is amortized), and a sorted array never grows beyond
+ * {@link #ARRAY_MAX_CARDINALITY} integers. The representation changes only
+ * if the new one is clearly smaller, to avoid going back and forth. The
+ * logical operations (and, or, xor, andNot) work across representations
+ * without converting their inputs, and their result gets the smallest
+ * representation.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @since 1.2.4
+ */
+public final class AdaptiveBitmap implements Cloneable, Iterable<Integer> {
+
+    /**
+     * The possible representations.
+     */
+    public enum Representation {
+        /** sorted array of integers */
+        ARRAY,
+        /** EWAH compressed bitmap */
+        EWAH,
+        /** uncompressed bitmap */
+        BITSET
+    }
+
+    /**
+     * Largest cardinality of a bitmap represented as a sorted array.
+     */
+    public static final int ARRAY_MAX_CARDINALITY = 4096;
+
+    // the representation changes if the new one is smaller by this factor
+    private static final double HYSTERESIS = 0.75;
+
+    private static final int MIN_MODIFICATIONS_BEFORE_CHECK = 64;
+
+    private Representation representation = Representation.ARRAY;
+
+    private int[] array = new int[4];
+
+    private EWAHCompressedBitmap ewah = null;
+
+    private BitSet bitset = null;
+
+    private int cardinality = 0;
+
+    private int modifications = 0;
+
+    /**
+     * Create an empty bitmap.
+     */
+    public AdaptiveBitmap() {
+    }
+
+    private AdaptiveBitmap(final int[] array, final int cardinality) {
+        this.array = array;
+        this.cardinality = cardinality;
+    }
+
+    private AdaptiveBitmap(final EWAHCompressedBitmap ewah) {
+        this.representation = Representation.EWAH;
+        this.array = null;
+        this.ewah = ewah;
+        this.cardinality = ewah.cardinality();
+    }
+
+    private AdaptiveBitmap(final BitSet bitset) {
+        this.representation = Representation.BITSET;
+        this.array = null;
+        this.bitset = bitset;
+        this.cardinality = bitset.cardinality();
+    }
+
+    /**
+     * Return a bitmap with the bit set to true at the given positions.
+     *
+     * @param setBits list of set bit positions (in any order)
+     * @return the bitmap
+     */
+    public static AdaptiveBitmap bitmapOf(final int... setBits) {
+        final int[] sorted = setBits.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            if (sorted[i] < 0)
+                throw new IndexOutOfBoundsException("Negative index: " + sorted[i]);
+            if (n == 0 || sorted[n - 1] != sorted[i])
+                sorted[n++] = sorted[i];
+        }
+        return adapted(new AdaptiveBitmap(sorted, n));
+    }
+
+    /**
+     * Return a bitmap with the same content as an EWAH compressed bitmap.
+     * The EWAH bitmap is copied.
+     *
+     * @param bitmap the source
+     * @return the bitmap
+     */
+    public static AdaptiveBitmap valueOf(final EWAHCompressedBitmap bitmap) {
+        try {
+            return adapted(new AdaptiveBitmap(bitmap.clone()));
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // cannot happen
+        }
+    }
+
+    /**
+     * @return the current representation
+     */
+    public Representation getRepresentation() {
+        return this.representation;
+    }
+
+    /**
+     * Change the representation. It may change again as the bitmap is
+     * modified.
+     *
+     * @param r the new representation
+     */
+    public void convertTo(final Representation r) {
+        if (r == this.representation)
+            return;
+        switch (r) {
+            case ARRAY:
+                this.array = toArray();
+                this.ewah = null;
+                this.bitset = null;
+                break;
+            case EWAH:
+                this.ewah = toEWAHCompressedBitmap();
+                this.array = null;
+                this.bitset = null;
+                break;
+            default:
+                this.bitset = toBitSet();
+                this.array = null;
+                this.ewah = null;
+        }
+        this.representation = r;
+    }
+
+    /**
+     * Switch to the smallest representation (without hysteresis).
+     */
+    public void optimize() {
+        final Representation best = best(false);
+        if (best != this.representation)
+            convertTo(best);
+        this.modifications = 0;
+    }
+
+    /**
+     * @param i the index
+     * @return the value of the bit
+     */
+    public boolean get(final int i) {
+        switch (this.representation) {
+            case ARRAY:
+                return Arrays.binarySearch(this.array, 0, this.cardinality, i) >= 0;
+            case EWAH:
+                return this.ewah.get(i);
+            default:
+                return i >= 0 && i < this.bitset.size() && this.bitset.get(i);
+        }
+    }
+
+    /**
+     * Set the bit at position i to true.
+     *
+     * @param i the index
+     * @throws IndexOutOfBoundsException if i is negative
+     */
+    public void set(final int i) {
+        if (i < 0)
+            throw new IndexOutOfBoundsException("Negative index: " + i);
+        switch (this.representation) {
+            case ARRAY:
+                final int pos = Arrays.binarySearch(this.array, 0, this.cardinality, i);
+                if (pos >= 0)
+                    return;
+                final int insertion = -pos - 1;
+                if (this.cardinality == this.array.length) {
+                    // grow geometrically, but not much beyond the largest array
+                    final int length = this.cardinality <= ARRAY_MAX_CARDINALITY / 2
+                            ? Math.max(4, 2 * this.cardinality)
+                            : Math.max(ARRAY_MAX_CARDINALITY + 1, this.cardinality + this.cardinality / 2);
+                    this.array = Arrays.copyOf(this.array, length);
+                }
+                System.arraycopy(this.array, insertion, this.array, insertion + 1,
+                        this.cardinality - insertion);
+                this.array[insertion] = i;
+                break;
+            case EWAH:
+                if (this.ewah.get(i))
+                    return;
+                this.ewah.set(i);
+                break;
+            default:
+                if (i >= this.bitset.size()) {
+                    // grow geometrically
+                    final long size = Math.max(i + 1L, this.bitset.size() + (long) this.bitset.size() / 2);
+                    this.bitset.resize((int) Math.min(size, Integer.MAX_VALUE));
+                } else if (this.bitset.get(i)) {
+                    return;
+                }
+                this.bitset.set(i);
+        }
+        ++this.cardinality;
+        modified();
+    }
+
+    /**
+     * Set the bit at position i to false.
+     *
+     * @param i the index
+     */
+    public void clear(final int i) {
+        if (!get(i))
+            return;
+        switch (this.representation) {
+            case ARRAY:
+                final int pos = Arrays.binarySearch(this.array, 0, this.cardinality, i);
+                System.arraycopy(this.array, pos + 1, this.array, pos,
+                        this.cardinality - pos - 1);
+                break;
+            case EWAH:
+                this.ewah.clear(i);
+                break;
+            default:
+                this.bitset.unset(i);
+        }
+        --this.cardinality;
+        modified();
+    }
+
+    /**
+     * @return the number of bits set to true
+     */
+    public int cardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * @return true if no bit is set
+     */
+    public boolean isEmpty() {
+        return this.cardinality == 0;
+    }
+
+    /**
+     * @return the memory usage of the current representation, in bytes
+     */
+    public long sizeInBytes() {
+        switch (this.representation) {
+            case ARRAY:
+                return 4L * this.array.length;
+            case EWAH:
+                return this.ewah.sizeInBytes();
+            default:
+                return this.bitset.size() / 8;
+        }
+    }
+
+    /**
+     * @return an iterator over the set bits, in increasing order
+     */
+    public IntIterator intIterator() {
+        switch (this.representation) {
+            case ARRAY:
+                final int[] a = this.array;
+                final int n = this.cardinality;
+                return new IntIterator() {
+                    int pos = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.pos < n;
+                    }
+
+                    @Override
+                    public int next() {
+                        return a[this.pos++];
+                    }
+                };
+            case EWAH:
+                return this.ewah.intIterator();
+            default:
+                return this.bitset.intIterator();
+        }
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        final IntIterator i = intIterator();
+        return new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                return i.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return the set bits, in increasing order
+     */
+    public int[] toArray() {
+        if (this.representation == Representation.ARRAY)
+            return Arrays.copyOf(this.array, this.cardinality);
+        final int[] answer = new int[this.cardinality];
+        final IntIterator i = intIterator();
+        for (int k = 0; k < answer.length; ++k)
+            answer[k] = i.next();
+        return answer;
+    }
+
+    /**
+     * @return a new EWAH compressed bitmap with the same content
+     */
+    public EWAHCompressedBitmap toEWAHCompressedBitmap() {
+        switch (this.representation) {
+            case ARRAY:
+                final EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+                for (int k = 0; k < this.cardinality; ++k)
+                    answer.set(this.array[k]);
+                return answer;
+            case EWAH:
+                try {
+                    return this.ewah.clone();
+                } catch (CloneNotSupportedException e) {
+                    throw new RuntimeException(e); // cannot happen
+                }
+            default:
+                final long[] data = this.bitset.data;
+                int words = data.length;
+                while (words > 0 && data[words - 1] == 0)
+                    --words;
+                final EWAHCompressedBitmap e = new EWAHCompressedBitmap();
+                for (int k = 0; k < words; ++k)
+                    e.addWord(data[k]);
+                return e;
+        }
+    }
+
+    /**
+     * @return a new uncompressed bitmap with the same content
+     */
+    public BitSet toBitSet() {
+        switch (this.representation) {
+            case ARRAY:
+                final BitSet answer = new BitSet(this.cardinality == 0 ? 0 : this.array[this.cardinality - 1] + 1);
+                for (int k = 0; k < this.cardinality; ++k)
+                    answer.set(this.array[k]);
+                return answer;
+            case EWAH:
+                final BitSet b = new BitSet(this.ewah.sizeInBits());
+                b.or(this.ewah);
+                return b;
+            default:
+                return this.bitset.clone();
+        }
+    }
+
+    /**
+     * Compute the intersection with another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap
+     */
+    public AdaptiveBitmap and(final AdaptiveBitmap other) {
+        final AdaptiveBitmap x = this.representation.ordinal() <= other.representation.ordinal() ? this : other;
+        final AdaptiveBitmap y = x == this ? other : this;
+        switch (x.representation) {
+            case ARRAY:
+                return adapted(x.filter(y, true));
+            case EWAH:
+                if (y.representation == Representation.EWAH)
+                    return adapted(new AdaptiveBitmap(x.ewah.and(y.ewah)));
+                final BitSet b = y.bitset.clone();
+                b.and(x.ewah);
+                return adapted(new AdaptiveBitmap(b));
+            default:
+                final BitSet shorter = x.bitset.size() <= y.bitset.size() ? x.bitset : y.bitset;
+                final BitSet answer = shorter.clone();
+                answer.and(shorter == x.bitset ? y.bitset : x.bitset);
+                return adapted(new AdaptiveBitmap(answer));
+        }
+    }
+
+    /**
+     * Compute the union with another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap
+     */
+    public AdaptiveBitmap or(final AdaptiveBitmap other) {
+        return orOrXor(other, false);
+    }
+
+    /**
+     * Compute the symmetric difference with another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap
+     */
+    public AdaptiveBitmap xor(final AdaptiveBitmap other) {
+        return orOrXor(other, true);
+    }
+
+    /**
+     * Compute the difference with another bitmap (the bits of this bitmap
+     * that are not set in the other one).
+     *
+     * @param other the other bitmap
+     * @return a new bitmap
+     */
+    public AdaptiveBitmap andNot(final AdaptiveBitmap other) {
+        switch (this.representation) {
+            case ARRAY:
+                return adapted(filter(other, false));
+            case EWAH:
+                switch (other.representation) {
+                    case ARRAY:
+                        return adapted(new AdaptiveBitmap(this.ewah.andNot(other.toEWAHCompressedBitmap())));
+                    case EWAH:
+                        return adapted(new AdaptiveBitmap(this.ewah.andNot(other.ewah)));
+                    default:
+                        return adapted(new AdaptiveBitmap(this.ewah.andNot(other.bitset)));
+                }
+            default:
+                final BitSet answer = this.bitset.clone();
+                switch (other.representation) {
+                    case ARRAY:
+                        for (int k = 0; k < other.cardinality && other.array[k] < answer.size(); ++k)
+                            answer.unset(other.array[k]);
+                        break;
+                    case EWAH:
+                        answer.andNot(other.ewah);
+                        break;
+                    default:
+                        answer.andNot(other.bitset);
+                }
+                return adapted(new AdaptiveBitmap(answer));
+        }
+    }
+
+    @Override
+    public AdaptiveBitmap clone() {
+        final AdaptiveBitmap answer;
+        switch (this.representation) {
+            case ARRAY:
+                answer = new AdaptiveBitmap(Arrays.copyOf(this.array, Math.max(this.cardinality, 4)), this.cardinality);
+                break;
+            case EWAH:
+                answer = new AdaptiveBitmap(toEWAHCompressedBitmap());
+                break;
+            default:
+                answer = new AdaptiveBitmap(this.bitset.clone());
+        }
+        answer.modifications = this.modifications;
+        return answer;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof AdaptiveBitmap))
+            return false;
+        final AdaptiveBitmap other = (AdaptiveBitmap) o;
+        if (other.cardinality != this.cardinality)
+            return false;
+        final IntIterator i = intIterator();
+        final IntIterator j = other.intIterator();
+        while (i.hasNext())
+            if (i.next() != j.next())
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        final IntIterator i = intIterator();
+        while (i.hasNext())
+            h = 31 * h + i.next();
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder answer = new StringBuilder();
+        answer.append(this.representation).append("{");
+        final IntIterator i = intIterator();
+        while (i.hasNext()) {
+            answer.append(i.next());
+            if (i.hasNext())
+                answer.append(",");
+        }
+        return answer.append("}").toString();
+    }
+
+    private AdaptiveBitmap orOrXor(final AdaptiveBitmap other, final boolean xor) {
+        final AdaptiveBitmap x = this.representation.ordinal() <= other.representation.ordinal() ? this : other;
+        final AdaptiveBitmap y = x == this ? other : this;
+        switch (x.representation) {
+            case ARRAY:
+                switch (y.representation) {
+                    case ARRAY:
+                        return adapted(x.merge(y, xor));
+                    case EWAH:
+                        final EWAHCompressedBitmap e = x.toEWAHCompressedBitmap();
+                        return adapted(new AdaptiveBitmap(xor ? y.ewah.xor(e) : y.ewah.or(e)));
+                    default:
+                        final BitSet b = y.bitset.clone();
+                        if (x.cardinality > 0 && x.array[x.cardinality - 1] >= b.size())
+                            b.resize(x.array[x.cardinality - 1] + 1);
+                        for (int k = 0; k < x.cardinality; ++k)
+                            if (xor)
+                                b.flip(x.array[k]);
+                            else
+                                b.set(x.array[k]);
+                        return adapted(new AdaptiveBitmap(b));
+                }
+            case EWAH:
+                if (y.representation == Representation.EWAH)
+                    return adapted(new AdaptiveBitmap(xor ? x.ewah.xor(y.ewah) : x.ewah.or(y.ewah)));
+                final BitSet b = y.bitset.clone();
+                if (xor)
+                    b.xor(x.ewah);
+                else
+                    b.or(x.ewah);
+                return adapted(new AdaptiveBitmap(b));
+            default:
+                final BitSet longer = x.bitset.size() >= y.bitset.size() ? x.bitset : y.bitset;
+                final BitSet answer = longer.clone();
+                if (xor)
+                    answer.xor(longer == x.bitset ? y.bitset : x.bitset);
+                else
+                    answer.or(longer == x.bitset ? y.bitset : x.bitset);
+                return adapted(new AdaptiveBitmap(answer));
+        }
+    }
+
+    // the elements of this array which are (or are not) in the other bitmap
+    private AdaptiveBitmap filter(final AdaptiveBitmap other, final boolean keepIfPresent) {
+        final int[] answer = new int[this.cardinality];
+        int n = 0;
+        switch (other.representation) {
+            case ARRAY:
+                int j = 0;
+                for (int k = 0; k < this.cardinality; ++k) {
+                    final int v = this.array[k];
+                    while (j < other.cardinality && other.array[j] < v)
+                        ++j;
+                    if ((j < other.cardinality && other.array[j] == v) == keepIfPresent)
+                        answer[n++] = v;
+                }
+                break;
+            case EWAH:
+                final EWAHCursor c = new EWAHCursor(other.ewah);
+                for (int k = 0; k < this.cardinality; ++k)
+                    if (c.get(this.array[k]) == keepIfPresent)
+                        answer[n++] = this.array[k];
+                break;
+            default:
+                for (int k = 0; k < this.cardinality; ++k)
+                    if (other.get(this.array[k]) == keepIfPresent)
+                        answer[n++] = this.array[k];
+        }
+        return new AdaptiveBitmap(answer, n);
+    }
+
+    // union or symmetric difference of two arrays
+    private AdaptiveBitmap merge(final AdaptiveBitmap other, final boolean xor) {
+        final int[] answer = new int[this.cardinality + other.cardinality];
+        int i = 0, j = 0, n = 0;
+        while (i < this.cardinality && j < other.cardinality) {
+            final int a = this.array[i];
+            final int b = other.array[j];
+            if (a < b) {
+                answer[n++] = a;
+                ++i;
+            } else if (b < a) {
+                answer[n++] = b;
+                ++j;
+            } else {
+                if (!xor)
+                    answer[n++] = a;
+                ++i;
+                ++j;
+            }
+        }
+        while (i < this.cardinality)
+            answer[n++] = this.array[i++];
+        while (j < other.cardinality)
+            answer[n++] = other.array[j++];
+        return new AdaptiveBitmap(answer, n);
+    }
+
+    private void modified() {
+        if (this.representation == Representation.ARRAY && this.cardinality > ARRAY_MAX_CARDINALITY) {
+            convertTo(best(false));
+            this.modifications = 0;
+            return;
+        }
+        if (++this.modifications >= Math.max(MIN_MODIFICATIONS_BEFORE_CHECK, this.cardinality / 4)) {
+            final Representation best = best(true);
+            if (best != this.representation)
+                convertTo(best);
+            this.modifications = 0;
+        }
+    }
+
+    private static AdaptiveBitmap adapted(final AdaptiveBitmap b) {
+        b.optimize();
+        return b;
+    }
+
+    // the smallest representation
+    private Representation best(final boolean hysteresis) {
+        final long arrayBytes = this.cardinality > ARRAY_MAX_CARDINALITY ? Long.MAX_VALUE : 4L * this.cardinality;
+        final long bitsetBytes = 8L * numberOfWords();
+        final long ewahBytes = this.representation == Representation.EWAH ? this.ewah.sizeInBytes() : 8L * estimatedEWAHSizeInWords();
+        Representation best = Representation.ARRAY;
+        long bestBytes = arrayBytes;
+        if (ewahBytes < bestBytes) {
+            best = Representation.EWAH;
+            bestBytes = ewahBytes;
+        }
+        if (bitsetBytes < bestBytes) {
+            best = Representation.BITSET;
+            bestBytes = bitsetBytes;
+        }
+        if (hysteresis && best != this.representation) {
+            final long current = this.representation == Representation.ARRAY ? arrayBytes
+                    : this.representation == Representation.EWAH ? ewahBytes : bitsetBytes;
+            if (bestBytes >= HYSTERESIS * current)
+                return this.representation;
+        }
+        return best;
+    }
+
+    // number of words needed by an uncompressed bitmap
+    private int numberOfWords() {
+        switch (this.representation) {
+            case ARRAY:
+                return this.cardinality == 0 ? 0 : this.array[this.cardinality - 1] / 64 + 1;
+            case EWAH:
+                return (this.ewah.sizeInBits() + 63) / 64;
+            default:
+                final long[] data = this.bitset.data;
+                int words = data.length;
+                while (words > 0 && data[words - 1] == 0)
+                    --words;
+                return words;
+        }
+    }
+
+    // an estimate of the size of the EWAH representation (markers and
+    // literal words)
+    private int estimatedEWAHSizeInWords() {
+        int words = 1;
+        if (this.representation == Representation.ARRAY) {
+            int previousWord = -1;
+            for (int k = 0; k < this.cardinality; ++k) {
+                final int w = this.array[k] / 64;
+                if (w == previousWord)
+                    continue;
+                // a literal word, with a new marker after a gap
+                words += w > previousWord + 1 ? 2 : 1;
+                previousWord = w;
+            }
+            return words;
+        }
+        final long[] data = this.bitset.data;
+        final int n = numberOfWords();
+        boolean inRun = false;
+        long runWord = 0;
+        for (int k = 0; k < n; ++k) {
+            final long w = data[k];
+            if (w == 0 || w == ~0L) {
+                if (!inRun || w != runWord)
+                    ++words;
+                inRun = true;
+                runWord = w;
+            } else {
+                ++words;
+                inRun = false;
+            }
+        }
+        return words;
+    }
+
+    // membership queries in increasing order over an EWAH bitmap
+    private static final class EWAHCursor {
+        private final IteratingRLW iterator;
+
+        // position (in words) of the beginning of the current marker
+        private long position = 0;
+
+        private boolean done = false;
+
+        EWAHCursor(final EWAHCompressedBitmap bitmap) {
+            this.iterator = bitmap.getIteratingRLW();
+        }
+
+        boolean get(final int bit) {
+            final long w = bit >>> 6;
+            while (!this.done) {
+                final long size = this.iterator.getRunningLength() + this.iterator.getNumberOfLiteralWords();
+                if (w < this.position + size) {
+                    final long offset = w - this.position;
+                    if (offset < this.iterator.getRunningLength())
+                        return this.iterator.getRunningBit();
+                    final long word = this.iterator.getLiteralWordAt((int) (offset - this.iterator.getRunningLength()));
+                    return (word & (1L << bit)) != 0;
+                }
+                this.position += size;
+                this.done = !this.iterator.next();
+            }
+            return false;
+        }
+    }
+}
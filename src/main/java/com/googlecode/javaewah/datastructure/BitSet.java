@@ -1,6 +1,8 @@
 package com.googlecode.javaewah.datastructure;
 
+import com.googlecode.javaewah.EWAHCompressedBitmap;
 import com.googlecode.javaewah.IntIterator;
+import com.googlecode.javaewah.IteratingRLW;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.Externalizable;
@@ -51,6 +53,11 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      * @param bs other bitset
      */
     public void and(WordArray bs) {
+        if (bs instanceof BitSet) {
+            WordKernels.and(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
+            return;
+        }
         for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
             this.data[k] &= bs.getWord(k);
         }
@@ -66,6 +73,9 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      * @return cardinality
      */
     public int andcardinality(WordArray bs) {
+        if (bs instanceof BitSet)
+            return WordKernels.andCardinality(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
         int sum = 0;
         for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
             sum += Long.bitCount(this.getWord(k) & bs.getWord(k));
@@ -82,6 +92,11 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      * @param bs other bitset
      */
     public void andNot(WordArray bs) {
+        if (bs instanceof BitSet) {
+            WordKernels.andNot(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
+            return;
+        }
         for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
             this.data[k] &= ~bs.getWord(k);
         }
@@ -94,6 +109,9 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      * @return cardinality
      */
     public int andNotcardinality(WordArray bs) {
+        if (bs instanceof BitSet)
+            return WordKernels.andNotCardinality(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
         int sum = 0;
         for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
             sum += Long.bitCount(this.getWord(k) & (~bs.getWord(k)));
@@ -107,10 +125,7 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      * @return the number of bits
      */
     public int cardinality() {
-        int sum = 0;
-        for (long l : this.data)
-            sum += Long.bitCount(l);
-        return sum;
+        return WordKernels.cardinality(this.data, 0, this.data.length);
     }
 
     /**
@@ -374,7 +389,11 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
     public void or(WordArray bs) {
         if (this.getNumberOfWords() < bs.getNumberOfWords())
             this.resize(bs.getNumberOfWords()*64);
-        for (int k = 0; k < this.getNumberOfWords(); ++k) {
+        if (bs instanceof BitSet) {
+            WordKernels.or(this.data, 0, ((BitSet) bs).data, 0, bs.getNumberOfWords());
+            return;
+        }
+        for (int k = 0; k < bs.getNumberOfWords(); ++k) {
             this.data[k] |= bs.getWord(k);
         }
     }
@@ -389,8 +408,13 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      */
     public int orcardinality(WordArray bs) {
         int sum = 0;
-        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
-            sum += Long.bitCount(this.getWord(k) | bs.getWord(k));
+        if (bs instanceof BitSet) {
+            sum = WordKernels.orCardinality(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
+        } else {
+            for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
+                sum += Long.bitCount(this.getWord(k) | bs.getWord(k));
+            }
         }
         WordArray longer = bs.getNumberOfWords() < this.getNumberOfWords() ? this : bs;
         for (int k = Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); k < Math
@@ -591,7 +615,11 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
     public void xor(WordArray bs) {
         if (this.getNumberOfWords() < bs.getNumberOfWords())
             this.resize(bs.getNumberOfWords()*64);
-        for (int k = 0; k < this.getNumberOfWords(); ++k) {
+        if (bs instanceof BitSet) {
+            WordKernels.xor(this.data, 0, ((BitSet) bs).data, 0, bs.getNumberOfWords());
+            return;
+        }
+        for (int k = 0; k < bs.getNumberOfWords(); ++k) {
             this.data[k] ^= bs.getWord(k);
         }
     }
@@ -606,8 +634,13 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
      */
     public int xorcardinality(WordArray bs) {
         int sum = 0;
-        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
-            sum += Long.bitCount(this.getWord(k) ^ bs.getWord(k));
+        if (bs instanceof BitSet) {
+            sum = WordKernels.xorCardinality(this.data, 0, ((BitSet) bs).data, 0,
+                    Math.min(this.getNumberOfWords(), bs.getNumberOfWords()));
+        } else {
+            for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k) {
+                sum += Long.bitCount(this.getWord(k) ^ bs.getWord(k));
+            }
         }
         WordArray longer = bs.getNumberOfWords() < this.getNumberOfWords() ? this : bs;
 
@@ -619,6 +652,115 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
 
         return sum;
     }
+    /**
+     * Compute bitwise AND with a compressed bitmap, in place. The runs of
+     * the compressed bitmap are streamed against the words of this bitmap:
+     * no conversion takes place. Bits beyond the compressed bitmap are
+     * cleared.
+     *
+     * @param a compressed bitmap (it will not be modified)
+     */
+    public void and(EWAHCompressedBitmap a) {
+        combine(a, AND);
+    }
+
+    /**
+     * Compute bitwise AND NOT with a compressed bitmap, in place: the bits
+     * set in the compressed bitmap are cleared.
+     *
+     * @param a compressed bitmap (it will not be modified)
+     */
+    public void andNot(EWAHCompressedBitmap a) {
+        combine(a, ANDNOT);
+    }
+
+    /**
+     * Compute bitwise OR with a compressed bitmap, in place. The bitmap
+     * grows if needed.
+     *
+     * @param a compressed bitmap (it will not be modified)
+     */
+    public void or(EWAHCompressedBitmap a) {
+        if (this.size() < a.sizeInBits())
+            this.resize(a.sizeInBits());
+        combine(a, OR);
+    }
+
+    /**
+     * Compute bitwise XOR with a compressed bitmap, in place. The bitmap
+     * grows if needed.
+     *
+     * @param a compressed bitmap (it will not be modified)
+     */
+    public void xor(EWAHCompressedBitmap a) {
+        if (this.size() < a.sizeInBits())
+            this.resize(a.sizeInBits());
+        combine(a, XOR);
+    }
+
+    /**
+     * Compute cardinality of bitwise AND with a compressed bitmap.
+     * 
+     * The bitmaps are not modified.
+     *
+     * @param a compressed bitmap
+     * @return cardinality
+     */
+    public int andcardinality(EWAHCompressedBitmap a) {
+        return a.andCardinality(this);
+    }
+
+    /**
+     * Checks whether two bitmaps intersect.
+     *
+     * @param a compressed bitmap
+     * @return true if they intersect
+     */
+    public boolean intersects(EWAHCompressedBitmap a) {
+        return a.intersects(this);
+    }
+
+    private static final int AND = 0;
+    private static final int ANDNOT = 1;
+    private static final int OR = 2;
+    private static final int XOR = 3;
+
+    private void combine(EWAHCompressedBitmap a, int op) {
+        final IteratingRLW i = a.getIteratingRLW();
+        int pos = 0;
+        do {
+            final int end = (int) Math.min(pos + i.getRunningLength(), this.data.length);
+            if (i.getRunningBit()) {
+                if (op == AND)
+                    pos = end;
+                else if (op == ANDNOT)
+                    Arrays.fill(this.data, pos, end, 0L);
+                else if (op == OR)
+                    Arrays.fill(this.data, pos, end, ~0L);
+                else
+                    for (; pos < end; ++pos)
+                        this.data[pos] = ~this.data[pos];
+            } else if (op == AND) {
+                Arrays.fill(this.data, pos, end, 0L);
+            }
+            pos = end;
+            final int nl = Math.min(i.getNumberOfLiteralWords(), this.data.length - pos);
+            for (int k = 0; k < nl; ++k, ++pos) {
+                final long w = i.getLiteralWordAt(k);
+                if (op == AND)
+                    this.data[pos] &= w;
+                else if (op == ANDNOT)
+                    this.data[pos] &= ~w;
+                else if (op == OR)
+                    this.data[pos] |= w;
+                else
+                    this.data[pos] ^= w;
+            }
+        } while (pos < this.data.length && i.next());
+        if (op == AND)
+            Arrays.fill(this.data, pos, this.data.length, 0L);
+    }
+
 		@Override
 		public int getNumberOfWords() {
 			return data.length;
@@ -647,6 +789,31 @@ public class BitSet implements Cloneable, Iterable<Integer>, Externalizable ,Wor
       return a;
     }
 		
+    /**
+     * Return a bitmap made of the given 64-bit words (bit i is bit i % 64
+     * of word i / 64, as in java.util.BitSet). The words are copied.
+     *
+     * @param words the words
+     * @return the bitmap
+     * @since 1.2.4
+     */
+    public static BitSet valueOf(long[] words) {
+        BitSet a = new BitSet();
+        a.data = words.clone();
+        return a;
+    }
+
+    /**
+     * Return a copy of the 64-bit words of the bitmap (bit i is bit i % 64
+     * of word i / 64, as in java.util.BitSet).
+     *
+     * @return the words
+     * @since 1.2.4
+     */
+    public long[] toLongArray() {
+        return this.data.clone();
+    }
+
     @Override
     public String toString() {
         StringBuilder answer = new StringBuilder();
@@ -0,0 +1,227 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A fixed-size bitmap that many threads can update concurrently. Bits
+ * are set, cleared and flipped with compare-and-swap operations on an
+ * {@link AtomicLongArray}: no lock is taken and updates to different bits
+ * of the same word do not get lost.</p>
+ *
+ * <p>A consistent copy (a state of the bitmap at some instant, including
+ * or excluding each concurrent update as a whole) is obtained with
+ * {@link #snapshot()} or {@link #toEWAHCompressedBitmap()}. The copy is
+ * optimistic: it is made again if an update took place meanwhile. If
+ * updates keep interfering, the writers are briefly held back until a copy
+ * succeeds.</p>
+ *
+ * <pre>
+ * ConcurrentBitSet deleted = new ConcurrentBitSet(numberOfRows);
+ * // from any thread
+ * deleted.set(row);
+ * // from a query
+ * EWAHCompressedBitmap mask = deleted.toEWAHCompressedBitmap();
+ * </pre>
+ *
+ * @since 1.2.4
+ */
+public class ConcurrentBitSet {
+
+    // optimistic copies attempted before holding back the writers
+    private static final int OPTIMISTIC_ATTEMPTS = 16;
+
+    private final AtomicLongArray data;
+
+    // number of updates started and completed
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    // number of snapshots holding back the writers
+    private final AtomicInteger waitingSnapshots = new AtomicInteger();
+
+    /**
+     * Create a bitmap with all bits set to false.
+     *
+     * @param sizeInBits the size in bits (rounded up to a multiple of 64)
+     */
+    public ConcurrentBitSet(final int sizeInBits) {
+        this.data = new AtomicLongArray((sizeInBits + 63) / 64);
+    }
+
+    /**
+     * Create a bitmap with the same content as a BitSet.
+     *
+     * @param bitset the source (it will not be modified)
+     */
+    public ConcurrentBitSet(final BitSet bitset) {
+        this.data = new AtomicLongArray(bitset.data);
+    }
+
+    /**
+     * Query the size
+     *
+     * @return the size in bits.
+     */
+    public int size() {
+        return this.data.length() * 64;
+    }
+
+    /**
+     * Get the value of the bit.
+     *
+     * @param i index
+     * @return value of the bit
+     */
+    public boolean get(final int i) {
+        return (this.data.get(i / 64) & (1L << (i % 64))) != 0;
+    }
+
+    /**
+     * Set to true.
+     *
+     * @param i index of the bit
+     */
+    public void set(final int i) {
+        getAndSet(i, true);
+    }
+
+    /**
+     * Set to false.
+     *
+     * @param i index of the bit
+     */
+    public void clear(final int i) {
+        getAndSet(i, false);
+    }
+
+    /**
+     * Set the bit to some value and return its former value. Among
+     * concurrent calls on the same bit, exactly one sees the bit change.
+     *
+     * @param i index of the bit
+     * @param b new value of the bit
+     * @return former value of the bit
+     */
+    public boolean getAndSet(final int i, final boolean b) {
+        final int w = i / 64;
+        final long mask = 1L << (i % 64);
+        long old = this.data.get(w);
+        if (((old & mask) != 0) == b)
+            return b;
+        beginUpdate();
+        try {
+            while (true) {
+                if (((old & mask) != 0) == b)
+                    return b;
+                if (this.data.compareAndSet(w, old, old ^ mask))
+                    return !b;
+                old = this.data.get(w);
+            }
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Flip the bit.
+     *
+     * @param i index of the bit
+     * @return new value of the bit
+     */
+    public boolean flip(final int i) {
+        final int w = i / 64;
+        final long mask = 1L << (i % 64);
+        beginUpdate();
+        try {
+            long old;
+            do {
+                old = this.data.get(w);
+            } while (!this.data.compareAndSet(w, old, old ^ mask));
+            return (old & mask) == 0;
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Compute the number of bits set to 1. If there are concurrent
+     * updates, the result might not correspond to any single state of the
+     * bitmap: use {@link #snapshot()} when this matters.
+     *
+     * @return the number of bits
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int k = 0; k < this.data.length(); ++k)
+            sum += Long.bitCount(this.data.get(k));
+        return sum;
+    }
+
+    /**
+     * Get a consistent copy of the bitmap.
+     *
+     * @return a copy
+     */
+    public BitSet snapshot() {
+        final BitSet answer = new BitSet(this.size());
+        copyTo(answer.data);
+        return answer;
+    }
+
+    /**
+     * Get a consistent compressed copy of the bitmap.
+     *
+     * @return a copy
+     */
+    public EWAHCompressedBitmap toEWAHCompressedBitmap() {
+        final long[] words = new long[this.data.length()];
+        copyTo(words);
+        return EWAHCompressedBitmap.fromLongArray(words);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private void beginUpdate() {
+        while (this.waitingSnapshots.get() > 0)
+            Thread.yield();
+        this.started.increment();
+    }
+
+    private void endUpdate() {
+        this.completed.increment();
+    }
+
+    private void copyTo(final long[] words) {
+        boolean waiting = false;
+        try {
+            for (int attempt = 1; ; ++attempt) {
+                if (attempt > OPTIMISTIC_ATTEMPTS && !waiting) {
+                    this.waitingSnapshots.incrementAndGet();
+                    waiting = true;
+                }
+                // the copy is consistent if no update was in progress
+                // before it and none started during it
+                final long c = this.completed.sum();
+                final long s = this.started.sum();
+                if (c == s) {
+                    for (int k = 0; k < words.length; ++k)
+                        words[k] = this.data.get(k);
+                    if (this.started.sum() == s)
+                        return;
+                }
+                Thread.yield();
+            }
+        } finally {
+            if (waiting)
+                this.waitingSnapshots.decrementAndGet();
+        }
+    }
+}
@@ -43,8 +43,9 @@ public class ImmutableBitSet  implements Cloneable, Iterable<Integer>,WordArray
    */
   public BitSet asBitSet() {
   	BitSet bs = new BitSet(this.size());
-  	this.data.rewind();
-  	this.data.get(bs.data, 0, bs.data.length);
+  	LongBuffer d = this.data.duplicate();
+  	d.rewind();
+  	d.get(bs.data, 0, bs.data.length);
 		return bs;
   }
 
@@ -54,10 +55,14 @@ public class ImmutableBitSet  implements Cloneable, Iterable<Integer>,WordArray
    * @return the number of bits
    */
   public int cardinality() {
+      final int length = this.data.limit();
+      final long[] buffer = new long[Math.min(CHUNK_SIZE, length)];
       int sum = 0;
-      int length = this.data.limit();
-      for(int k = 0; k < length; ++k)
-          sum += Long.bitCount(this.data.get(k));
+      for (int k = 0; k < length; k += CHUNK_SIZE) {
+          final int n = Math.min(CHUNK_SIZE, length - k);
+          readWords(this, k, n, buffer);
+          sum += WordKernels.cardinality(buffer, 0, n);
+      }
       return sum;
   }
 
@@ -195,6 +200,214 @@ public class ImmutableBitSet  implements Cloneable, Iterable<Integer>,WordArray
       return false;
   }
 
+  /**
+   * Checks whether this bitset intersects another bitset (for example a
+   * BitSet, an ImmutableBitSet or a MappedBitSet).
+   *
+   * @param bs other bitset
+   * @return true if they have a non-empty intersection (result of AND)
+   * @since 1.2.4
+   */
+  public boolean intersects(WordArray bs) {
+      final int n = Math.min(this.getNumberOfWords(), bs.getNumberOfWords());
+      final long[] x = new long[Math.min(CHUNK_SIZE, n)];
+      final long[] buffer = new long[x.length];
+      for (int k = 0; k < n; k += CHUNK_SIZE) {
+          final int length = Math.min(CHUNK_SIZE, n - k);
+          readWords(this, k, length, x);
+          if (WordKernels.andCardinality(x, 0, readWords(bs, k, length, buffer),
+                  chunkOffset(bs, k), length) != 0)
+              return true;
+      }
+      return false;
+  }
+
+  /**
+   * Compute bitwise AND into a new bitset. The words are read in chunks,
+   * in bulk.
+   *
+   * @param bs other bitset
+   * @return the result
+   * @since 1.2.4
+   */
+  public BitSet and(WordArray bs) {
+      return combine(bs, AND);
+  }
+
+  /**
+   * Compute bitwise AND NOT into a new bitset. The words are read in
+   * chunks, in bulk.
+   *
+   * @param bs other bitset
+   * @return the result
+   * @since 1.2.4
+   */
+  public BitSet andNot(WordArray bs) {
+      return combine(bs, ANDNOT);
+  }
+
+  /**
+   * Compute bitwise OR into a new bitset. The words are read in chunks,
+   * in bulk.
+   *
+   * @param bs other bitset
+   * @return the result
+   * @since 1.2.4
+   */
+  public BitSet or(WordArray bs) {
+      return combine(bs, OR);
+  }
+
+  /**
+   * Compute bitwise XOR into a new bitset. The words are read in chunks,
+   * in bulk.
+   *
+   * @param bs other bitset
+   * @return the result
+   * @since 1.2.4
+   */
+  public BitSet xor(WordArray bs) {
+      return combine(bs, XOR);
+  }
+
+  /**
+   * Compute cardinality of bitwise AND.
+   *
+   * @param bs other bitset
+   * @return cardinality
+   * @since 1.2.4
+   */
+  public int andcardinality(WordArray bs) {
+      return combinedCardinality(bs, AND);
+  }
+
+  /**
+   * Compute cardinality of bitwise AND NOT.
+   *
+   * @param bs other bitset
+   * @return cardinality
+   * @since 1.2.4
+   */
+  public int andNotcardinality(WordArray bs) {
+      return combinedCardinality(bs, ANDNOT);
+  }
+
+  /**
+   * Compute cardinality of bitwise OR.
+   *
+   * @param bs other bitset
+   * @return cardinality
+   * @since 1.2.4
+   */
+  public int orcardinality(WordArray bs) {
+      return combinedCardinality(bs, OR);
+  }
+
+  /**
+   * Compute cardinality of bitwise XOR.
+   *
+   * @param bs other bitset
+   * @return cardinality
+   * @since 1.2.4
+   */
+  public int xorcardinality(WordArray bs) {
+      return combinedCardinality(bs, XOR);
+  }
+
+  private static final int AND = 0;
+  private static final int ANDNOT = 1;
+  private static final int OR = 2;
+  private static final int XOR = 3;
+
+  // number of words read at once from a buffer
+  private static final int CHUNK_SIZE = 1024;
+
+  private BitSet combine(WordArray bs, int op) {
+      final int common = Math.min(this.getNumberOfWords(), bs.getNumberOfWords());
+      final int words = op == AND ? common : op == ANDNOT ? this.getNumberOfWords()
+              : Math.max(this.getNumberOfWords(), bs.getNumberOfWords());
+      final BitSet answer = new BitSet(words * 64);
+      final LongBuffer d = this.data.duplicate();
+      d.rewind();
+      d.get(answer.data, 0, Math.min(words, this.getNumberOfWords()));
+      final int n = op == AND || op == ANDNOT ? common : bs.getNumberOfWords();
+      final long[] buffer = new long[Math.min(CHUNK_SIZE, n)];
+      for (int k = 0; k < n; k += CHUNK_SIZE) {
+          final int length = Math.min(CHUNK_SIZE, n - k);
+          final long[] y = readWords(bs, k, length, buffer);
+          final int yOffset = chunkOffset(bs, k);
+          switch (op) {
+              case AND:
+                  WordKernels.and(answer.data, k, y, yOffset, length);
+                  break;
+              case ANDNOT:
+                  WordKernels.andNot(answer.data, k, y, yOffset, length);
+                  break;
+              case OR:
+                  WordKernels.or(answer.data, k, y, yOffset, length);
+                  break;
+              default:
+                  WordKernels.xor(answer.data, k, y, yOffset, length);
+          }
+      }
+      return answer;
+  }
+
+  private int combinedCardinality(WordArray bs, int op) {
+      final int common = Math.min(this.getNumberOfWords(), bs.getNumberOfWords());
+      final long[] x = new long[Math.min(CHUNK_SIZE, Math.max(this.getNumberOfWords(), bs.getNumberOfWords()))];
+      final long[] buffer = new long[x.length];
+      int sum = 0;
+      for (int k = 0; k < common; k += CHUNK_SIZE) {
+          final int length = Math.min(CHUNK_SIZE, common - k);
+          readWords(this, k, length, x);
+          final long[] y = readWords(bs, k, length, buffer);
+          final int yOffset = chunkOffset(bs, k);
+          switch (op) {
+              case AND:
+                  sum += WordKernels.andCardinality(x, 0, y, yOffset, length);
+                  break;
+              case ANDNOT:
+                  sum += WordKernels.andNotCardinality(x, 0, y, yOffset, length);
+                  break;
+              case OR:
+                  sum += WordKernels.orCardinality(x, 0, y, yOffset, length);
+                  break;
+              default:
+                  sum += WordKernels.xorCardinality(x, 0, y, yOffset, length);
+          }
+      }
+      // the words of the longer bitset beyond the common words
+      final WordArray longer = this.getNumberOfWords() > common ? this : bs;
+      if (op == AND || (op == ANDNOT && longer != this))
+          return sum;
+      for (int k = common; k < longer.getNumberOfWords(); k += CHUNK_SIZE) {
+          final int length = Math.min(CHUNK_SIZE, longer.getNumberOfWords() - k);
+          sum += WordKernels.cardinality(readWords(longer, k, length, buffer),
+                  chunkOffset(longer, k), length);
+      }
+      return sum;
+  }
+
+  // words [start, start + length) of a bitset, starting at chunkOffset
+  private static long[] readWords(WordArray bs, int start, int length, long[] buffer) {
+      if (bs instanceof BitSet)
+          return ((BitSet) bs).data;
+      if (bs instanceof ImmutableBitSet) {
+          final LongBuffer d = ((ImmutableBitSet) bs).data.duplicate();
+          d.position(start);
+          d.get(buffer, 0, length);
+      } else {
+          for (int k = 0; k < length; ++k)
+              buffer[k] = bs.getWord(start + k);
+      }
+      return buffer;
+  }
+
+  private static int chunkOffset(WordArray bs, int start) {
+      return bs instanceof BitSet ? start : 0;
+  }
+
   /**
    * Usage: for(int i=bs.nextSetBit(0); i&gt;=0; i=bs.nextSetBit(i+1)) {
    * operate on index i here }
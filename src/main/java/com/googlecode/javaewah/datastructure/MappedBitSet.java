@@ -0,0 +1,596 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.IntIterator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+/**
+ * <p>A mutable version of the BitSet class in this same package whose words
+ * live in a memory-mapped file instead of the Java heap. Updates are made in
+ * place in the file: the bitmap persists without having to be serialized
+ * and deserialized.</p>
+ *
+ * <p>The file has the format produced by BitSet.serialize (the number of
+ * words followed by the words, as 64-bit big-endian integers), so that it
+ * can also be mapped as an {@link ImmutableBitSet} or read back with
+ * BitSet.deserialize.</p>
+ *
+ * <pre>
+ * FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+ *         StandardOpenOption.READ, StandardOpenOption.WRITE);
+ * MappedBitSet deleted = new MappedBitSet(channel, 1000000);
+ * deleted.set(12345);
+ * deleted.force(); // the update is on disk
+ * </pre>
+ *
+ * <p>Like BitSet, it does not implicitly expand: call resize (which maps
+ * the file again) to grow it. The channel should be open for reading and
+ * writing, and it should remain open while the bitmap is in use. A bitmap
+ * is not thread-safe.</p>
+ *
+ * @since 1.2.4
+ */
+public class MappedBitSet implements Iterable<Integer>, WordArray {
+
+    private static final int HEADER_SIZE_IN_BYTES = 8;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private LongBuffer data;
+
+    /**
+     * Map the bitmap stored in the file. An empty file becomes an empty
+     * bitmap.
+     *
+     * @param channel the file, open for reading and writing
+     * @throws IOException if the file cannot be mapped or is not a bitmap
+     */
+    public MappedBitSet(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        final long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE_IN_BYTES) {
+            map(0);
+            return;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_IN_BYTES);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("Cannot read the header");
+        final long words = header.getLong(0);
+        if (words < 0 || words > Integer.MAX_VALUE / 64 + 1
+                || HEADER_SIZE_IN_BYTES + 8 * words > fileSize)
+            throw new IOException("Not a bitmap: invalid number of words " + words);
+        map((int) words);
+    }
+
+    /**
+     * Map the bitmap stored in the file, making it at least as large as
+     * the given size.
+     *
+     * @param channel    the file, open for reading and writing
+     * @param sizeInBits the minimal size in bits
+     * @throws IOException if the file cannot be mapped or is not a bitmap
+     */
+    public MappedBitSet(final FileChannel channel, final int sizeInBits) throws IOException {
+        this(channel);
+        if (size() < sizeInBits)
+            resize(sizeInBits);
+    }
+
+    /**
+     * Resize the bitmap: the file is mapped again. New bits are false.
+     *
+     * @param sizeInBits new number of bits
+     * @throws IOException if the file cannot be mapped
+     */
+    public void resize(final int sizeInBits) throws IOException {
+        final int oldWords = getNumberOfWords();
+        final int words = (int) ((sizeInBits + 63L) / 64);
+        map(words);
+        // the file may hold stale words from a former, larger bitmap
+        for (int k = oldWords; k < words; ++k)
+            this.data.put(k, 0);
+    }
+
+    /**
+     * Write the changes to the storage device.
+     */
+    public void force() {
+        this.buffer.force();
+    }
+
+    private void map(final int words) throws IOException {
+        final long size = HEADER_SIZE_IN_BYTES + 8L * words;
+        if (this.channel.size() < size)
+            this.channel.write(ByteBuffer.allocate(1), size - 1);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.buffer.putLong(0, words);
+        final ByteBuffer bb = this.buffer.duplicate();
+        bb.position(HEADER_SIZE_IN_BYTES);
+        this.data = bb.slice().asLongBuffer();
+    }
+
+    /**
+     * Get a copy of this MappedBitSet as a BitSet on the heap.
+     *
+     * @return a copy
+     */
+    public BitSet asBitSet() {
+        final BitSet bs = new BitSet(this.size());
+        final LongBuffer d = this.data.duplicate();
+        d.rewind();
+        d.get(bs.data, 0, bs.data.length);
+        return bs;
+    }
+
+    /**
+     * Compute bitwise AND.
+     *
+     * @param bs other bitset
+     */
+    public void and(WordArray bs) {
+        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            this.data.put(k, this.data.get(k) & bs.getWord(k));
+    }
+
+    /**
+     * Compute cardinality of bitwise AND.
+     *
+     * @param bs other bitset
+     * @return cardinality
+     */
+    public int andcardinality(WordArray bs) {
+        int sum = 0;
+        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            sum += Long.bitCount(this.data.get(k) & bs.getWord(k));
+        return sum;
+    }
+
+    /**
+     * Compute bitwise AND NOT.
+     *
+     * @param bs other bitset
+     */
+    public void andNot(WordArray bs) {
+        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            this.data.put(k, this.data.get(k) & ~bs.getWord(k));
+    }
+
+    /**
+     * Compute cardinality of bitwise AND NOT.
+     *
+     * @param bs other bitset
+     * @return cardinality
+     */
+    public int andNotcardinality(WordArray bs) {
+        int sum = 0;
+        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            sum += Long.bitCount(this.data.get(k) & ~bs.getWord(k));
+        return sum;
+    }
+
+    /**
+     * Compute bitwise OR. The bitmap grows if the other bitset is larger.
+     *
+     * @param bs other bitset
+     * @throws IOException if the file cannot be mapped again
+     */
+    public void or(WordArray bs) throws IOException {
+        if (this.getNumberOfWords() < bs.getNumberOfWords())
+            this.resize(bs.getNumberOfWords() * 64);
+        for (int k = 0; k < bs.getNumberOfWords(); ++k)
+            this.data.put(k, this.data.get(k) | bs.getWord(k));
+    }
+
+    /**
+     * Compute cardinality of bitwise OR.
+     *
+     * @param bs other bitset
+     * @return cardinality
+     */
+    public int orcardinality(WordArray bs) {
+        int sum = 0;
+        for (int k = 0; k < Math.max(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            sum += Long.bitCount(wordOrZero(this, k) | wordOrZero(bs, k));
+        return sum;
+    }
+
+    /**
+     * Compute bitwise XOR. The bitmap grows if the other bitset is larger.
+     *
+     * @param bs other bitset
+     * @throws IOException if the file cannot be mapped again
+     */
+    public void xor(WordArray bs) throws IOException {
+        if (this.getNumberOfWords() < bs.getNumberOfWords())
+            this.resize(bs.getNumberOfWords() * 64);
+        for (int k = 0; k < bs.getNumberOfWords(); ++k)
+            this.data.put(k, this.data.get(k) ^ bs.getWord(k));
+    }
+
+    /**
+     * Compute cardinality of bitwise XOR.
+     *
+     * @param bs other bitset
+     * @return cardinality
+     */
+    public int xorcardinality(WordArray bs) {
+        int sum = 0;
+        for (int k = 0; k < Math.max(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            sum += Long.bitCount(wordOrZero(this, k) ^ wordOrZero(bs, k));
+        return sum;
+    }
+
+    private static long wordOrZero(WordArray bs, int k) {
+        return k < bs.getNumberOfWords() ? bs.getWord(k) : 0;
+    }
+
+    /**
+     * Checks whether two bitsets intersect.
+     *
+     * @param bs other bitset
+     * @return true if they have a non-empty intersection (result of AND)
+     */
+    public boolean intersects(WordArray bs) {
+        for (int k = 0; k < Math.min(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+            if ((this.data.get(k) & bs.getWord(k)) != 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * Compute the number of bits set to 1
+     *
+     * @return the number of bits
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int k = 0; k < this.getNumberOfWords(); ++k)
+            sum += Long.bitCount(this.data.get(k));
+        return sum;
+    }
+
+    /**
+     * Check whether a bitset contains a set bit.
+     *
+     * @return true if no set bit is found
+     */
+    public boolean empty() {
+        for (int k = 0; k < this.getNumberOfWords(); ++k)
+            if (this.data.get(k) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Reset all bits to false.
+     */
+    public void clear() {
+        for (int k = 0; k < this.getNumberOfWords(); ++k)
+            this.data.put(k, 0);
+    }
+
+    /**
+     * Set the bit to false.
+     * See {@link #unset(int)}
+     *
+     * @param index location of the bit
+     */
+    public void clear(int index) {
+        unset(index);
+    }
+
+    /**
+     * Set the bits in the range of indexes to false.
+     * This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param start location of the first bit to set to zero
+     * @param end   location of the last bit to set to zero (not included)
+     */
+    public void clear(int start, int end) {
+        if (start == end) return;
+        int firstword = start / 64;
+        int endword = (end - 1) / 64;
+        if (firstword == endword) {
+            this.data.put(firstword, this.data.get(firstword) & ~((~0L << start) & (~0L >>> -end)));
+            return;
+        }
+        this.data.put(firstword, this.data.get(firstword) & ~(~0L << start));
+        for (int i = firstword + 1; i < endword; i++)
+            this.data.put(i, 0);
+        this.data.put(endword, this.data.get(endword) & ~(~0L >>> -end));
+    }
+
+    /**
+     * Flip the bit. This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param i index of the bit
+     */
+    public void flip(final int i) {
+        this.data.put(i / 64, this.data.get(i / 64) ^ (1L << (i % 64)));
+    }
+
+    /**
+     * Flip the bits in the range of indexes.
+     * This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param start location of the first bit
+     * @param end   location of the last bit (not included)
+     */
+    public void flip(int start, int end) {
+        if (start == end) return;
+        int firstword = start / 64;
+        int endword = (end - 1) / 64;
+        this.data.put(firstword, this.data.get(firstword) ^ ~(~0L << start));
+        for (int i = firstword; i < endword; i++)
+            this.data.put(i, ~this.data.get(i));
+        this.data.put(endword, this.data.get(endword) ^ (~0L >>> -end));
+    }
+
+    /**
+     * Get the value of the bit. This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param i index
+     * @return value of the bit
+     */
+    public boolean get(final int i) {
+        return (this.data.get(i / 64) & (1L << (i % 64))) != 0;
+    }
+
+    /**
+     * Set to true. This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param i index of the bit
+     */
+    public void set(final int i) {
+        this.data.put(i / 64, this.data.get(i / 64) | (1L << (i % 64)));
+    }
+
+    /**
+     * Set to some value. This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param i index
+     * @param b value of the bit
+     */
+    public void set(final int i, final boolean b) {
+        if (b)
+            set(i);
+        else
+            unset(i);
+    }
+
+    /**
+     * Set the bits in the range of indexes true.
+     * This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param start location of the first bit
+     * @param end   location of the last bit (not included)
+     */
+    public void set(int start, int end) {
+        if (start == end) return;
+        int firstword = start / 64;
+        int endword = (end - 1) / 64;
+        if (firstword == endword) {
+            this.data.put(firstword, this.data.get(firstword) | ((~0L << start) & (~0L >>> -end)));
+            return;
+        }
+        this.data.put(firstword, this.data.get(firstword) | (~0L << start));
+        for (int i = firstword + 1; i < endword; i++)
+            this.data.put(i, ~0L);
+        this.data.put(endword, this.data.get(endword) | (~0L >>> -end));
+    }
+
+    /**
+     * Set the bits in the range of indexes to the specified Boolean value.
+     * This might throw an exception if size() is insufficient, consider calling resize().
+     *
+     * @param start location of the first bit
+     * @param end   location of the last bit (not included)
+     * @param v     Boolean value
+     */
+    public void set(int start, int end, boolean v) {
+        if (v)
+            set(start, end);
+        else
+            clear(start, end);
+    }
+
+    /**
+     * Set to false
+     *
+     * @param i index of the bit
+     */
+    public void unset(final int i) {
+        this.data.put(i / 64, this.data.get(i / 64) & ~(1L << (i % 64)));
+    }
+
+    /**
+     * Usage: for(int i=bs.nextSetBit(0); i&gt;=0; i=bs.nextSetBit(i+1)) {
+     * operate on index i here }
+     *
+     * @param i current set bit
+     * @return next set bit or -1
+     */
+    public int nextSetBit(final int i) {
+        int x = i / 64;
+        if (x >= this.getNumberOfWords())
+            return -1;
+        long w = this.data.get(x);
+        w >>>= i;
+        if (w != 0) {
+            return i + Long.numberOfTrailingZeros(w);
+        }
+        ++x;
+        for (; x < this.getNumberOfWords(); ++x) {
+            final long word = this.data.get(x);
+            if (word != 0) {
+                return x * 64 + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Usage: for(int i=bs.nextUnsetBit(0); i&gt;=0; i=bs.nextUnsetBit(i+1))
+     * { operate on index i here }
+     *
+     * @param i current unset bit
+     * @return next unset bit or -1
+     */
+    public int nextUnsetBit(final int i) {
+        int x = i / 64;
+        if (x >= this.getNumberOfWords())
+            return -1;
+        long w = ~this.data.get(x);
+        w >>>= i;
+        if (w != 0) {
+            return i + Long.numberOfTrailingZeros(w);
+        }
+        ++x;
+        for (; x < this.getNumberOfWords(); ++x) {
+            final long word = this.data.get(x);
+            if (word != ~0L) {
+                return x * 64 + Long.numberOfTrailingZeros(~word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Iterate over the set bits
+     *
+     * @return an iterator
+     */
+    public IntIterator intIterator() {
+        return new IntIterator() {
+            @Override
+            public boolean hasNext() {
+                return this.i >= 0;
+            }
+
+            @Override
+            public int next() {
+                this.j = this.i;
+                this.i = MappedBitSet.this.nextSetBit(this.i + 1);
+                return this.j;
+            }
+
+            private int i = MappedBitSet.this.nextSetBit(0);
+
+            private int j;
+        };
+    }
+
+    /**
+     * Iterate over the unset bits
+     *
+     * @return an iterator
+     */
+    public IntIterator unsetIntIterator() {
+        return new IntIterator() {
+            @Override
+            public boolean hasNext() {
+                return this.i >= 0;
+            }
+
+            @Override
+            public int next() {
+                this.j = this.i;
+                this.i = MappedBitSet.this.nextUnsetBit(this.i + 1);
+                return this.j;
+            }
+
+            private int i = MappedBitSet.this.nextUnsetBit(0);
+
+            private int j;
+        };
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return this.i >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                this.j = this.i;
+                this.i = MappedBitSet.this.nextSetBit(this.i + 1);
+                return this.j;
+            }
+
+            @Override
+            public void remove() {
+                MappedBitSet.this.unset(this.j);
+            }
+
+            private int i = MappedBitSet.this.nextSetBit(0);
+
+            private int j;
+        };
+    }
+
+    /**
+     * Query the size
+     *
+     * @return the size in bits.
+     */
+    public int size() {
+        return this.getNumberOfWords() * 64;
+    }
+
+    @Override
+    public int getNumberOfWords() {
+        return this.data.limit();
+    }
+
+    @Override
+    public long getWord(int index) {
+        return this.data.get(index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof WordArray) {
+            WordArray bs = (WordArray) o;
+            for (int k = 0; k < Math.max(this.getNumberOfWords(), bs.getNumberOfWords()); ++k)
+                if (wordOrZero(this, k) != wordOrZero(bs, k))
+                    return false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int b = 31;
+        long hash = 0;
+        for (int k = 0; k < this.getNumberOfWords(); ++k)
+            hash = hash * b + this.data.get(k);
+        return (int) hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder answer = new StringBuilder();
+        IntIterator i = this.intIterator();
+        answer.append("{");
+        if (i.hasNext())
+            answer.append(i.next());
+        while (i.hasNext()) {
+            answer.append(",");
+            answer.append(i.next());
+        }
+        answer.append("}");
+        return answer.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.googlecode.javaewah.datastructure;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Kernels of {@link WordKernels} processing several words per instruction.
+ * The implementation, VectorWordKernels, is in the Java 17 layer of the
+ * multi-release jar: {@link WordKernels} loads it by name, and falls back
+ * to its portable loops when it is missing or cannot be linked.
+ */
+interface VectorKernels {
+
+    /**
+     * @return number of words per vector
+     */
+    int lanes();
+
+    void and(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    void andNot(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    void or(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    void xor(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    int cardinality(long[] x, int offset, int length);
+
+    int andCardinality(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    int andNotCardinality(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    int orCardinality(long[] x, int xOffset, long[] y, int yOffset, int length);
+
+    int xorCardinality(long[] x, int xOffset, long[] y, int yOffset, int length);
+}
@@ -1,6 +1,14 @@
 package com.googlecode.javaewah.datastructure;
 
-interface WordArray {
+/**
+ * An uncompressed bitmap seen as an array of 64-bit words, such as a
+ * {@link BitSet} or an {@link ImmutableBitSet}. Compressed bitmaps can be
+ * combined with it directly (see for example
+ * {@link com.googlecode.javaewah.EWAHCompressedBitmap#and(WordArray)}).
+ *
+ * @since 1.2.4
+ */
+public interface WordArray {
 	/**
 	 * Get the total number of words contained in this data structure.
 	 * @return the number
@@ -0,0 +1,218 @@
+package com.googlecode.javaewah.datastructure;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Loops over arrays of 64-bit words used by the uncompressed bitmaps and by
+ * the aggregation of literal words. Users should not be concerned by this
+ * class.
+ *
+ * On Java 17 and later, when the module jdk.incubator.vector is available
+ * (java --add-modules jdk.incubator.vector), long arrays are processed
+ * with the (incubating) vector API, several words per instruction (the
+ * multi-release jar contains the vector kernels for Java 17).
+ * Otherwise, or if the system property javaewah.vector is set to false,
+ * the portable loops are used.
+ *
+ * @since 1.2.4
+ */
+public final class WordKernels {
+
+    // shorter arrays are processed with the portable loops
+    private static final int MIN_VECTOR_LENGTH = 16;
+
+    // the vector kernels, or null
+    private static final VectorKernels VECTOR = load();
+
+    /** Private constructor to prevent instantiation */
+    private WordKernels() {}
+
+    // the implementation is only in the Java 17 layer of the multi-release
+    // jar, and it only links when the module jdk.incubator.vector is there
+    private static VectorKernels load() {
+        if (!Boolean.parseBoolean(System.getProperty("javaewah.vector", "true")))
+            return null;
+        try {
+            final VectorKernels kernels = (VectorKernels) Class.forName(
+                    "com.googlecode.javaewah.datastructure.VectorWordKernels").newInstance();
+            return kernels.lanes() > 1 ? kernels : null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the vector API is used
+     */
+    public static boolean isVectorized() {
+        return VECTOR != null;
+    }
+
+    /**
+     * x[xOffset + i] &amp;= y[yOffset + i] for i in [0, length)
+     *
+     * @param x       modified array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     */
+    public static void and(final long[] x, final int xOffset, final long[] y,
+                           final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH) {
+            VECTOR.and(x, xOffset, y, yOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i)
+            x[xOffset + i] &= y[yOffset + i];
+    }
+
+    /**
+     * x[xOffset + i] &amp;= ~y[yOffset + i] for i in [0, length)
+     *
+     * @param x       modified array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     */
+    public static void andNot(final long[] x, final int xOffset, final long[] y,
+                              final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH) {
+            VECTOR.andNot(x, xOffset, y, yOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i)
+            x[xOffset + i] &= ~y[yOffset + i];
+    }
+
+    /**
+     * x[xOffset + i] |= y[yOffset + i] for i in [0, length)
+     *
+     * @param x       modified array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     */
+    public static void or(final long[] x, final int xOffset, final long[] y,
+                          final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH) {
+            VECTOR.or(x, xOffset, y, yOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i)
+            x[xOffset + i] |= y[yOffset + i];
+    }
+
+    /**
+     * x[xOffset + i] ^= y[yOffset + i] for i in [0, length)
+     *
+     * @param x       modified array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     */
+    public static void xor(final long[] x, final int xOffset, final long[] y,
+                           final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH) {
+            VECTOR.xor(x, xOffset, y, yOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i)
+            x[xOffset + i] ^= y[yOffset + i];
+    }
+
+    /**
+     * @param x      array
+     * @param offset offset in x
+     * @param length number of words
+     * @return number of bits set in x[offset, offset + length)
+     */
+    public static int cardinality(final long[] x, final int offset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH)
+            return VECTOR.cardinality(x, offset, length);
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+            sum += Long.bitCount(x[offset + i]);
+        return sum;
+    }
+
+    /**
+     * @param x       array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     * @return number of bits set in the intersection
+     */
+    public static int andCardinality(final long[] x, final int xOffset, final long[] y,
+                                     final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH)
+            return VECTOR.andCardinality(x, xOffset, y, yOffset, length);
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+            sum += Long.bitCount(x[xOffset + i] & y[yOffset + i]);
+        return sum;
+    }
+
+    /**
+     * @param x       array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     * @return number of bits set in x and not in y
+     */
+    public static int andNotCardinality(final long[] x, final int xOffset, final long[] y,
+                                        final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH)
+            return VECTOR.andNotCardinality(x, xOffset, y, yOffset, length);
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+            sum += Long.bitCount(x[xOffset + i] & ~y[yOffset + i]);
+        return sum;
+    }
+
+    /**
+     * @param x       array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     * @return number of bits set in the union
+     */
+    public static int orCardinality(final long[] x, final int xOffset, final long[] y,
+                                    final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH)
+            return VECTOR.orCardinality(x, xOffset, y, yOffset, length);
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+            sum += Long.bitCount(x[xOffset + i] | y[yOffset + i]);
+        return sum;
+    }
+
+    /**
+     * @param x       array
+     * @param xOffset offset in x
+     * @param y       other array
+     * @param yOffset offset in y
+     * @param length  number of words
+     * @return number of bits set in the symmetric difference
+     */
+    public static int xorCardinality(final long[] x, final int xOffset, final long[] y,
+                                     final int yOffset, final int length) {
+        if (VECTOR != null && length >= MIN_VECTOR_LENGTH)
+            return VECTOR.xorCardinality(x, xOffset, y, yOffset, length);
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+            sum += Long.bitCount(x[xOffset + i] ^ y[yOffset + i]);
+        return sum;
+    }
+}
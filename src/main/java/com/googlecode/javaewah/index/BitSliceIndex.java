@@ -0,0 +1,369 @@
+package com.googlecode.javaewah.index;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * A bit-sliced index over a column of non-negative integers. Instead of one
+ * bitmap per distinct value, the index stores one bitmap per binary digit of
+ * the values (slice j has a true bit for the rows whose value has a one as
+ * its digit of weight 2^j), together with an existence bitmap for the rows
+ * that have a value. The memory usage is proportional to the number of
+ * binary digits and not to the number of distinct values.
+ *
+ * Comparisons, sums and top-k queries follow the algorithms described in
+ * the following reference:
+ * <ul><li>
+ * Patrick O'Neil and Dallan Quass, Improved query performance with variant
+ * indexes. SIGMOD 1997, pages 38-49.
+ * </li></ul>
+ *
+ * Queries accept an optional found set (a bitmap of candidate rows, null
+ * for all rows) and return bitmaps of rows.
+ *
+ * Instances are immutable, provided that the bitmaps given to the
+ * constructor are not modified.
+ *
+ * @since 1.2.4
+ */
+public final class BitSliceIndex {
+
+    /**
+     * Comparison operators.
+     */
+    public enum Operation {
+        /** value &lt; constant */
+        LT,
+        /** value &lt;= constant */
+        LE,
+        /** value == constant */
+        EQ,
+        /** value != constant */
+        NEQ,
+        /** value &gt; constant */
+        GT,
+        /** value &gt;= constant */
+        GE
+    }
+
+    private final EWAHCompressedBitmap existence;
+
+    private final EWAHCompressedBitmap[] slices;
+
+    /**
+     * Wrap existing slices.
+     *
+     * @param existence rows having a value
+     * @param slices    the slices, least significant first
+     */
+    public BitSliceIndex(final EWAHCompressedBitmap existence,
+                         final EWAHCompressedBitmap... slices) {
+        if (slices.length > 63)
+            throw new IllegalArgumentException("At most 63 slices are supported");
+        this.existence = existence;
+        this.slices = slices.clone();
+    }
+
+    /**
+     * Build an index where row i has value values[i].
+     *
+     * @param values the (non-negative) values
+     * @return the index
+     */
+    public static BitSliceIndex of(final long... values) {
+        final int[] rows = new int[values.length];
+        for (int i = 0; i < rows.length; ++i)
+            rows[i] = i;
+        return of(rows, values);
+    }
+
+    /**
+     * Build an index where row rows[i] has value values[i]; other rows
+     * have no value.
+     *
+     * @param rows   the rows, in strictly increasing order
+     * @param values the (non-negative) values
+     * @return the index
+     */
+    public static BitSliceIndex of(final int[] rows, final long[] values) {
+        if (rows.length != values.length)
+            throw new IllegalArgumentException("Expected as many rows as values");
+        long all = 0;
+        for (long v : values) {
+            if (v < 0)
+                throw new IllegalArgumentException("Values should be non-negative");
+            all |= v;
+        }
+        final EWAHCompressedBitmap existence = new EWAHCompressedBitmap();
+        final EWAHCompressedBitmap[] slices = new EWAHCompressedBitmap[64 - Long.numberOfLeadingZeros(all)];
+        for (int j = 0; j < slices.length; ++j)
+            slices[j] = new EWAHCompressedBitmap();
+        for (int i = 0; i < rows.length; ++i) {
+            if (i > 0 && rows[i] <= rows[i - 1])
+                throw new IllegalArgumentException("Rows should be in strictly increasing order");
+            existence.set(rows[i]);
+            for (long v = values[i]; v != 0; v &= v - 1)
+                slices[Long.numberOfTrailingZeros(v)].set(rows[i]);
+        }
+        for (EWAHCompressedBitmap slice : slices)
+            slice.setSizeInBitsWithinLastWord(existence.sizeInBits());
+        return new BitSliceIndex(existence, slices);
+    }
+
+    /**
+     * @return the number of slices (binary digits of the largest value)
+     */
+    public int getBitDepth() {
+        return this.slices.length;
+    }
+
+    /**
+     * @param j index of the slice
+     * @return the slice of weight 2^j
+     */
+    public EWAHCompressedBitmap getSlice(final int j) {
+        return this.slices[j];
+    }
+
+    /**
+     * @return the rows having a value
+     */
+    public EWAHCompressedBitmap getExistenceBitmap() {
+        return this.existence;
+    }
+
+    /**
+     * @param row the row
+     * @return the value of the row, or -1 if it has no value
+     */
+    public long getValue(final int row) {
+        if (!this.existence.get(row))
+            return -1;
+        long value = 0;
+        for (int j = 0; j < this.slices.length; ++j)
+            if (this.slices[j].get(row))
+                value |= 1L << j;
+        return value;
+    }
+
+    /**
+     * @return total size of the bitmaps in bytes
+     */
+    public long sizeInBytes() {
+        long answer = this.existence.sizeInBytes();
+        for (EWAHCompressedBitmap slice : this.slices)
+            answer += slice.sizeInBytes();
+        return answer;
+    }
+
+    /**
+     * Find the rows whose value compares to the constant.
+     *
+     * @param op       the comparison
+     * @param value    the constant
+     * @param foundSet candidate rows (null for all rows)
+     * @return the rows in the found set satisfying the predicate
+     */
+    public EWAHCompressedBitmap compare(final Operation op, final long value,
+                                       final EWAHCompressedBitmap foundSet) {
+        final EWAHCompressedBitmap all = candidates(foundSet);
+        if (value < 0) {
+            switch (op) {
+                case GT:
+                case GE:
+                case NEQ:
+                    return copy(all);
+                default:
+                    return new EWAHCompressedBitmap();
+            }
+        }
+        // rows whose value is (so far) equal, greater or lower
+        EWAHCompressedBitmap eq = copy(all);
+        final EWAHCompressedBitmap gt = new EWAHCompressedBitmap();
+        final EWAHCompressedBitmap lt = new EWAHCompressedBitmap();
+        if ((value >>> this.slices.length) != 0) {
+            lt.swap(eq);
+        } else {
+            for (int j = this.slices.length - 1; j >= 0 && !eq.isEmpty(); --j) {
+                if (((value >>> j) & 1) != 0) {
+                    if (op != Operation.EQ && op != Operation.NEQ)
+                        lt.orInPlace(eq.andNot(this.slices[j]));
+                    eq.andInPlace(this.slices[j]);
+                } else {
+                    if (op != Operation.EQ && op != Operation.NEQ)
+                        gt.orInPlace(eq.and(this.slices[j]));
+                    eq.andNotInPlace(this.slices[j]);
+                }
+            }
+        }
+        switch (op) {
+            case LT:
+                return lt;
+            case LE:
+                lt.orInPlace(eq);
+                return lt;
+            case EQ:
+                return eq;
+            case NEQ:
+                return all.andNot(eq);
+            case GT:
+                return gt;
+            default:
+                gt.orInPlace(eq);
+                return gt;
+        }
+    }
+
+    /**
+     * Find the rows whose value is between two constants (inclusively).
+     *
+     * @param min      smallest value
+     * @param max      largest value
+     * @param foundSet candidate rows (null for all rows)
+     * @return the rows in the found set with a value in [min, max]
+     */
+    public EWAHCompressedBitmap between(final long min, final long max,
+                                       final EWAHCompressedBitmap foundSet) {
+        if (min > max)
+            return new EWAHCompressedBitmap();
+        final EWAHCompressedBitmap atLeast = compare(Operation.GE, min, foundSet);
+        return compare(Operation.LE, max, atLeast);
+    }
+
+    /**
+     * Sum of the values of the rows.
+     *
+     * @param foundSet candidate rows (null for all rows)
+     * @return the sum of the values over the found set
+     */
+    public long sum(final EWAHCompressedBitmap foundSet) {
+        final EWAHCompressedBitmap all = candidates(foundSet);
+        long answer = 0;
+        for (int j = 0; j < this.slices.length; ++j)
+            answer += ((long) this.slices[j].andCardinality(all)) << j;
+        return answer;
+    }
+
+    /**
+     * Sum of the values of the rows, the slices being processed
+     * concurrently on a fork-join pool.
+     *
+     * @param pool     where the work is done
+     * @param foundSet candidate rows (null for all rows)
+     * @return the sum of the values over the found set
+     */
+    public long sum(final ForkJoinPool pool, final EWAHCompressedBitmap foundSet) {
+        final EWAHCompressedBitmap all = candidates(foundSet);
+        final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[this.slices.length];
+        for (int j = 0; j < this.slices.length; ++j) {
+            final EWAHCompressedBitmap slice = this.slices[j];
+            tasks[j] = pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return (long) slice.andCardinality(all);
+                }
+            });
+        }
+        long answer = 0;
+        for (int j = 0; j < tasks.length; ++j)
+            answer += ((Long) tasks[j].join()) << j;
+        return answer;
+    }
+
+    /**
+     * Find k rows having the largest values. Among rows with the same
+     * value, those with the smallest row numbers are preferred. If there are
+     * fewer than k rows, they are all returned.
+     *
+     * @param k        number of rows
+     * @param foundSet candidate rows (null for all rows)
+     * @return the rows with the k largest values
+     */
+    public EWAHCompressedBitmap topK(final int k, final EWAHCompressedBitmap foundSet) {
+        if (k <= 0)
+            return new EWAHCompressedBitmap();
+        // rows certainly in the answer, rows still tied
+        EWAHCompressedBitmap g = new EWAHCompressedBitmap();
+        EWAHCompressedBitmap e = copy(candidates(foundSet));
+        for (int j = this.slices.length - 1; j >= 0; --j) {
+            final EWAHCompressedBitmap x = g.or(e.and(this.slices[j]));
+            final int n = x.cardinality();
+            if (n > k) {
+                e.andInPlace(this.slices[j]);
+            } else if (n < k) {
+                g = x;
+                e.andNotInPlace(this.slices[j]);
+            } else {
+                return x;
+            }
+        }
+        // break the ties: the rows are appended in increasing order to a
+        // bitmap of their own, rather than inserted in the middle of g
+        int missing = k - g.cardinality();
+        final EWAHCompressedBitmap ties = new EWAHCompressedBitmap();
+        final IntIterator i = e.intIterator();
+        while (missing > 0 && i.hasNext()) {
+            ties.set(i.next());
+            --missing;
+        }
+        return g.or(ties);
+    }
+
+    /**
+     * Serialize.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void serialize(final DataOutput out) throws IOException {
+        out.writeInt(this.slices.length);
+        this.existence.serialize(out);
+        for (EWAHCompressedBitmap slice : this.slices)
+            slice.serialize(out);
+    }
+
+    /**
+     * Deserialize an index written by {@link #serialize(DataOutput)}.
+     *
+     * @param in the DataInput stream
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static BitSliceIndex deserialize(final DataInput in) throws IOException {
+        final int depth = in.readInt();
+        if (depth < 0 || depth > 63)
+            throw new IOException("Invalid number of slices: " + depth);
+        final EWAHCompressedBitmap existence = new EWAHCompressedBitmap();
+        existence.deserialize(in);
+        final EWAHCompressedBitmap[] slices = new EWAHCompressedBitmap[depth];
+        for (int j = 0; j < depth; ++j) {
+            slices[j] = new EWAHCompressedBitmap();
+            slices[j].deserialize(in);
+        }
+        return new BitSliceIndex(existence, slices);
+    }
+
+    private EWAHCompressedBitmap candidates(final EWAHCompressedBitmap foundSet) {
+        return foundSet == null ? this.existence : this.existence.and(foundSet);
+    }
+
+    private static EWAHCompressedBitmap copy(final EWAHCompressedBitmap b) {
+        try {
+            return b.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // cannot happen
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.googlecode.javaewah.index;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * An (equality-encoded) bitmap index over a categorical column: one bitmap
+ * per distinct value, together with the dictionary mapping values to
+ * codes. Codes are dense integers starting at zero.
+ *
+ * Instances are produced by {@link BitmapIndexBuilder#freeze()} and are
+ * immutable, provided that the bitmaps are not modified.
+ *
+ * @param <V> the type of the values
+ * @since 1.2.4
+ */
+public final class BitmapIndex<V> {
+
+    private final List<V> dictionary;
+
+    private final Map<V, Integer> codes;
+
+    private final EWAHCompressedBitmap[] bitmaps;
+
+    private final int numberOfRows;
+
+    BitmapIndex(final List<V> dictionary, final Map<V, Integer> codes,
+                final EWAHCompressedBitmap[] bitmaps, final int numberOfRows) {
+        this.dictionary = Collections.unmodifiableList(dictionary);
+        this.codes = codes;
+        this.bitmaps = bitmaps;
+        this.numberOfRows = numberOfRows;
+    }
+
+    /**
+     * @return the number of rows (the size in bits of the bitmaps)
+     */
+    public int getNumberOfRows() {
+        return this.numberOfRows;
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    public int getCardinality() {
+        return this.bitmaps.length;
+    }
+
+    /**
+     * @return the values, indexed by code
+     */
+    public List<V> getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     * @param value the value
+     * @return the code of the value, or -1 if it does not appear
+     */
+    public int getCode(final V value) {
+        final Integer code = this.codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @param code the code of a value
+     * @return the rows having this value
+     */
+    public EWAHCompressedBitmap getBitmap(final int code) {
+        return this.bitmaps[code];
+    }
+
+    /**
+     * @param value the value
+     * @return the rows having this value, or null if it does not appear
+     */
+    public EWAHCompressedBitmap getBitmap(final V value) {
+        final Integer code = this.codes.get(value);
+        return code == null ? null : this.bitmaps[code];
+    }
+
+    /**
+     * @return the bitmaps, indexed by code
+     */
+    public EWAHCompressedBitmap[] getBitmaps() {
+        return this.bitmaps.clone();
+    }
+
+    /**
+     * @return total size of the bitmaps in bytes
+     */
+    public long sizeInBytes() {
+        long answer = 0;
+        for (EWAHCompressedBitmap b : this.bitmaps)
+            answer += b.sizeInBytes();
+        return answer;
+    }
+}
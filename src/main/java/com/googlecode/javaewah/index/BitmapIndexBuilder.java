@@ -0,0 +1,142 @@
+package com.googlecode.javaewah.index;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Builds a {@link BitmapIndex} from a stream of (row, value) pairs given in
+ * row order. Values are given codes in order of first appearance.
+ *
+ * Each value has its own appender which keeps the current (uncompressed)
+ * word: bits are set in this word until a row falls in a later word, and
+ * only then is the word appended to the bitmap, preceded by a single
+ * stream of empty words for the gap. This avoids the overhead of
+ * {@link EWAHCompressedBitmap#set(int)} on every row.
+ *
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * BitmapIndexBuilder&lt;String&gt; builder = new BitmapIndexBuilder&lt;String&gt;();
+ * for (int row = 0; row &lt; cities.length; ++row)
+ *     builder.add(row, cities[row]);
+ * BitmapIndex&lt;String&gt; index = builder.freeze();
+ * EWAHCompressedBitmap paris = index.getBitmap("Paris");
+ * </code>
+ * </pre>
+ *
+ * This class is not thread-safe.
+ *
+ * @param <V> the type of the values
+ * @since 1.2.4
+ */
+public final class BitmapIndexBuilder<V> {
+
+    private final Map<V, Integer> codes = new HashMap<V, Integer>();
+
+    private final List<V> dictionary = new ArrayList<V>();
+
+    private final List<Appender> appenders = new ArrayList<Appender>();
+
+    private int lastRow = -1;
+
+    private boolean frozen = false;
+
+    /**
+     * Add a row. Rows should be given in non-decreasing order; a row may
+     * have several values.
+     *
+     * @param rowId the row (non-negative)
+     * @param value the value of the row (non-null)
+     * @return the code of the value
+     */
+    public int add(final int rowId, final V value) {
+        if (this.frozen)
+            throw new IllegalStateException("The index has already been frozen");
+        if (rowId < this.lastRow || rowId < 0)
+            throw new IllegalArgumentException("Rows should be given in non-decreasing order");
+        Integer code = this.codes.get(value);
+        if (code == null) {
+            code = this.dictionary.size();
+            this.codes.put(value, code);
+            this.dictionary.add(value);
+            this.appenders.add(new Appender());
+        }
+        this.appenders.get(code).set(rowId);
+        this.lastRow = rowId;
+        return code;
+    }
+
+    /**
+     * @return the number of distinct values so far
+     */
+    public int getCardinality() {
+        return this.dictionary.size();
+    }
+
+    /**
+     * Complete the bitmaps. The number of rows is one more than the
+     * largest row.
+     *
+     * @return the index
+     */
+    public BitmapIndex<V> freeze() {
+        return freeze(this.lastRow + 1);
+    }
+
+    /**
+     * Complete the bitmaps. The builder cannot be used afterward.
+     *
+     * @param numberOfRows the number of rows, which should exceed the
+     *                     largest row (trailing rows have no value)
+     * @return the index
+     */
+    public BitmapIndex<V> freeze(final int numberOfRows) {
+        if (this.frozen)
+            throw new IllegalStateException("The index has already been frozen");
+        if (numberOfRows <= this.lastRow)
+            throw new IllegalArgumentException("The number of rows should exceed the largest row");
+        this.frozen = true;
+        final EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[this.appenders.size()];
+        for (int code = 0; code < bitmaps.length; ++code)
+            bitmaps[code] = this.appenders.get(code).finish(numberOfRows);
+        this.appenders.clear();
+        return new BitmapIndex<V>(this.dictionary, this.codes, bitmaps, numberOfRows);
+    }
+
+    private static final class Appender {
+        private final EWAHCompressedBitmap bitmap = new EWAHCompressedBitmap(4);
+
+        // words before this one have been appended to the bitmap
+        private int wordIndex = 0;
+
+        private long word = 0;
+
+        void set(final int row) {
+            final int w = row / EWAHCompressedBitmap.WORD_IN_BITS;
+            if (w != this.wordIndex) {
+                this.bitmap.addWord(this.word);
+                if (w > this.wordIndex + 1)
+                    this.bitmap.addStreamOfEmptyWords(false, w - this.wordIndex - 1);
+                this.wordIndex = w;
+                this.word = 0;
+            }
+            this.word |= 1L << (row % EWAHCompressedBitmap.WORD_IN_BITS);
+        }
+
+        EWAHCompressedBitmap finish(final int numberOfRows) {
+            this.bitmap.addWord(this.word);
+            this.bitmap.setSizeInBitsWithinLastWord(numberOfRows);
+            return this.bitmap;
+        }
+    }
+}
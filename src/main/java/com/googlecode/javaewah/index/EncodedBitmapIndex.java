@@ -0,0 +1,308 @@
+package com.googlecode.javaewah.index;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.FastAggregation;
+import com.googlecode.javaewah.index.BitSliceIndex.Operation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * A bitmap index over a column whose values are in [0, cardinality), where
+ * the bitmaps are not one per value (equality encoding) but cumulative
+ * (range encoding) or over intervals of values (interval encoding). Any
+ * range predicate is then answered by combining at most two bitmaps,
+ * whatever the number of values in the range.
+ *
+ * <ul>
+ * <li>With range encoding, bitmap v has the rows whose value is at most v
+ * (for v &lt; cardinality - 1). There are cardinality - 1 bitmaps.</li>
+ * <li>With interval encoding, bitmap j has the rows whose value is in
+ * [j, j + m - 1] where m is half the cardinality (rounded up). There are
+ * about half as many bitmaps as with range encoding.</li>
+ * </ul>
+ *
+ * Reference: Chee-Yong Chan and Yannis E. Ioannidis, An efficient bitmap
+ * encoding scheme for selection queries. SIGMOD 1999, pages 215-226.
+ *
+ * Instances are immutable, provided that the bitmaps given to the
+ * factory methods are not modified.
+ *
+ * @since 1.2.4
+ */
+public final class EncodedBitmapIndex {
+
+    /**
+     * How the bitmaps are encoded.
+     */
+    public enum Encoding {
+        /** one bitmap per value v with the rows having a value at most v */
+        RANGE,
+        /** one bitmap per interval of values of fixed width */
+        INTERVAL
+    }
+
+    private final Encoding encoding;
+
+    private final int cardinality;
+
+    private final EWAHCompressedBitmap existence;
+
+    private final EWAHCompressedBitmap[] bitmaps;
+
+    private EncodedBitmapIndex(final Encoding encoding, final int cardinality,
+                               final EWAHCompressedBitmap existence,
+                               final EWAHCompressedBitmap[] bitmaps) {
+        this.encoding = encoding;
+        this.cardinality = cardinality;
+        this.existence = existence;
+        this.bitmaps = bitmaps;
+    }
+
+    /**
+     * Build an index where row i has value values[i]. A negative value
+     * means that the row has no value.
+     *
+     * @param encoding    the encoding
+     * @param cardinality number of distinct values (values are smaller)
+     * @param values      the values
+     * @return the index
+     */
+    public static EncodedBitmapIndex of(final Encoding encoding, final int cardinality,
+                                        final int... values) {
+        if (cardinality < 1)
+            throw new IllegalArgumentException("The cardinality should be positive");
+        final EWAHCompressedBitmap[] equality = new EWAHCompressedBitmap[cardinality];
+        for (int v = 0; v < cardinality; ++v)
+            equality[v] = new EWAHCompressedBitmap();
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] >= cardinality)
+                throw new IllegalArgumentException("Value " + values[i] + " is not smaller than the cardinality");
+            if (values[i] >= 0)
+                equality[values[i]].set(i);
+        }
+        for (EWAHCompressedBitmap b : equality)
+            b.setSizeInBitsWithinLastWord(values.length);
+        return fromEqualityBitmaps(encoding, equality);
+    }
+
+    /**
+     * Build an index from an equality-encoded index, where bitmap v has
+     * the rows having value v. The bitmaps should be disjoint; they are
+     * not modified.
+     *
+     * @param encoding the encoding
+     * @param equality the bitmaps, one per value
+     * @return the index
+     */
+    public static EncodedBitmapIndex fromEqualityBitmaps(final Encoding encoding,
+                                                         final EWAHCompressedBitmap... equality) {
+        final int c = equality.length;
+        if (c < 1)
+            throw new IllegalArgumentException("Expected at least one bitmap");
+        final EWAHCompressedBitmap[] bitmaps;
+        final EWAHCompressedBitmap existence;
+        if (encoding == Encoding.RANGE) {
+            bitmaps = new EWAHCompressedBitmap[c - 1];
+            EWAHCompressedBitmap cumulative = copy(equality[0]);
+            for (int v = 0; v < c - 1; ++v) {
+                bitmaps[v] = cumulative;
+                cumulative = cumulative.or(equality[v + 1]);
+            }
+            existence = cumulative;
+        } else {
+            final int m = intervalWidth(c);
+            bitmaps = new EWAHCompressedBitmap[c - m + 1];
+            final EWAHCompressedBitmap[] first = new EWAHCompressedBitmap[m];
+            System.arraycopy(equality, 0, first, 0, m);
+            bitmaps[0] = m == 1 ? copy(equality[0]) : FastAggregation.or(first);
+            // slide the window of values by one
+            for (int j = 1; j < bitmaps.length; ++j)
+                bitmaps[j] = bitmaps[j - 1].andNot(equality[j - 1]).or(equality[j + m - 1]);
+            existence = c == 1 ? copy(equality[0]) : FastAggregation.or(equality);
+        }
+        return new EncodedBitmapIndex(encoding, c, existence, bitmaps);
+    }
+
+    /**
+     * @return the encoding
+     */
+    public Encoding getEncoding() {
+        return this.encoding;
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    public int getCardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * @return the number of stored bitmaps (not counting the existence
+     * bitmap)
+     */
+    public int getNumberOfBitmaps() {
+        return this.bitmaps.length;
+    }
+
+    /**
+     * @param i index of the bitmap
+     * @return the stored bitmap
+     */
+    public EWAHCompressedBitmap getBitmap(final int i) {
+        return this.bitmaps[i];
+    }
+
+    /**
+     * @return the rows having a value
+     */
+    public EWAHCompressedBitmap getExistenceBitmap() {
+        return this.existence;
+    }
+
+    /**
+     * @return total size of the bitmaps in bytes
+     */
+    public long sizeInBytes() {
+        long answer = this.existence.sizeInBytes();
+        for (EWAHCompressedBitmap b : this.bitmaps)
+            answer += b.sizeInBytes();
+        return answer;
+    }
+
+    /**
+     * Find the rows whose value compares to the constant.
+     *
+     * @param op       the comparison
+     * @param value    the constant
+     * @param foundSet candidate rows (null for all rows)
+     * @return the rows in the found set satisfying the predicate
+     */
+    public EWAHCompressedBitmap compare(final Operation op, final long value,
+                                       final EWAHCompressedBitmap foundSet) {
+        switch (op) {
+            case LT:
+                if (value <= 0)
+                    return new EWAHCompressedBitmap();
+                return between(0, value - 1, foundSet);
+            case LE:
+                return between(0, value, foundSet);
+            case EQ:
+                return between(value, value, foundSet);
+            case NEQ:
+                final EWAHCompressedBitmap all = foundSet == null ? this.existence : this.existence.and(foundSet);
+                return all.andNot(between(value, value, null));
+            case GT:
+                if (value >= this.cardinality - 1)
+                    return new EWAHCompressedBitmap();
+                return between(value + 1, this.cardinality - 1, foundSet);
+            default:
+                return between(value, this.cardinality - 1, foundSet);
+        }
+    }
+
+    /**
+     * Find the rows whose value is between two constants (inclusively).
+     * At most two bitmaps are combined.
+     *
+     * @param min      smallest value
+     * @param max      largest value
+     * @param foundSet candidate rows (null for all rows)
+     * @return the rows in the found set with a value in [min, max]
+     */
+    public EWAHCompressedBitmap between(final long min, final long max,
+                                       final EWAHCompressedBitmap foundSet) {
+        if (min > this.cardinality - 1 || max < 0 || min > max)
+            return new EWAHCompressedBitmap();
+        // clamp before narrowing, so that large values do not wrap around
+        final int lo = (int) Math.max(min, 0);
+        final int hi = (int) Math.min(max, this.cardinality - 1);
+        final EWAHCompressedBitmap answer = this.encoding == Encoding.RANGE
+                ? rangeQuery(lo, hi) : intervalQuery(lo, hi);
+        if (foundSet != null)
+            answer.andInPlace(foundSet);
+        return answer;
+    }
+
+    private EWAHCompressedBitmap rangeQuery(final int lo, final int hi) {
+        final EWAHCompressedBitmap upTo = hi == this.cardinality - 1 ? this.existence : this.bitmaps[hi];
+        return lo == 0 ? copy(upTo) : upTo.andNot(this.bitmaps[lo - 1]);
+    }
+
+    private EWAHCompressedBitmap intervalQuery(final int lo, final int hi) {
+        final EWAHCompressedBitmap[] I = this.bitmaps;
+        final int c = this.cardinality;
+        final int m = intervalWidth(c);
+        final int width = hi - lo + 1;
+        if (width == c)
+            return copy(this.existence);
+        if (width == m)
+            return copy(I[lo]);
+        if (width > m)
+            return I[lo].or(I[hi - m + 1]);
+        if (hi + 1 <= c - m)
+            return I[lo].andNot(I[hi + 1]);
+        if (lo >= m)
+            return I[hi - m + 1].andNot(I[lo - m]);
+        return I[lo].and(I[hi - m + 1]);
+    }
+
+    /**
+     * Serialize.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void serialize(final DataOutput out) throws IOException {
+        out.writeInt(this.encoding.ordinal());
+        out.writeInt(this.cardinality);
+        this.existence.serialize(out);
+        for (EWAHCompressedBitmap b : this.bitmaps)
+            b.serialize(out);
+    }
+
+    /**
+     * Deserialize an index written by {@link #serialize(DataOutput)}.
+     *
+     * @param in the DataInput stream
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static EncodedBitmapIndex deserialize(final DataInput in) throws IOException {
+        final int e = in.readInt();
+        if (e < 0 || e >= Encoding.values().length)
+            throw new IOException("Invalid encoding: " + e);
+        final Encoding encoding = Encoding.values()[e];
+        final int c = in.readInt();
+        if (c < 1)
+            throw new IOException("Invalid cardinality: " + c);
+        final EWAHCompressedBitmap existence = new EWAHCompressedBitmap();
+        existence.deserialize(in);
+        final int n = encoding == Encoding.RANGE ? c - 1 : c - intervalWidth(c) + 1;
+        final EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[n];
+        for (int i = 0; i < n; ++i) {
+            bitmaps[i] = new EWAHCompressedBitmap();
+            bitmaps[i].deserialize(in);
+        }
+        return new EncodedBitmapIndex(encoding, c, existence, bitmaps);
+    }
+
+    private static int intervalWidth(final int cardinality) {
+        return (cardinality + 1) / 2;
+    }
+
+    private static EWAHCompressedBitmap copy(final EWAHCompressedBitmap b) {
+        try {
+            return b.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // cannot happen
+        }
+    }
+}
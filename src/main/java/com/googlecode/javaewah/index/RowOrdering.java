@@ -0,0 +1,238 @@
+package com.googlecode.javaewah.index;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Reorders the rows of a table before indexing it, so that the bitmaps
+ * have longer runs and compress better. The table is made of columns of
+ * small integer codes (in [0, number of distinct values)). Rows are sorted
+ * in lexicographic order or in reflected Gray-code order, the columns being
+ * considered in a chosen order; by default, the columns with the fewest
+ * distinct values come first.
+ *
+ * The result is the permutation of the rows together with the bitmaps of
+ * the reordered table (one bitmap per value and per column).
+ *
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * RowOrdering o = RowOrdering.sort(RowOrdering.Order.GRAY_CODE, country, city);
+ * int[] permutation = o.getPermutation(); // new row i is old row permutation[i]
+ * EWAHCompressedBitmap[] cityBitmaps = o.getBitmaps(1);
+ * </code>
+ * </pre>
+ *
+ * Reference: Daniel Lemire, Owen Kaser, Kamel Aouiche, Sorting improves
+ * word-aligned bitmap indexes. Data &amp; Knowledge Engineering 69 (1), pages
+ * 3-28, 2010.
+ *
+ * @since 1.2.4
+ */
+public final class RowOrdering {
+
+    /**
+     * Order of the rows.
+     */
+    public enum Order {
+        /** rows are sorted as tuples in lexicographic order */
+        LEXICOGRAPHIC,
+        /** rows are sorted as tuples in reflected (mixed-radix) Gray-code order */
+        GRAY_CODE
+    }
+
+    private final int[] permutation;
+
+    private final int[] columnOrder;
+
+    private final EWAHCompressedBitmap[][] bitmaps;
+
+    private RowOrdering(final int[] permutation, final int[] columnOrder,
+                        final EWAHCompressedBitmap[][] bitmaps) {
+        this.permutation = permutation;
+        this.columnOrder = columnOrder;
+        this.bitmaps = bitmaps;
+    }
+
+    /**
+     * Sort the rows, the columns with the fewest distinct values being
+     * considered first.
+     *
+     * @param order   the order of the rows
+     * @param columns the columns, all of the same length, with non-negative
+     *                codes
+     * @return the permutation and the bitmaps
+     */
+    public static RowOrdering sort(final Order order, final int[]... columns) {
+        return sort(order, increasingCardinalityOrder(columns), columns);
+    }
+
+    /**
+     * Sort the rows, the columns being considered in the given order.
+     *
+     * @param order       the order of the rows
+     * @param columnOrder indexes of the columns, most significant first
+     * @param columns     the columns, all of the same length, with
+     *                    non-negative codes
+     * @return the permutation and the bitmaps
+     */
+    public static RowOrdering sort(final Order order, final int[] columnOrder,
+                                   final int[][] columns) {
+        final int rows = columns.length == 0 ? 0 : columns[0].length;
+        final int[] cardinalities = cardinalities(columns);
+        final int[] permutation = new int[rows];
+        for (int i = 0; i < rows; ++i)
+            permutation[i] = i;
+        bucketSort(order == Order.GRAY_CODE, columns, columnOrder, cardinalities, 0,
+                permutation, new int[rows], 0, rows, false);
+        final EWAHCompressedBitmap[][] bitmaps = new EWAHCompressedBitmap[columns.length][];
+        for (int c = 0; c < columns.length; ++c) {
+            bitmaps[c] = new EWAHCompressedBitmap[cardinalities[c]];
+            for (int v = 0; v < cardinalities[c]; ++v)
+                bitmaps[c][v] = new EWAHCompressedBitmap();
+            for (int i = 0; i < rows; ++i)
+                bitmaps[c][columns[c][permutation[i]]].set(i);
+            for (EWAHCompressedBitmap b : bitmaps[c])
+                b.setSizeInBitsWithinLastWord(rows);
+        }
+        return new RowOrdering(permutation, columnOrder.clone(), bitmaps);
+    }
+
+    /**
+     * The column-ordering heuristic: columns with fewer distinct values
+     * come first (ties are broken by column index).
+     *
+     * @param columns the columns
+     * @return indexes of the columns, most significant first
+     */
+    public static int[] increasingCardinalityOrder(final int[]... columns) {
+        final int[] cardinalities = cardinalities(columns);
+        final int[] answer = new int[columns.length];
+        for (int c = 0; c < answer.length; ++c)
+            answer[c] = c;
+        // insertion sort: there are few columns
+        for (int i = 1; i < answer.length; ++i) {
+            final int c = answer[i];
+            int j = i - 1;
+            for (; j >= 0 && cardinalities[answer[j]] > cardinalities[c]; --j)
+                answer[j + 1] = answer[j];
+            answer[j + 1] = c;
+        }
+        return answer;
+    }
+
+    /**
+     * @return the permutation: new row i is old row getPermutation()[i]
+     */
+    public int[] getPermutation() {
+        return this.permutation;
+    }
+
+    /**
+     * @return indexes of the columns, most significant first
+     */
+    public int[] getColumnOrder() {
+        return this.columnOrder;
+    }
+
+    /**
+     * @param column index of the column (as given to the sort method)
+     * @return the bitmaps of the reordered column, one per value
+     */
+    public EWAHCompressedBitmap[] getBitmaps(final int column) {
+        return this.bitmaps[column];
+    }
+
+    /**
+     * @return total size of the bitmaps in bytes
+     */
+    public long sizeInBytes() {
+        long answer = 0;
+        for (EWAHCompressedBitmap[] column : this.bitmaps)
+            for (EWAHCompressedBitmap b : column)
+                answer += b.sizeInBytes();
+        return answer;
+    }
+
+    // most-significant-digit first counting sort of perm[from, to)
+    private static void bucketSort(final boolean gray, final int[][] columns,
+                                   final int[] columnOrder, final int[] cardinalities,
+                                   final int depth, final int[] perm, final int[] buffer,
+                                   final int from, final int to, final boolean reversed) {
+        if (depth == columnOrder.length || to - from < 2)
+            return;
+        final int[] column = columns[columnOrder[depth]];
+        final int buckets = cardinalities[columnOrder[depth]];
+        if (to - from < buckets) {
+            // few rows and many values: a comparison sort is cheaper
+            comparisonSort(gray, columns, columnOrder, depth, perm, from, to, reversed);
+            return;
+        }
+        final int[] start = new int[buckets];
+        final int[] next = new int[buckets];
+        for (int i = from; i < to; ++i)
+            ++next[column[perm[i]]];
+        int offset = from;
+        for (int k = 0; k < buckets; ++k) {
+            final int v = reversed ? buckets - 1 - k : k;
+            start[v] = offset;
+            offset += next[v];
+            next[v] = start[v];
+        }
+        for (int i = from; i < to; ++i)
+            buffer[next[column[perm[i]]]++] = perm[i];
+        System.arraycopy(buffer, from, perm, from, to - from);
+        for (int v = 0; v < buckets; ++v)
+            // in Gray-code order, the direction is flipped below odd values
+            bucketSort(gray, columns, columnOrder, cardinalities, depth + 1, perm, buffer,
+                    start[v], next[v], gray && (reversed ^ ((v & 1) != 0)));
+    }
+
+    private static void comparisonSort(final boolean gray, final int[][] columns,
+                                       final int[] columnOrder, final int depth,
+                                       final int[] perm, final int from, final int to,
+                                       final boolean reversed) {
+        final Integer[] rows = new Integer[to - from];
+        for (int i = from; i < to; ++i)
+            rows[i - from] = perm[i];
+        Arrays.sort(rows, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                boolean r = reversed;
+                for (int d = depth; d < columnOrder.length; ++d) {
+                    final int[] column = columns[columnOrder[d]];
+                    final int x = column[a];
+                    final int y = column[b];
+                    if (x != y)
+                        return (x < y) ^ r ? -1 : 1;
+                    r = gray && (r ^ ((x & 1) != 0));
+                }
+                return 0;
+            }
+        });
+        for (int i = from; i < to; ++i)
+            perm[i] = rows[i - from];
+    }
+
+    private static int[] cardinalities(final int[][] columns) {
+        final int[] answer = new int[columns.length];
+        for (int c = 0; c < columns.length; ++c) {
+            if (columns[c].length != columns[0].length)
+                throw new IllegalArgumentException("Columns should have the same length");
+            for (int v : columns[c]) {
+                if (v < 0)
+                    throw new IllegalArgumentException("Codes should be non-negative");
+                answer[c] = Math.max(answer[c], v + 1);
+            }
+        }
+        return answer;
+    }
+}
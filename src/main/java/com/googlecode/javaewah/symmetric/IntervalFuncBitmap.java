@@ -0,0 +1,171 @@
+package com.googlecode.javaewah.symmetric;
+
+import com.googlecode.javaewah.BitmapStorage;
+
+/**
+ * An interval Boolean function returns true if the number of true values is
+ * within an interval [min, max]. It is a symmetric Boolean function which
+ * generalizes "exactly k" (min = max = k), "at most k" (min = 0) and
+ * "at least k" (max = number of inputs). The majority function (more than
+ * half of the inputs are true) is also supported.
+ *
+ * Within a run where some inputs have literal words, the number of true
+ * values at each bit position is computed in a bit-sliced manner (with
+ * one word per binary digit of the count), and compared against the
+ * bounds.
+ *
+ * The result extends to the end of the longest input; when min is zero,
+ * bits past the size in bits of the inputs (within the last word) may be
+ * set, you may want to call setSizeInBitsWithinLastWord on the result.
+ *
+ * It is not thread safe: you should use one object per thread.
+ *
+ * @see <a
+ * href="http://en.wikipedia.org/wiki/Symmetric_Boolean_function">http://en.wikipedia.org/wiki/Symmetric_Boolean_function</a>
+ * @since 1.2.4
+ */
+public final class IntervalFuncBitmap extends UpdateableBitmapFunction {
+    private final int min;
+    private final int max;
+    private final boolean majority;
+    private long[] slices = new long[0];
+
+    /**
+     * Construct an interval function: bits are true where at least min
+     * and at most max inputs are true.
+     *
+     * @param min minimal number of true values
+     * @param max maximal number of true values
+     */
+    public IntervalFuncBitmap(final int min, final int max) {
+        this(min, max, false);
+    }
+
+    private IntervalFuncBitmap(final int min, final int max, final boolean majority) {
+        super();
+        if (min < 0 || max < min)
+            throw new IllegalArgumentException("Expected 0 <= min <= max");
+        this.min = min;
+        this.max = max;
+        this.majority = majority;
+    }
+
+    /**
+     * @param k number of true values
+     * @return a function true where exactly k inputs are true
+     */
+    public static IntervalFuncBitmap exactly(final int k) {
+        return new IntervalFuncBitmap(k, k);
+    }
+
+    /**
+     * @param k maximal number of true values
+     * @return a function true where at most k inputs are true
+     */
+    public static IntervalFuncBitmap atMost(final int k) {
+        return new IntervalFuncBitmap(0, k);
+    }
+
+    /**
+     * @param min minimal number of true values
+     * @param max maximal number of true values
+     * @return a function true where between min and max inputs are true
+     */
+    public static IntervalFuncBitmap between(final int min, final int max) {
+        return new IntervalFuncBitmap(min, max);
+    }
+
+    /**
+     * @return a function true where more than half of the inputs are true
+     */
+    public static IntervalFuncBitmap majority() {
+        return new IntervalFuncBitmap(0, Integer.MAX_VALUE, true);
+    }
+
+    @Override
+    public IntervalFuncBitmap copy() {
+        return new IntervalFuncBitmap(this.min, this.max, this.majority);
+    }
+
+    @Override
+    public void dispatch(BitmapStorage out, int runBegin, int runEnd) {
+        final int runLength = runEnd - runBegin;
+        final int minimum = this.majority ? this.rw.length / 2 + 1 : this.min;
+        // bounds on the number of true values among the literal words
+        final int lo = Math.max(minimum - this.hammingWeight, 0);
+        final int hi = this.max - this.hammingWeight;
+        if (hi < 0 || this.litWeight < lo) {
+            out.addStreamOfEmptyWords(false, runLength);
+        } else if (lo == 0 && hi >= this.litWeight) {
+            out.addStreamOfEmptyWords(true, runLength);
+        } else if (lo == 1 && hi >= this.litWeight) {
+            orLiterals(out, runBegin, runLength, false);
+        } else if (lo == 0 && hi == 0) {
+            orLiterals(out, runBegin, runLength, true);
+        } else {
+            generalLiterals(lo, hi, out, runBegin, runLength);
+        }
+    }
+
+    private void orLiterals(final BitmapStorage out, final int runBegin,
+                            final int runLength, final boolean negate) {
+        for (int i = 0; i < runLength; ++i) {
+            long w = 0;
+            for (EWAHPointer R : this.getLiterals()) {
+                w |= R.iterator.getLiteralWordAt(i + runBegin - R.beginOfRun());
+            }
+            out.addWord(negate ? ~w : w);
+        }
+    }
+
+    private void generalLiterals(final int lo, final int hi, final BitmapStorage out,
+                                 final int runBegin, final int runLength) {
+        final int numberOfSlices = 32 - Integer.numberOfLeadingZeros(this.litWeight);
+        if (this.slices.length < numberOfSlices)
+            this.slices = new long[numberOfSlices];
+        final long[] s = this.slices;
+        for (int i = 0; i < runLength; ++i) {
+            for (int j = 0; j < numberOfSlices; ++j)
+                s[j] = 0;
+            for (EWAHPointer R : this.getLiterals()) {
+                // ripple-carry addition of one bit to every counter
+                long carry = R.iterator.getLiteralWordAt(i + runBegin - R.beginOfRun());
+                for (int j = 0; carry != 0; ++j) {
+                    final long t = s[j] & carry;
+                    s[j] ^= carry;
+                    carry = t;
+                }
+            }
+            long w = atLeast(s, numberOfSlices, lo);
+            if (hi < this.litWeight)
+                w &= ~atLeast(s, numberOfSlices, hi + 1);
+            out.addWord(w);
+        }
+    }
+
+    /**
+     * Compare bit-sliced counters with a constant.
+     *
+     * @param s      the slices, least significant first
+     * @param n      number of slices
+     * @param c      the constant (non-negative)
+     * @return a word where bits are set if the counter is at least c
+     */
+    static long atLeast(final long[] s, final int n, final int c) {
+        if (c == 0)
+            return ~0L;
+        if ((c >>> n) != 0)
+            return 0L;
+        long greater = 0L;
+        long equal = ~0L;
+        for (int j = n - 1; j >= 0; --j) {
+            if (((c >>> j) & 1) != 0) {
+                equal &= s[j];
+            } else {
+                greater |= equal & s[j];
+                equal &= ~s[j];
+            }
+        }
+        return greater | equal;
+    }
+}
@@ -0,0 +1,124 @@
+package com.googlecode.javaewah.symmetric;
+
+import com.googlecode.javaewah.BitmapStorage;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IteratingBufferedRunningLengthWord;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A parallel version of the RunningBitmapMerge algorithm. The (uncompressed)
+ * word space is partitioned into ranges: the inputs are cut into slices,
+ * one per range, and each range is processed by RunningBitmapMerge, on a
+ * fork-join pool, with its own copy of the function (see
+ * {@link UpdateableBitmapFunction#copy()}). The results are then
+ * concatenated (see also
+ * {@link UpdateableBitmapFunction#mergeCopies}).
+ *
+ * The slices are a copy of the inputs, so this algorithm uses memory
+ * proportional to the compressed size of the inputs. When the inputs are
+ * small, the sequential algorithm is used.
+ *
+ * @since 1.2.4
+ */
+public class ParallelRunningBitmapMerge implements BitmapSymmetricAlgorithm {
+
+    /**
+     * Minimal number of (uncompressed) words per range.
+     */
+    public static final int MIN_WORDS_PER_RANGE = 1 << 14;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an instance using the given fork-join pool.
+     *
+     * @param pool where the work is done
+     */
+    public ParallelRunningBitmapMerge(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Create an instance using the common fork-join pool.
+     */
+    public ParallelRunningBitmapMerge() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void symmetric(final UpdateableBitmapFunction f, final BitmapStorage out,
+                          final EWAHCompressedBitmap... set) {
+        int sizeInWords = 0;
+        for (EWAHCompressedBitmap b : set)
+            sizeInWords = Math.max(sizeInWords,
+                    (b.sizeInBits() + EWAHCompressedBitmap.WORD_IN_BITS - 1) / EWAHCompressedBitmap.WORD_IN_BITS);
+        final int numberOfRanges = Math.min(4 * this.pool.getParallelism(),
+                (sizeInWords + MIN_WORDS_PER_RANGE - 1) / MIN_WORDS_PER_RANGE);
+        if (numberOfRanges <= 1) {
+            new RunningBitmapMerge().symmetric(f, out, set);
+            return;
+        }
+        // fails before any work if the function cannot be copied
+        final UpdateableBitmapFunction[] copies = new UpdateableBitmapFunction[numberOfRanges];
+        for (int r = 0; r < numberOfRanges; ++r)
+            copies[r] = f.copy();
+        final int[] begin = new int[numberOfRanges + 1];
+        for (int r = 0; r <= numberOfRanges; ++r)
+            begin[r] = (int) ((long) sizeInWords * r / numberOfRanges);
+
+        // slices[r][k] is the part of set[k] in range r
+        final EWAHCompressedBitmap[][] slices = new EWAHCompressedBitmap[numberOfRanges][set.length];
+        final ForkJoinTask<?>[] cutting = new ForkJoinTask<?>[set.length];
+        for (int k = 0; k < set.length; ++k) {
+            final int input = k;
+            cutting[k] = this.pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    final IteratingBufferedRunningLengthWord i = new IteratingBufferedRunningLengthWord(set[input]);
+                    for (int r = 0; r < numberOfRanges; ++r) {
+                        final EWAHCompressedBitmap slice = new EWAHCompressedBitmap(1);
+                        i.discharge(slice, begin[r + 1] - begin[r]);
+                        slices[r][input] = slice;
+                    }
+                    return null;
+                }
+            });
+        }
+        for (ForkJoinTask<?> t : cutting)
+            t.join();
+
+        final EWAHCompressedBitmap[] results = new EWAHCompressedBitmap[numberOfRanges];
+        final ForkJoinTask<?>[] merging = new ForkJoinTask<?>[numberOfRanges];
+        for (int r = 0; r < numberOfRanges; ++r) {
+            final int range = r;
+            merging[r] = this.pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    final EWAHCompressedBitmap result = new EWAHCompressedBitmap();
+                    new RunningBitmapMerge().symmetric(copies[range], result, slices[range]);
+                    results[range] = result;
+                    slices[range] = null;
+                    return null;
+                }
+            });
+        }
+        for (ForkJoinTask<?> t : merging)
+            t.join();
+
+        out.clear();
+        int written = 0;
+        for (int r = 0; r < numberOfRanges; ++r) {
+            final int words = results[r].sizeInBits() / EWAHCompressedBitmap.WORD_IN_BITS;
+            if (words == 0)
+                continue;
+            if (begin[r] > written)
+                out.addStreamOfEmptyWords(false, begin[r] - written);
+            new IteratingBufferedRunningLengthWord(results[r]).discharge(out);
+            written = begin[r] + words;
+        }
+        f.mergeCopies(copies, begin);
+    }
+}
@@ -0,0 +1,119 @@
+package com.googlecode.javaewah.symmetric;
+
+import com.googlecode.javaewah.BitmapStorage;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IteratingBufferedRunningLengthWord;
+
+/**
+ * Computes, at each bit position, the number of inputs that are true. The
+ * counts are produced in a bit-sliced manner: slice j is a bitmap whose bits
+ * are the binary digit of weight 2^j of the counts.
+ *
+ * Where no input has a literal word, the count is the number of inputs with
+ * a run of ones, and every slice receives a fill. Otherwise, the literal
+ * words are added one word at a time to bit-sliced counters (a chain of
+ * half adders) and the number of runs of ones is added as a constant.
+ *
+ * The slices are not written to the container given to the merge
+ * algorithm (which is left empty): use {@link #getSlices()} once the merge
+ * is done. With {@link ParallelRunningBitmapMerge}, the slices computed
+ * by the copies of the function are gathered in the original function.
+ *
+ * It is not thread safe: you should use one object per thread.
+ *
+ * @see EWAHCompressedBitmap#sum(EWAHCompressedBitmap...)
+ * @since 1.2.4
+ */
+public final class SumFuncBitmap extends UpdateableBitmapFunction {
+    private EWAHCompressedBitmap[] slices = null;
+    private long[] counters = new long[0];
+
+    /**
+     * Construct a sum function.
+     */
+    public SumFuncBitmap() {
+        super();
+    }
+
+    @Override
+    public SumFuncBitmap copy() {
+        return new SumFuncBitmap();
+    }
+
+    @Override
+    public void mergeCopies(final UpdateableBitmapFunction[] copies, final int[] begin) {
+        int numberOfSlices = 0;
+        for (UpdateableBitmapFunction c : copies)
+            numberOfSlices = Math.max(numberOfSlices, 32 - Integer.numberOfLeadingZeros(c.rw.length));
+        this.slices = new EWAHCompressedBitmap[numberOfSlices];
+        for (int j = 0; j < numberOfSlices; ++j)
+            this.slices[j] = new EWAHCompressedBitmap();
+        this.counters = new long[numberOfSlices];
+        // concatenate the slices of the ranges, in order
+        for (int r = 0; r < copies.length; ++r) {
+            final EWAHCompressedBitmap[] s = ((SumFuncBitmap) copies[r]).slices;
+            if (s == null)
+                continue;
+            for (int j = 0; j < s.length; ++j) {
+                if (s[j].sizeInBits() == 0)
+                    continue;
+                final int written = this.slices[j].sizeInBits() / EWAHCompressedBitmap.WORD_IN_BITS;
+                if (begin[r] > written)
+                    this.slices[j].addStreamOfEmptyWords(false, begin[r] - written);
+                new IteratingBufferedRunningLengthWord(s[j]).discharge(this.slices[j]);
+            }
+        }
+    }
+
+    /**
+     * The slices of the counts, least significant first. There are as many
+     * slices as there are binary digits in the number of inputs.
+     *
+     * @return the slices
+     */
+    public EWAHCompressedBitmap[] getSlices() {
+        if (this.slices == null) {
+            this.slices = new EWAHCompressedBitmap[32 - Integer.numberOfLeadingZeros(this.rw.length)];
+            for (int j = 0; j < this.slices.length; ++j)
+                this.slices[j] = new EWAHCompressedBitmap();
+            this.counters = new long[this.slices.length];
+        }
+        return this.slices;
+    }
+
+    @Override
+    public void dispatch(BitmapStorage out, int runBegin, int runEnd) {
+        final EWAHCompressedBitmap[] s = getSlices();
+        final int runLength = runEnd - runBegin;
+        final int ones = this.hammingWeight;
+        if (this.litWeight == 0) {
+            for (int j = 0; j < s.length; ++j)
+                s[j].addStreamOfEmptyWords(((ones >>> j) & 1) != 0, runLength);
+            return;
+        }
+        final long[] c = this.counters;
+        for (int i = 0; i < runLength; ++i) {
+            for (int j = 0; j < c.length; ++j)
+                c[j] = 0;
+            for (EWAHPointer R : this.getLiterals()) {
+                long carry = R.iterator.getLiteralWordAt(i + runBegin - R.beginOfRun());
+                for (int j = 0; carry != 0; ++j) {
+                    final long t = c[j] & carry;
+                    c[j] ^= carry;
+                    carry = t;
+                }
+            }
+            // add the number of runs of ones (the same at every position)
+            long carry = 0;
+            for (int j = 0; j < c.length; ++j) {
+                final long k = ((ones >>> j) & 1) != 0 ? ~0L : 0L;
+                final long x = c[j] ^ k;
+                final long sum = x ^ carry;
+                carry = (c[j] & k) | (carry & x);
+                c[j] = sum;
+            }
+            for (int j = 0; j < c.length; ++j)
+                s[j].addWord(c[j]);
+        }
+    }
+}
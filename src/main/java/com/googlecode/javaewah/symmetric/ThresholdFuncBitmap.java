@@ -39,6 +39,11 @@ public final class ThresholdFuncBitmap extends UpdateableBitmapFunction {
         this.bufferUsed = 0;
     }
 
+    @Override
+    public ThresholdFuncBitmap copy() {
+        return new ThresholdFuncBitmap(this.min);
+    }
+
     @Override
     public void dispatch(BitmapStorage out, int runBegin, int runEnd) {
         final int runLength = runEnd - runBegin;
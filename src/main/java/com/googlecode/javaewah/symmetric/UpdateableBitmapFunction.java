@@ -145,4 +145,37 @@ public abstract class UpdateableBitmapFunction {
      * @param runEnd   end of the run
      */
     public abstract void dispatch(BitmapStorage out, int runBegin, int runEnd);
+
+    /**
+     * Creates a new function of the same kind (e.g., with the same
+     * threshold), in its initial state. This is used by algorithms that
+     * process several ranges of the inputs concurrently, such as
+     * {@link ParallelRunningBitmapMerge}: each copy processes one range
+     * and writes its result to its own container, so that the partial
+     * results can then be concatenated. A function that keeps results
+     * elsewhere should gather them in {@link #mergeCopies}.
+     * 
+     * The default implementation throws an exception: the function can
+     * only be used by sequential algorithms.
+     *
+     * @return a new function
+     * @throws UnsupportedOperationException if the function cannot be copied
+     * @since 1.2.4
+     */
+    public UpdateableBitmapFunction copy() {
+        throw new UnsupportedOperationException(getClass().getName()
+                + " cannot be copied, so it cannot be used by parallel algorithms");
+    }
+
+    /**
+     * Gathers the results that copies (see {@link #copy()}) did not write to
+     * their containers, once they have processed consecutive ranges of the
+     * inputs. The default implementation does nothing.
+     *
+     * @param copies the copies, in the order of the ranges
+     * @param begin  begin[r] is the first (uncompressed) word of range r
+     * @since 1.2.4
+     */
+    public void mergeCopies(final UpdateableBitmapFunction[] copies, final int[] begin) {
+    }
 }
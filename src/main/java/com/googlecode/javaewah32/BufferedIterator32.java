@@ -35,19 +35,14 @@ public class BufferedIterator32 implements IteratingRLW32, Cloneable {
     @Override
     public void discardFirstWords(int x) {
         while (x > 0) {
-            if (this.iteratingBrlw.getRunningLength() > x) {
+            final int size = this.iteratingBrlw.size();
+            if (size > x) {
                 this.iteratingBrlw.discardFirstWords(x);
                 return;
             }
-            this.iteratingBrlw.discardFirstWords(this.iteratingBrlw.getRunningLength());
-            x -= this.iteratingBrlw.getRunningLength();
-            int toDiscard = x > this.iteratingBrlw.getNumberOfLiteralWords()
-                    ? this.iteratingBrlw.getNumberOfLiteralWords()
-                    : x;
-
-            this.iteratingBrlw.discardFirstWords(toDiscard);
-            x -= toDiscard;
-            if ((x > 0) || (this.iteratingBrlw.size() == 0)) {
+            this.iteratingBrlw.discardFirstWords(size);
+            x -= size;
+            if (this.iteratingBrlw.size() == 0) {
                 if (!this.next()) {
                     break;
                 }
@@ -58,7 +53,7 @@ public class BufferedIterator32 implements IteratingRLW32, Cloneable {
 	@Override
 	public void discardLiteralWords(int x) {
 		this.iteratingBrlw.discardLiteralWords(x);
-        if (this.iteratingBrlw.getNumberOfLiteralWords() == 0)
+        if (this.iteratingBrlw.size() == 0)
             this.next();
 	}
 
@@ -66,7 +61,7 @@ public class BufferedIterator32 implements IteratingRLW32, Cloneable {
     @Override
     public void discardRunningWords() {
         this.iteratingBrlw.discardRunningWords();
-        if (this.iteratingBrlw.getNumberOfLiteralWords() == 0)
+        if (this.iteratingBrlw.size() == 0)
             this.next();
     }
 
@@ -8,14 +8,21 @@ package com.googlecode.javaewah32;
 import com.googlecode.javaewah.ChunkIterator;
 import com.googlecode.javaewah.IntIterator;
 import com.googlecode.javaewah.LogicalElement;
+import com.googlecode.javaewah.datastructure.BitSet;
+import com.googlecode.javaewah32.symmetric.ParallelRunningBitmapMerge32;
 import com.googlecode.javaewah32.symmetric.RunningBitmapMerge32;
+import com.googlecode.javaewah32.symmetric.SumFuncBitmap32;
 import com.googlecode.javaewah32.symmetric.ThresholdFuncBitmap32;
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
 
 
 /**
@@ -115,17 +122,31 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
      * that a bitmap was serialized at this location. It is effectively "deserialized"
      * though the actual content is not copied.
      * This might be useful for implementing memory-mapped bitmaps.
+     * 
+     * Both the legacy format of {@link #serialize(DataOutput)} and the
+     * little-endian format of {@link #serializeLittleEndian(DataOutput)}
+     * are recognized. With the latter, the words are read in little-endian
+     * order, which is the native order of most processors.
      *
      * @param buffer data source
      */
     public EWAHCompressedBitmap32(ByteBuffer buffer) {
-        IntBuffer ib = buffer.asIntBuffer();
-        this.sizeInBits = ib.get(0);
-        int sizeInWords = ib.get(1);
-        int rlwposition = ib.get(2 + sizeInWords);
-        ib.position(2);
-        this.buffer = new IntBufferWrapper(ib.slice(), sizeInWords);
-        this.rlw = new RunningLengthWord32(this.buffer, rlwposition);
+        if (isLittleEndianSerialization(buffer)) {
+            final ByteBuffer b = littleEndianContent(buffer);
+            this.sizeInBits = b.getInt(8);
+            int sizeInWords = b.getInt(12);
+            b.position(LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES);
+            this.buffer = new IntBufferWrapper(b.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), sizeInWords);
+            this.rlw = new RunningLengthWord32(this.buffer, b.getInt(16));
+        } else {
+            IntBuffer ib = buffer.asIntBuffer();
+            this.sizeInBits = ib.get(0);
+            int sizeInWords = ib.get(1);
+            int rlwposition = ib.get(2 + sizeInWords);
+            ib.position(2);
+            this.buffer = new IntBufferWrapper(ib.slice(), sizeInWords);
+            this.rlw = new RunningLengthWord32(this.buffer, rlwposition);
+        }
     }
     
     /**
@@ -632,7 +653,12 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public void deserialize(DataInput in) throws IOException {
-        this.sizeInBits = in.readInt();
+        final int first = in.readInt();
+        if (first == LITTLE_ENDIAN_MAGIC) {
+            deserializeLittleEndian(in);
+            return;
+        }
+        this.sizeInBits = first;
         int sizeInWords = in.readInt();
         this.buffer.clear(); //This creates a buffer with 1 word in it already!
         this.buffer.removeLastWord();
@@ -643,6 +669,418 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
         this.rlw = new RunningLengthWord32(this.buffer, in.readInt());
     }
 
+    /**
+     * Serialize in a little-endian format, which starts with a 24-byte
+     * header (the bytes 0xEA 'W' 'A' 'H', a version number, the word size,
+     * the size in bits, the number of words and the position of the
+     * current running length word) followed by the words in little-endian
+     * order. On most processors, this is the native order: a
+     * memory-mapped bitmap in this format (see the ByteBuffer constructor)
+     * does not need to swap the bytes of each word it reads. The words are
+     * aligned on 8 bytes relative to the beginning of the header.
+     * 
+     * The format is recognized by {@link #deserialize(DataInput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeLittleEndian(DataOutput out) throws IOException {
+        out.writeInt(LITTLE_ENDIAN_MAGIC);
+        out.writeByte(LITTLE_ENDIAN_VERSION);
+        out.writeByte(WORD_IN_BITS);
+        out.writeShort(0);
+        out.writeInt(Integer.reverseBytes(this.sizeInBits));
+        final int siw = this.buffer.sizeInWords();
+        out.writeInt(Integer.reverseBytes(siw));
+        out.writeInt(Integer.reverseBytes(this.rlw.position));
+        out.writeInt(0);
+        for(int i = 0; i < siw; ++i) {
+            out.writeInt(Integer.reverseBytes(this.buffer.getWord(i)));
+        }
+    }
+
+    /**
+     * Report the number of bytes required to serialize this bitmap with
+     * {@link #serializeLittleEndian(DataOutput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the size in bytes
+     * @since 1.2.4
+     */
+    public int serializedSizeInBytesLittleEndian() {
+        return this.sizeInBytes() + LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Checks whether a bitmap serialized with
+     * {@link #serializeLittleEndian(DataOutput)} (rather than with
+     * {@link #serialize(DataOutput)}) starts at the current position of the
+     * buffer. The buffer is not modified.
+     *
+     * @param buffer the buffer
+     * @return whether the buffer starts with the little-endian header
+     * @since 1.2.4
+     */
+    public static boolean isLittleEndianSerialization(ByteBuffer buffer) {
+        return buffer.remaining() >= LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES
+                && buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(buffer.position()) == LITTLE_ENDIAN_MAGIC;
+    }
+
+    private void deserializeLittleEndian(DataInput in) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != LITTLE_ENDIAN_VERSION)
+            throw new IOException("Unsupported format version: " + version);
+        final int wordSize = in.readUnsignedByte();
+        if (wordSize != WORD_IN_BITS)
+            throw new IOException("Expected 32-bit words, found " + wordSize + "-bit words");
+        in.readShort();
+        this.sizeInBits = Integer.reverseBytes(in.readInt());
+        int sizeInWords = Integer.reverseBytes(in.readInt());
+        final int rlwPosition = Integer.reverseBytes(in.readInt());
+        in.readInt();
+        this.buffer.clear();//This creates a buffer with 1 word in it already!
+        this.buffer.removeLastWord();
+        this.buffer.ensureCapacity(sizeInWords);
+        for(int i = 0; i < sizeInWords; ++i) {
+            this.buffer.push_back(Integer.reverseBytes(in.readInt()));
+        }
+        this.rlw = new RunningLengthWord32(this.buffer, rlwPosition);
+    }
+
+    // the little-endian content, from the header on, after checking the header
+    private static ByteBuffer littleEndianContent(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.get(4) != LITTLE_ENDIAN_VERSION)
+            throw new IllegalArgumentException("Unsupported format version: " + b.get(4));
+        if (b.get(5) != WORD_IN_BITS)
+            throw new IllegalArgumentException("Expected 32-bit words, found " + b.get(5) + "-bit words");
+        return b;
+    }
+
+    /**
+     * Serialize like {@link #serialize(DataOutput)}, followed by a 16-byte
+     * footer: the bytes 0xEA 'C' 'R' 'C', the cardinality, the number of
+     * running length words and a CRC32 checksum of all the preceding
+     * bytes. The footer is ignored by {@link #deserialize(DataInput)} and
+     * by the ByteBuffer constructor, but it lets {@link #validate(ByteBuffer)}
+     * detect a truncated or corrupted bitmap before it is mapped.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeWithChecksum(DataOutput out) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer chunk = ByteBuffer.allocate(CHECKSUM_CHUNK_SIZE_IN_BYTES);
+        chunk.putInt(this.sizeInBits);
+        final int siw = this.buffer.sizeInWords();
+        chunk.putInt(siw);
+        for(int i = 0; i < siw; ++i) {
+            if (chunk.remaining() < 4)
+                writeChunk(chunk, crc, out);
+            chunk.putInt(this.buffer.getWord(i));
+        }
+        if (chunk.remaining() < 4 * 4)
+            writeChunk(chunk, crc, out);
+        chunk.putInt(this.rlw.position);
+        chunk.putInt(CHECKSUM_FOOTER_MAGIC);
+        chunk.putInt(this.cardinality());
+        chunk.putInt(checkStructure());
+        writeChunk(chunk, crc, out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Report the number of bytes required to serialize this bitmap with
+     * {@link #serializeWithChecksum(DataOutput)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the size in bytes
+     * @since 1.2.4
+     */
+    public int serializedSizeInBytesWithChecksum() {
+        return this.serializedSizeInBytes() + CHECKSUM_FOOTER_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Check, in one pass over the running length words, that the bitmap is
+     * well formed: the literal words announced by each running length word
+     * are within the buffer, the last running length word is the current
+     * one and the words do not cover more bits than the size in bits. A
+     * bitmap mapped from a truncated or corrupted buffer can fail
+     * otherwise with an exception deep in an iterator, or give wrong
+     * answers.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return whether the bitmap is well formed
+     * @since 1.2.4
+     */
+    public boolean validate() {
+        return checkStructure() >= 0;
+    }
+
+    /**
+     * Check that a bitmap serialized at the current position of the buffer
+     * (in any of the formats recognized by the ByteBuffer constructor) is
+     * well formed, without copying it: the header must agree with the
+     * length of the buffer and the words must pass {@link #validate()}. If
+     * the bitmap was serialized with {@link #serializeWithChecksum(DataOutput)},
+     * the checksum, the cardinality and the number of running length words
+     * recorded in the footer are also checked. The buffer is not modified.
+     *
+     * @param buffer the buffer
+     * @return whether a well-formed bitmap starts at the current position
+     * @since 1.2.4
+     */
+    public static boolean validate(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.slice();
+        final int length;
+        if (isLittleEndianSerialization(b)) {
+            final int sizeInWords = b.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(12);
+            if (sizeInWords < 1 || sizeInWords > (b.remaining() - LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES) / 4)
+                return false;
+            length = LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES + sizeInWords * 4;
+        } else {
+            if (b.remaining() < 3 * 4)
+                return false;
+            final int sizeInWords = b.getInt(4);
+            if (sizeInWords < 1 || sizeInWords > (b.remaining() - 3 * 4) / 4)
+                return false;
+            length = 3 * 4 + sizeInWords * 4;
+        }
+        final EWAHCompressedBitmap32 bitmap;
+        try {
+            bitmap = new EWAHCompressedBitmap32(b.duplicate());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        final int markers = bitmap.checkStructure();
+        if (markers < 0)
+            return false;
+        if (b.remaining() >= length + CHECKSUM_FOOTER_SIZE_IN_BYTES && b.getInt(length) == CHECKSUM_FOOTER_MAGIC) {
+            final ByteBuffer covered = b.duplicate();
+            covered.limit(length + CHECKSUM_FOOTER_SIZE_IN_BYTES - 4);
+            final CRC32 crc = new CRC32();
+            crc.update(covered);
+            return b.getInt(length + CHECKSUM_FOOTER_SIZE_IN_BYTES - 4) == (int) crc.getValue()
+                    && b.getInt(length + 8) == markers
+                    && b.getInt(length + 4) == bitmap.cardinality();
+        }
+        return true;
+    }
+
+    // number of running length words, or -1 if the bitmap is not well formed
+    private int checkStructure() {
+        if (this.sizeInBits < 0)
+            return -1;
+        final int siw = this.buffer.sizeInWords();
+        int markers = 0;
+        int last = -1;
+        long coveredWords = 0;
+        for (int pos = 0; pos < siw; ++pos) {
+            final int literals = RunningLengthWord32.getNumberOfLiteralWords(this.buffer, pos);
+            if (literals > siw - pos - 1)
+                return -1;
+            coveredWords += RunningLengthWord32.getRunningLength(this.buffer, pos) + literals;
+            last = pos;
+            ++markers;
+            pos += literals;
+        }
+        if (last != this.rlw.position
+                || coveredWords > (this.sizeInBits + (long) WORD_IN_BITS - 1) / WORD_IN_BITS)
+            return -1;
+        return markers;
+    }
+
+    private static void writeChunk(ByteBuffer chunk, CRC32 crc, DataOutput out) throws IOException {
+        crc.update(chunk.array(), 0, chunk.position());
+        out.write(chunk.array(), 0, chunk.position());
+        chunk.clear();
+    }
+
+    /**
+     * Serialize in a compact format meant for cold storage. Each running
+     * length word is written as two variable-length integers (running
+     * length and running bit, then number of literal words), which takes
+     * a few bytes instead of 4. If packLiterals is true, each literal
+     * word is written as a one-byte mask of its nonzero bytes followed by
+     * these bytes, which pays off when the literal words are sparse;
+     * otherwise the literal words are written as they are.
+     * 
+     * The format is read back with {@link #deserializeCompact(DataInput)}
+     * or, one word at a time, with
+     * {@link #deserializeCompact(DataInput, BitmapStorage32)}.
+     * 
+     * The current bitmap is not modified.
+     *
+     * @param out          the DataOutput stream
+     * @param packLiterals whether to byte-pack the literal words
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void serializeCompact(DataOutput out, boolean packLiterals) throws IOException {
+        out.writeByte(COMPACT_VERSION);
+        out.writeByte(WORD_IN_BITS);
+        out.writeByte(packLiterals ? COMPACT_PACKED_LITERALS : 0);
+        writeVarLong(out, this.sizeInBits);
+        final int siw = this.buffer.sizeInWords();
+        for (int pos = 0; pos < siw; ) {
+            final long rl = RunningLengthWord32.getRunningLength(this.buffer, pos);
+            final boolean rb = RunningLengthWord32.getRunningBit(this.buffer, pos);
+            final int literals = RunningLengthWord32.getNumberOfLiteralWords(this.buffer, pos);
+            // zero is kept for the end of the bitmap
+            writeVarLong(out, ((rl << 1) | (rb ? 1 : 0)) + 1);
+            writeVarLong(out, literals);
+            for (int k = pos + 1; k <= pos + literals; ++k) {
+                if (packLiterals)
+                    writePackedWord(out, this.buffer.getWord(k));
+                else
+                    out.writeInt(this.buffer.getWord(k));
+            }
+            pos += literals + 1;
+        }
+        out.writeByte(0);
+    }
+
+    /**
+     * Deserialize a bitmap written by
+     * {@link #serializeCompact(DataOutput, boolean)}.
+     *
+     * @param in the DataInput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public void deserializeCompact(DataInput in) throws IOException {
+        this.clear();
+        deserializeCompact(in, this);
+    }
+
+    /**
+     * Decode a bitmap written by
+     * {@link #serializeCompact(DataOutput, boolean)}, feeding its words to
+     * the container as they are read: the compressed words need not be
+     * expanded in memory first. For example, a {@link BitCounter32}
+     * computes the cardinality of the stored bitmap.
+     *
+     * @param in        the DataInput stream
+     * @param container where the words are written
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @since 1.2.4
+     */
+    public static void deserializeCompact(DataInput in, BitmapStorage32 container) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != COMPACT_VERSION)
+            throw new IOException("Unsupported format version: " + version);
+        final int wordSize = in.readUnsignedByte();
+        if (wordSize != WORD_IN_BITS)
+            throw new IOException("Expected 32-bit words, found " + wordSize + "-bit words");
+        final boolean packed = (in.readUnsignedByte() & COMPACT_PACKED_LITERALS) != 0;
+        final long sizeInBits = readVarLong(in);
+        if (sizeInBits < 0 || sizeInBits > Integer.MAX_VALUE)
+            throw new IOException("Invalid size in bits: " + sizeInBits);
+        // a corrupt count must not expand into more words than the bitmap has
+        final long sizeInWords = (sizeInBits + WORD_IN_BITS - 1) / WORD_IN_BITS;
+        long words = 0;
+        for (long marker = readVarLong(in); marker != 0; marker = readVarLong(in)) {
+            final long runningLength = (marker - 1) >>> 1;
+            if (runningLength > sizeInWords - words)
+                throw new IOException("Invalid running length: " + runningLength);
+            container.addStreamOfEmptyWords(((marker - 1) & 1) != 0, (int) runningLength);
+            words += runningLength;
+            final long literals = readVarLong(in);
+            if (literals < 0 || literals > sizeInWords - words)
+                throw new IOException("Invalid number of literal words: " + literals);
+            for (long k = 0; k < literals; ++k)
+                container.addWord(packed ? readPackedWord(in) : in.readInt());
+            words += literals;
+        }
+        container.setSizeInBitsWithinLastWord((int) sizeInBits);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    // a mask of the nonzero bytes, then these bytes
+    private static void writePackedWord(DataOutput out, int word) throws IOException {
+        int mask = 0;
+        for (int k = 0; k < 4; ++k)
+            if (((word >>> (8 * k)) & 0xFF) != 0)
+                mask |= 1 << k;
+        out.writeByte(mask);
+        for (int k = 0; k < 4; ++k)
+            if ((mask & (1 << k)) != 0)
+                out.writeByte(word >>> (8 * k));
+    }
+
+    private static int readPackedWord(DataInput in) throws IOException {
+        final int mask = in.readUnsignedByte();
+        if (mask >= 1 << 4)
+            throw new IOException("Malformed literal word");
+        int word = 0;
+        for (int k = 0; k < 4; ++k)
+            if ((mask & (1 << k)) != 0)
+                word |= in.readUnsignedByte() << (8 * k);
+        return word;
+    }
+
+    /**
+     * Position of the current running length word, the only marker that
+     * appending to the bitmap modifies.
+     *
+     * @return the position in the buffer
+     */
+    int runningLengthWordPosition() {
+        return this.rlw.position;
+    }
+
+    /**
+     * Replace the words from the given position on, used to replay the
+     * records of a {@link BitmapAppendLog32}.
+     *
+     * @param marker       position of a word to overwrite before the
+     *                     replaced words, or -1
+     * @param markerWord   new value of this word
+     * @param from         position of the first replaced word
+     * @param words        the new words
+     * @param sizeInBits   the new size in bits
+     * @param rlwPosition  the new position of the current running length word
+     */
+    void replaceTail(int marker, int markerWord, int from, int[] words, int sizeInBits, int rlwPosition) {
+        while (this.buffer.sizeInWords() > from)
+            this.buffer.removeLastWord();
+        if (marker >= 0)
+            this.buffer.setWord(marker, markerWord);
+        this.buffer.ensureCapacity(from + words.length);
+        for (int word : words)
+            this.buffer.push_back(word);
+        this.sizeInBits = sizeInBits;
+        this.rlw = new RunningLengthWord32(this.buffer, rlwPosition);
+    }
+
     /**
      * Check to see whether the two compressed bitmaps contain the same set
      * bits.
@@ -1590,6 +2028,65 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
                 new ThresholdFuncBitmap32(t), container, bitmaps);
     }
 
+    /**
+     * Compute a Boolean threshold function in parallel: bits are true where
+     * at least t bitmaps have a true bit. The word space is split into
+     * ranges that are processed concurrently on the pool (see
+     * {@link ParallelRunningBitmapMerge32}).
+     *
+     * @param pool    where the work is done
+     * @param t       the threshold
+     * @param bitmaps input data
+     * @return the aggregated bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap32 threshold(final ForkJoinPool pool, final int t,
+            final EWAHCompressedBitmap32... bitmaps) {
+        final EWAHCompressedBitmap32 container = new EWAHCompressedBitmap32();
+        thresholdWithContainer(pool, container, t, bitmaps);
+        return container;
+    }
+
+    /**
+     * Compute a Boolean threshold function in parallel: bits are true where
+     * at least t bitmaps have a true bit.
+     * 
+     * The content of the container is overwritten.
+     *
+     * @param pool      where the work is done
+     * @param container where we write the aggregated bitmap
+     * @param t         the threshold
+     * @param bitmaps   input data
+     * @since 1.2.4
+     */
+    public static void thresholdWithContainer(final ForkJoinPool pool,
+            final BitmapStorage32 container, final int t, final EWAHCompressedBitmap32... bitmaps) {
+        (new ParallelRunningBitmapMerge32(pool)).symmetric(
+                new ThresholdFuncBitmap32(t), container, bitmaps);
+    }
+
+    /**
+     * Compute, at each position, the number of bitmaps that have a true bit.
+     * The counts are returned in a bit-sliced manner: the bitmap at index j
+     * has a true bit where the count has a one as its binary digit of
+     * weight 2^j. There are as many bitmaps as there are binary digits in
+     * the number of inputs; they all have the size in bits of the largest
+     * input.
+     *
+     * @param bitmaps input data
+     * @return the slices, least significant first
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap32[] sum(final EWAHCompressedBitmap32... bitmaps) {
+        final SumFuncBitmap32 f = new SumFuncBitmap32();
+        (new RunningBitmapMerge32()).symmetric(f, new EWAHCompressedBitmap32(), bitmaps);
+        final EWAHCompressedBitmap32[] slices = f.getSlices();
+        final int size = maxSizeInBits(bitmaps);
+        for (EWAHCompressedBitmap32 slice : slices)
+            slice.setSizeInBitsWithinLastWord(size);
+        return slices;
+    }
+
 
     /**
      * Populate an array of (sorted integers) corresponding to the location
@@ -1630,6 +2127,117 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
 
     }
 
+    /**
+     * Returns the uncompressed words of the bitmap, as 64-bit words (bit i
+     * is bit i % 64 of word i / 64, as in java.util.BitSet): there are as
+     * many words as needed to cover sizeInBits() bits. Fills are written
+     * with Arrays.fill and literal words are copied in bulk, so this is
+     * much faster than going through the set bits. A java.util.BitSet can
+     * be obtained with java.util.BitSet.valueOf(bitmap.toLongArray()).
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the words
+     * @since 1.2.4
+     */
+    public long[] toLongArray() {
+        final int[] words = new int[(this.sizeInBits + WORD_IN_BITS - 1) / WORD_IN_BITS];
+        final int[] source = this.buffer instanceof IntArray ? ((IntArray) this.buffer).words() : null;
+        int pos = 0;
+        final EWAHIterator32 i = this.getEWAHIterator();
+        while (i.hasNext() && pos < words.length) {
+            RunningLengthWord32 localrlw = i.next();
+            final int end = Math.min(pos + localrlw.getRunningLength(), words.length);
+            if (localrlw.getRunningBit())
+                Arrays.fill(words, pos, end, ~0);
+            pos = end;
+            final int number = Math.min(localrlw.getNumberOfLiteralWords(), words.length - pos);
+            if (source != null) {
+                System.arraycopy(source, i.literalWords(), words, pos, number);
+            } else {
+                for (int j = 0; j < number; ++j)
+                    words[pos + j] = i.buffer().getWord(i.literalWords() + j);
+            }
+            pos += number;
+        }
+        final long[] answer = new long[(words.length + 1) / 2];
+        for (int k = 0; k < words.length; ++k)
+            answer[k / 2] |= (words[k] & 0xFFFFFFFFL) << (32 * (k % 2));
+        return answer;
+    }
+
+    /**
+     * Returns an uncompressed copy of the bitmap (see {@link #toLongArray()}).
+     * 
+     * The current bitmap is not modified.
+     *
+     * @return the uncompressed bitmap
+     * @since 1.2.4
+     */
+    public BitSet toBitSet() {
+        return BitSet.valueOf(toLongArray());
+    }
+
+    /**
+     * Returns a compressed bitmap made of the given uncompressed 64-bit
+     * words (bit i is bit i % 64 of word i / 64, as in java.util.BitSet).
+     * Words made of zeros or ones become fills, and sequences of literal
+     * words are copied in bulk. The size in bits is 64 times the number of
+     * words.
+     *
+     * @param words the words (they will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap32 fromLongArray(final long[] words) {
+        final int[] w = new int[2 * words.length];
+        for (int k = 0; k < words.length; ++k) {
+            w[2 * k] = (int) words[k];
+            w[2 * k + 1] = (int) (words[k] >>> 32);
+        }
+        final EWAHCompressedBitmap32 answer = new EWAHCompressedBitmap32();
+        final IntArray source = new IntArray(w);
+        int k = 0;
+        while (k < w.length) {
+            int end = k + 1;
+            if (w[k] == 0 || w[k] == ~0) {
+                while (end < w.length && w[end] == w[k])
+                    ++end;
+                answer.addStreamOfEmptyWords(w[k] != 0, end - k);
+            } else {
+                while (end < w.length && w[end] != 0 && w[end] != ~0)
+                    ++end;
+                answer.addStreamOfLiteralWords(source, k, end - k);
+            }
+            k = end;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns a compressed copy of an uncompressed bitmap (see
+     * {@link #fromLongArray(long[])}).
+     *
+     * @param bitset the uncompressed bitmap (it will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap32 fromBitSet(final BitSet bitset) {
+        return fromLongArray(bitset.toLongArray());
+    }
+
+    /**
+     * Returns a compressed copy of a java.util.BitSet (see
+     * {@link #fromLongArray(long[])}).
+     *
+     * @param bitset the uncompressed bitmap (it will not be modified)
+     * @return the compressed bitmap
+     * @since 1.2.4
+     */
+    public static EWAHCompressedBitmap32 fromBitSet(final java.util.BitSet bitset) {
+        return fromLongArray(bitset.toLongArray());
+    }
+
     /**
      * A more detailed string describing the bitmap (useful for debugging).
      * A JSON output is produced.
@@ -1709,12 +2317,111 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
         other.sizeInBits = tmp3;
     }
 
+    /**
+     * Computes the bitwise AND of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. This is equivalent to
+     * <code>swap(and(a))</code>, but when the buffer of the previous content
+     * is small (at most 256 words), it is kept and recycled by later in-place
+     * operations, so that folding many small bitmaps into an accumulator does
+     * not allocate a new bitmap each time. Larger buffers are released, so
+     * that a bitmap does not hold on to twice its memory; {@link #trim()}
+     * releases the kept buffer as well.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void andInPlace(final EWAHCompressedBitmap32 a) {
+        final EWAHCompressedBitmap32 target = scratch();
+        andToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise AND NOT of the current bitmap with some other
+     * bitmap and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap32)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void andNotInPlace(final EWAHCompressedBitmap32 a) {
+        final EWAHCompressedBitmap32 target = scratch();
+        andNotToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise OR of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap32)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void orInPlace(final EWAHCompressedBitmap32 a) {
+        final EWAHCompressedBitmap32 target = scratch();
+        orToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * Computes the bitwise XOR of the current bitmap with some other bitmap
+     * and stores the result in the current bitmap. See
+     * {@link #andInPlace(EWAHCompressedBitmap32)}.
+     * 
+     * Since this modifies the bitmap, this method is not thread-safe.
+     *
+     * @param a the other bitmap (it will not be modified)
+     * @since 1.2.4
+     */
+    public void xorInPlace(final EWAHCompressedBitmap32 a) {
+        final EWAHCompressedBitmap32 target = scratch();
+        xorToContainer(a, target);
+        swap(target);
+        recycle(target);
+    }
+
+    /**
+     * For internal use: the bitmap used by the in-place operations.
+     *
+     * @return an empty bitmap whose buffer can be reused
+     */
+    private EWAHCompressedBitmap32 scratch() {
+        if (this.scratch == null)
+            this.scratch = new EWAHCompressedBitmap32(this.buffer.sizeInWords());
+        return this.scratch;
+    }
+
+    /**
+     * For internal use: after an in-place operation, keep the previous
+     * content for the next one only if it is a small array (and not, e.g.,
+     * a wrapped buffer that must not be overwritten).
+     *
+     * @param previous the bitmap holding the previous content
+     */
+    private void recycle(final EWAHCompressedBitmap32 previous) {
+        if (!(previous.buffer instanceof IntArray)
+                || ((IntArray) previous.buffer).capacity() > MAX_SCRATCH_SIZE_IN_WORDS)
+            this.scratch = null;
+    }
+
     /**
      * Reduce the internal buffer to its minimal allowable size (given by
      * this.actualsizeinwords). This can free memory.
+     * It also releases the buffer kept by the in-place operations.
      */
     public void trim() {
         this.buffer.trim();
+        this.scratch = null;
     }
 
     /**
@@ -2166,6 +2873,11 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
      */
     private int sizeInBits = 0;
 
+    /**
+     * scratch: bitmap recycled by the in-place operations (may be null).
+     */
+    private transient EWAHCompressedBitmap32 scratch = null;
+
     /**
      * whether we adjust after some aggregation by adding in zeroes *
      */
@@ -2176,5 +2888,27 @@ public final class EWAHCompressedBitmap32 implements Cloneable, Externalizable,
      */
     public static final int WORD_IN_BITS = 32;
 
+    // header of the little-endian serialization format: 0xEA 'W' 'A' 'H'
+    private static final int LITTLE_ENDIAN_MAGIC = 0xEA574148;
+
+    private static final int LITTLE_ENDIAN_VERSION = 1;
+
+    private static final int LITTLE_ENDIAN_HEADER_SIZE_IN_BYTES = 24;
+
+    // footer of the checksummed serialization: 0xEA 'C' 'R' 'C'
+    private static final int CHECKSUM_FOOTER_MAGIC = 0xEA435243;
+
+    private static final int CHECKSUM_FOOTER_SIZE_IN_BYTES = 16;
+
+    private static final int CHECKSUM_CHUNK_SIZE_IN_BYTES = 8192;
+
+    // largest buffer kept by the in-place operations
+    private static final int MAX_SCRATCH_SIZE_IN_WORDS = 256;
+
+    private static final int COMPACT_VERSION = 1;
+
+    // flag of the compact serialization: the literal words are byte-packed
+    private static final int COMPACT_PACKED_LITERALS = 1;
+
     static final long serialVersionUID = 1L;
 }
@@ -1,5 +1,7 @@
 package com.googlecode.javaewah32;
 
+import com.googlecode.javaewah.datastructure.PriorityQ;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -214,6 +216,145 @@ public final class FastAggregation32 {
         container.setSizeInBitsWithinLastWord(range);
     }
 
+    /**
+     * Compute the or aggregate, picking the algorithm from the statistics
+     * of the inputs (see {@link #adaptiveBufferSize}). Sparse inputs are
+     * merged two-by-two with a priority queue, dense inputs are aggregated
+     * over a temporary uncompressed bitmap whose size is chosen from the
+     * universe covered by the inputs.
+     *
+     * If only one bitmap is provided, it is returned as is.
+     *
+     * @param bitmaps the source bitmaps
+     * @return the or aggregate
+     */
+    public static EWAHCompressedBitmap32 adaptiveor(final EWAHCompressedBitmap32... bitmaps) {
+        if (bitmaps.length == 0)
+            return new EWAHCompressedBitmap32();
+        if (bitmaps.length == 1)
+            return bitmaps[0];
+        EWAHCompressedBitmap32 answer = new EWAHCompressedBitmap32();
+        adaptiveorWithContainer(answer, bitmaps);
+        return answer;
+    }
+
+    /**
+     * Compute the or aggregate, picking the algorithm from the statistics
+     * of the inputs (see {@link #adaptiveBufferSize}).
+     *
+     * The content of the container is overwritten.
+     *
+     * @param container where the aggregate is written
+     * @param bitmaps   the source bitmaps
+     */
+    public static void adaptiveorWithContainer(final BitmapStorage32 container,
+                                               final EWAHCompressedBitmap32... bitmaps) {
+        if (bitmaps.length < 2)
+            throw new IllegalArgumentException(
+                    "We need at least two bitmaps");
+        final int bufSize = adaptiveBufferSize(bitmaps);
+        if (bufSize == 0) {
+            orToContainer(container, bitmaps);
+        } else {
+            container.clear();
+            bufferedorWithContainer(container, bufSize, bitmaps);
+        }
+    }
+
+    /**
+     * Compute the xor aggregate, picking the algorithm from the statistics
+     * of the inputs (see {@link #adaptiveBufferSize}).
+     *
+     * If only one bitmap is provided, it is returned as is.
+     *
+     * @param bitmaps the source bitmaps
+     * @return the xor aggregate
+     */
+    public static EWAHCompressedBitmap32 adaptivexor(final EWAHCompressedBitmap32... bitmaps) {
+        if (bitmaps.length == 0)
+            return new EWAHCompressedBitmap32();
+        if (bitmaps.length == 1)
+            return bitmaps[0];
+        EWAHCompressedBitmap32 answer = new EWAHCompressedBitmap32();
+        adaptivexorWithContainer(answer, bitmaps);
+        return answer;
+    }
+
+    /**
+     * Compute the xor aggregate, picking the algorithm from the statistics
+     * of the inputs (see {@link #adaptiveBufferSize}).
+     *
+     * The content of the container is overwritten.
+     *
+     * @param container where the aggregate is written
+     * @param bitmaps   the source bitmaps
+     */
+    public static void adaptivexorWithContainer(final BitmapStorage32 container,
+                                                final EWAHCompressedBitmap32... bitmaps) {
+        if (bitmaps.length < 2)
+            throw new IllegalArgumentException(
+                    "We need at least two bitmaps");
+        final int bufSize = adaptiveBufferSize(bitmaps);
+        if (bufSize == 0) {
+            xorToContainer(container, bitmaps);
+        } else {
+            container.clear();
+            bufferedxorWithContainer(container, bufSize, bitmaps);
+        }
+    }
+
+    /**
+     * Strategy selection used by adaptiveor and adaptivexor. Returns 0
+     * when the inputs should be merged two-by-two with a priority queue,
+     * otherwise the buffer size (in 32-bit words) to pass to bufferedor or
+     * bufferedxor.
+     * 
+     * The priority queue reads the compressed data about log2(n) times.
+     * The buffered algorithms read it once, but they must clear and write
+     * out every word of the universe (the largest sizeInBits) and revisit
+     * every input once per buffer-full. We pick whichever is expected to
+     * touch fewer words. The buffer covers the whole universe when it fits
+     * within IteratorAggregation32.DEFAULT_MAX_BUF_SIZE words.
+     * 
+     * The examples/AggregationCalibration.java program compares this
+     * choice with the alternatives on the current machine.
+     *
+     * @param bitmaps the source bitmaps
+     * @return 0 for the priority queue, otherwise a buffer size in words
+     */
+    public static int adaptiveBufferSize(final EWAHCompressedBitmap32... bitmaps) {
+        if (bitmaps.length < ADAPTIVE_MIN_BITMAPS)
+            return 0;
+        long compressedWords = 0;
+        int range = 0;
+        for (EWAHCompressedBitmap32 bitmap : bitmaps) {
+            compressedWords += bitmap.sizeInBytes() / (EWAHCompressedBitmap32.WORD_IN_BITS / 8);
+            range = Math.max(range, bitmap.sizeInBits());
+        }
+        final long universeWords = (range + EWAHCompressedBitmap32.WORD_IN_BITS - 1L)
+                / EWAHCompressedBitmap32.WORD_IN_BITS;
+        if (universeWords == 0)
+            return 0;
+        final int bufSize = (int) Math.min(universeWords, IteratorAggregation32.DEFAULT_MAX_BUF_SIZE);
+        final long rounds = (universeWords + bufSize - 1) / bufSize;
+        final int logn = 32 - Integer.numberOfLeadingZeros(bitmaps.length - 1);
+        final long heapCost = compressedWords * logn;
+        final long bufferedCost = compressedWords + UNIVERSE_WORD_COST * universeWords
+                + rounds * bitmaps.length;
+        return bufferedCost < heapCost ? bufSize : 0;
+    }
+
+    /**
+     * With fewer inputs, adaptiveBufferSize always picks the priority queue.
+     */
+    static final int ADAPTIVE_MIN_BITMAPS = 3;
+
+    /**
+     * Relative cost of clearing and writing out one uncompressed word,
+     * compared with reading one compressed word.
+     */
+    static final int UNIVERSE_WORD_COST = 2;
+
     /**
      * Uses a priority queue to compute the or aggregate.
      * 
@@ -391,5 +532,217 @@ public final class FastAggregation32 {
         pq.poll().xorToContainer(pq.poll(), container);
     }
 
+    /**
+     * Find the k bitmaps having the largest intersection with a filter, as
+     * in "the k most frequent values among the rows matching the filter".
+     * Bitmaps with an empty intersection are never selected, so that fewer
+     * than k indexes may be returned.
+     *
+     * The bitmaps are considered by decreasing cardinality, which bounds
+     * the size of their intersection, while a heap keeps the k best
+     * bitmaps found so far. As soon as the bound of the next bitmap cannot
+     * beat the worst of these k bitmaps, the remaining bitmaps are skipped
+     * without computing their intersection. Intersections are computed in
+     * batches, with one pass over the filter per batch (see
+     * {@link #andCardinalities(EWAHCompressedBitmap32, EWAHCompressedBitmap32...)}).
+     *
+     * @param k       number of bitmaps to select
+     * @param filter  the filter
+     * @param bitmaps the candidate bitmaps (e.g., one per value)
+     * @return the indexes of the selected bitmaps, by decreasing size of
+     * the intersection (ties are broken by increasing index)
+     * @since 1.2.4
+     */
+    public static int[] topK(final int k, final EWAHCompressedBitmap32 filter,
+                             final EWAHCompressedBitmap32... bitmaps) {
+        if (k <= 0)
+            return new int[0];
+        final int filterCardinality = filter.cardinality();
+        // upper bound in the high bits, then the complement of the index
+        final long[] candidates = new long[bitmaps.length];
+        for (int i = 0; i < bitmaps.length; ++i) {
+            final int bound = Math.min(bitmaps[i].cardinality(), filterCardinality);
+            candidates[i] = ((long) bound << 32) | (~i & 0xFFFFFFFFL);
+        }
+        Arrays.sort(candidates);
+        // the worst selected bitmap is on top
+        final PriorityQ<int[]> heap = new PriorityQ<int[]>(Math.min(k, bitmaps.length),
+                new Comparator<int[]>() {
+                    @Override
+                    public int compare(int[] a, int[] b) {
+                        if (a[1] != b[1])
+                            return a[1] < b[1] ? -1 : 1;
+                        return b[0] - a[0];
+                    }
+                }
+        );
+        final int batchSize = Math.max(k, 8);
+        int j = candidates.length - 1;
+        while (j >= 0) {
+            // the next candidates that may still be selected
+            int n = 0;
+            while (n < batchSize && j - n >= 0) {
+                final int bound = (int) (candidates[j - n] >>> 32);
+                if (bound == 0 || (heap.size() == k && bound < heap.peek()[1]))
+                    break;
+                ++n;
+            }
+            if (n == 0)
+                break;
+            final EWAHCompressedBitmap32[] batch = new EWAHCompressedBitmap32[n];
+            for (int b = 0; b < n; ++b)
+                batch[b] = bitmaps[~(int) candidates[j - b]];
+            final int[] counts = andCardinalities(filter, batch);
+            for (int b = 0; b < n; ++b) {
+                final int index = ~(int) candidates[j - b];
+                final int count = counts[b];
+                if (count == 0)
+                    continue;
+                if (heap.size() < k) {
+                    heap.toss(new int[]{index, count});
+                    if (heap.size() == k)
+                        heap.buildHeap();
+                } else if (count > heap.peek()[1]
+                        || (count == heap.peek()[1] && index < heap.peek()[0])) {
+                    heap.peek()[0] = index;
+                    heap.peek()[1] = count;
+                    heap.percolateDown();
+                }
+            }
+            j -= n;
+        }
+        if (heap.size() < k)
+            heap.buildHeap();
+        final int[] answer = new int[heap.size()];
+        for (int a = answer.length - 1; a >= 0; --a)
+            answer[a] = heap.poll()[0];
+        return answer;
+    }
 
+    /**
+     * Compute the size of the intersection of a filter with each of many
+     * bitmaps (e.g., a count per group or per value), in one pass over the
+     * filter. The result is the same as calling
+     * {@link EWAHCompressedBitmap32#andCardinality(EWAHCompressedBitmap32)}
+     * once per bitmap, but the filter is not scanned again for each bitmap.
+     *
+     * The bitmaps are kept in a heap keyed on the position of their next
+     * word that is not zero, so that only the bitmaps having bits where
+     * the filter is not empty are visited, and runs of zeros are skipped
+     * in constant time.
+     *
+     * @param filter  the filter
+     * @param bitmaps the bitmaps (e.g., disjoint groups)
+     * @return the size of the intersection of each bitmap with the filter
+     * @since 1.2.4
+     */
+    public static int[] andCardinalities(final EWAHCompressedBitmap32 filter,
+                                         final EWAHCompressedBitmap32... bitmaps) {
+        final int[] counts = new int[bitmaps.length];
+        final PriorityQ<Cursor> heap = new PriorityQ<Cursor>(Math.max(bitmaps.length, 1),
+                new Comparator<Cursor>() {
+                    @Override
+                    public int compare(Cursor a, Cursor b) {
+                        return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+                    }
+                }
+        );
+        for (int k = 0; k < bitmaps.length; ++k) {
+            final Cursor c = new Cursor(bitmaps[k].getIteratingRLW(), k);
+            if (c.skipZeros())
+                heap.toss(c);
+        }
+        heap.buildHeap();
+        final IteratingRLW32 f = filter.getIteratingRLW();
+        long position = 0;
+        int[] words = new int[0];
+        int[] prefix = new int[1];
+        do {
+            if (heap.isEmpty())
+                break;
+            final long rl = f.getRunningLength();
+            if (rl > 0 && f.getRunningBit())
+                intersect(heap, counts, position, position + rl, null, null);
+            position += rl;
+            final int nl = f.getNumberOfLiteralWords();
+            if (nl > 0) {
+                if (words.length < nl) {
+                    words = new int[nl];
+                    prefix = new int[nl + 1];
+                }
+                for (int i = 0; i < nl; ++i) {
+                    words[i] = f.getLiteralWordAt(i);
+                    prefix[i + 1] = prefix[i] + Integer.bitCount(words[i]);
+                }
+                intersect(heap, counts, position, position + nl, words, prefix);
+                position += nl;
+            }
+        } while (f.next());
+        return counts;
+    }
+
+    // count the bits of the bitmaps in the word range [begin, end) of the
+    // filter, given as literal words (with prefix sums of their bit
+    // counts) or, if null, as a run of ones
+    private static void intersect(final PriorityQ<Cursor> heap, final int[] counts,
+                                  final long begin, final long end,
+                                  final int[] words, final int[] prefix) {
+        while (!heap.isEmpty() && heap.peek().position < end) {
+            final Cursor c = heap.peek();
+            final IteratingRLW32 i = c.iterator;
+            long n;
+            if (c.position < begin) {
+                // the filter is empty there
+                n = begin - c.position;
+            } else {
+                final int offset = (int) (c.position - begin);
+                if (i.getRunningLength() > 0) {
+                    n = Math.min(i.getRunningLength(), end - c.position);
+                    counts[c.index] += words == null ? (int) n * EWAHCompressedBitmap32.WORD_IN_BITS
+                            : prefix[offset + (int) n] - prefix[offset];
+                } else {
+                    n = Math.min(i.getNumberOfLiteralWords(), end - c.position);
+                    for (int j = 0; j < n; ++j)
+                        counts[c.index] += Integer.bitCount(words == null ? i.getLiteralWordAt(j)
+                                : i.getLiteralWordAt(j) & words[offset + j]);
+                }
+            }
+            i.discardFirstWords((int) n);
+            c.position += n;
+            if (c.skipZeros())
+                heap.percolateDown();
+            else
+                heap.poll();
+        }
+    }
+
+    private static final class Cursor {
+        final IteratingRLW32 iterator;
+        final int index;
+        // position (in words) of the current word of the iterator
+        long position = 0;
+
+        Cursor(final IteratingRLW32 iterator, final int index) {
+            this.iterator = iterator;
+            this.index = index;
+        }
+
+        // move to the next word that is not zero, false if there is none
+        boolean skipZeros() {
+            while (true) {
+                final long rl = this.iterator.getRunningLength();
+                if (rl > 0) {
+                    if (this.iterator.getRunningBit())
+                        return true;
+                    this.position += rl;
+                    this.iterator.discardRunningWords();
+                    continue;
+                }
+                if (this.iterator.getNumberOfLiteralWords() > 0)
+                    return true;
+                if (!this.iterator.next())
+                    return false;
+            }
+        }
+    }
 }
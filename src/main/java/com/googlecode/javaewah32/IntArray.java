@@ -33,11 +33,28 @@ class IntArray implements Buffer32, Cloneable {
         this.buffer = new int[bufferSize];
     }
     
+    /**
+     * Wraps an array of words, without copying it: the words are meant to
+     * be copied in bulk into another buffer.
+     * @param words the words
+     */
+    IntArray(int[] words) {
+        this.buffer = words;
+        this.actualSizeInWords = words.length;
+    }
+
     @Override
     public int sizeInWords() {
         return this.actualSizeInWords;
     }
 
+    /**
+     * Returns the number of words that fit before the array must grow
+     */
+    int capacity() {
+        return this.buffer.length;
+    }
+
     @Override
     public void ensureCapacity(int capacity) {
         resizeBuffer(capacity - this.actualSizeInWords);
@@ -218,6 +235,15 @@ class IntArray implements Buffer32, Cloneable {
         return size;
     }
     
+    /**
+     * The backing array: the words are stored from index 0.
+     *
+     * @return the array
+     */
+    int[] words() {
+        return this.buffer;
+    }
+
     /**
      * The actual size in words.
      */
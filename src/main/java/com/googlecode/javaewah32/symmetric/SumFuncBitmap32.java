@@ -0,0 +1,119 @@
+package com.googlecode.javaewah32.symmetric;
+
+import com.googlecode.javaewah32.BitmapStorage32;
+import com.googlecode.javaewah32.EWAHCompressedBitmap32;
+import com.googlecode.javaewah32.IteratingBufferedRunningLengthWord32;
+
+/**
+ * Computes, at each bit position, the number of inputs that are true. The
+ * counts are produced in a bit-sliced manner: slice j is a bitmap whose bits
+ * are the binary digit of weight 2^j of the counts.
+ *
+ * Where no input has a literal word, the count is the number of inputs with
+ * a run of ones, and every slice receives a fill. Otherwise, the literal
+ * words are added one word at a time to bit-sliced counters (a chain of
+ * half adders) and the number of runs of ones is added as a constant.
+ *
+ * The slices are not written to the container given to the merge
+ * algorithm (which is left empty): use {@link #getSlices()} once the merge
+ * is done. With {@link ParallelRunningBitmapMerge32}, the slices computed
+ * by the copies of the function are gathered in the original function.
+ *
+ * It is not thread safe: you should use one object per thread.
+ *
+ * @see EWAHCompressedBitmap32#sum(EWAHCompressedBitmap32...)
+ * @since 1.2.4
+ */
+public final class SumFuncBitmap32 extends UpdateableBitmapFunction32 {
+    private EWAHCompressedBitmap32[] slices = null;
+    private int[] counters = new int[0];
+
+    /**
+     * Construct a sum function.
+     */
+    public SumFuncBitmap32() {
+        super();
+    }
+
+    @Override
+    public SumFuncBitmap32 copy() {
+        return new SumFuncBitmap32();
+    }
+
+    @Override
+    public void mergeCopies(final UpdateableBitmapFunction32[] copies, final int[] begin) {
+        int numberOfSlices = 0;
+        for (UpdateableBitmapFunction32 c : copies)
+            numberOfSlices = Math.max(numberOfSlices, 32 - Integer.numberOfLeadingZeros(c.rw.length));
+        this.slices = new EWAHCompressedBitmap32[numberOfSlices];
+        for (int j = 0; j < numberOfSlices; ++j)
+            this.slices[j] = new EWAHCompressedBitmap32();
+        this.counters = new int[numberOfSlices];
+        // concatenate the slices of the ranges, in order
+        for (int r = 0; r < copies.length; ++r) {
+            final EWAHCompressedBitmap32[] s = ((SumFuncBitmap32) copies[r]).slices;
+            if (s == null)
+                continue;
+            for (int j = 0; j < s.length; ++j) {
+                if (s[j].sizeInBits() == 0)
+                    continue;
+                final int written = this.slices[j].sizeInBits() / EWAHCompressedBitmap32.WORD_IN_BITS;
+                if (begin[r] > written)
+                    this.slices[j].addStreamOfEmptyWords(false, begin[r] - written);
+                new IteratingBufferedRunningLengthWord32(s[j]).discharge(this.slices[j]);
+            }
+        }
+    }
+
+    /**
+     * The slices of the counts, least significant first. There are as many
+     * slices as there are binary digits in the number of inputs.
+     *
+     * @return the slices
+     */
+    public EWAHCompressedBitmap32[] getSlices() {
+        if (this.slices == null) {
+            this.slices = new EWAHCompressedBitmap32[32 - Integer.numberOfLeadingZeros(this.rw.length)];
+            for (int j = 0; j < this.slices.length; ++j)
+                this.slices[j] = new EWAHCompressedBitmap32();
+            this.counters = new int[this.slices.length];
+        }
+        return this.slices;
+    }
+
+    @Override
+    public void dispatch(BitmapStorage32 out, int runBegin, int runEnd) {
+        final EWAHCompressedBitmap32[] s = getSlices();
+        final int runLength = runEnd - runBegin;
+        final int ones = this.hammingWeight;
+        if (this.litWeight == 0) {
+            for (int j = 0; j < s.length; ++j)
+                s[j].addStreamOfEmptyWords(((ones >>> j) & 1) != 0, runLength);
+            return;
+        }
+        final int[] c = this.counters;
+        for (int i = 0; i < runLength; ++i) {
+            for (int j = 0; j < c.length; ++j)
+                c[j] = 0;
+            for (EWAHPointer32 R : this.getLiterals()) {
+                int carry = R.iterator.getLiteralWordAt(i + runBegin - R.beginOfRun());
+                for (int j = 0; carry != 0; ++j) {
+                    final int t = c[j] & carry;
+                    c[j] ^= carry;
+                    carry = t;
+                }
+            }
+            // add the number of runs of ones (the same at every position)
+            int carry = 0;
+            for (int j = 0; j < c.length; ++j) {
+                final int k = ((ones >>> j) & 1) != 0 ? ~0 : 0;
+                final int x = c[j] ^ k;
+                final int sum = x ^ carry;
+                carry = (c[j] & k) | (carry & x);
+                c[j] = sum;
+            }
+            for (int j = 0; j < c.length; ++j)
+                s[j].addWord(c[j]);
+        }
+    }
+}
@@ -39,6 +39,11 @@ public final class ThresholdFuncBitmap32 extends UpdateableBitmapFunction32 {
         this.bufferUsed = 0;
     }
 
+    @Override
+    public ThresholdFuncBitmap32 copy() {
+        return new ThresholdFuncBitmap32(this.min);
+    }
+
     @Override
     public void dispatch(BitmapStorage32 out, int runBegin, int runend) {
         final int runLength = runend - runBegin;
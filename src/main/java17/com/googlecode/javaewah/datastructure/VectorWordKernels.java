@@ -0,0 +1,157 @@
+package com.googlecode.javaewah.datastructure;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Vector API versions of the kernels of {@link WordKernels}, which loads
+ * this class by name. Loading it fails when the module
+ * jdk.incubator.vector is not available.
+ *
+ * The vector API of Java 17 has no bit-count lane operation: bits are
+ * counted per byte with the usual shift-and-mask steps, the byte counts
+ * being accumulated for up to 31 vectors (8 * 31 &lt; 256) before they are
+ * summed per lane.
+ */
+final class VectorWordKernels implements VectorKernels {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private static final int LANES = SPECIES.length();
+
+    private static final int MAX_BYTE_ACCUMULATIONS = 31;
+
+    @Override
+    public int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public void and(final long[] x, final int xOffset, final long[] y,
+                    final int yOffset, final int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += LANES)
+            LongVector.fromArray(SPECIES, x, xOffset + i)
+                    .and(LongVector.fromArray(SPECIES, y, yOffset + i))
+                    .intoArray(x, xOffset + i);
+        for (; i < length; ++i)
+            x[xOffset + i] &= y[yOffset + i];
+    }
+
+    @Override
+    public void andNot(final long[] x, final int xOffset, final long[] y,
+                       final int yOffset, final int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += LANES)
+            LongVector.fromArray(SPECIES, x, xOffset + i)
+                    .lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, y, yOffset + i))
+                    .intoArray(x, xOffset + i);
+        for (; i < length; ++i)
+            x[xOffset + i] &= ~y[yOffset + i];
+    }
+
+    @Override
+    public void or(final long[] x, final int xOffset, final long[] y,
+                   final int yOffset, final int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += LANES)
+            LongVector.fromArray(SPECIES, x, xOffset + i)
+                    .or(LongVector.fromArray(SPECIES, y, yOffset + i))
+                    .intoArray(x, xOffset + i);
+        for (; i < length; ++i)
+            x[xOffset + i] |= y[yOffset + i];
+    }
+
+    @Override
+    public void xor(final long[] x, final int xOffset, final long[] y,
+                    final int yOffset, final int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += LANES)
+            LongVector.fromArray(SPECIES, x, xOffset + i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(SPECIES, y, yOffset + i))
+                    .intoArray(x, xOffset + i);
+        for (; i < length; ++i)
+            x[xOffset + i] ^= y[yOffset + i];
+    }
+
+    @Override
+    public int cardinality(final long[] x, final int offset, final int length) {
+        return count(null, x, offset, null, 0, length);
+    }
+
+    @Override
+    public int andCardinality(final long[] x, final int xOffset, final long[] y,
+                              final int yOffset, final int length) {
+        return count(VectorOperators.AND, x, xOffset, y, yOffset, length);
+    }
+
+    @Override
+    public int andNotCardinality(final long[] x, final int xOffset, final long[] y,
+                                 final int yOffset, final int length) {
+        return count(VectorOperators.AND_NOT, x, xOffset, y, yOffset, length);
+    }
+
+    @Override
+    public int orCardinality(final long[] x, final int xOffset, final long[] y,
+                             final int yOffset, final int length) {
+        return count(VectorOperators.OR, x, xOffset, y, yOffset, length);
+    }
+
+    @Override
+    public int xorCardinality(final long[] x, final int xOffset, final long[] y,
+                              final int yOffset, final int length) {
+        return count(VectorOperators.XOR, x, xOffset, y, yOffset, length);
+    }
+
+    // number of bits set in (x op y), or in x if op is null
+    private static int count(final VectorOperators.Binary op, final long[] x, final int xOffset,
+                             final long[] y, final int yOffset, final int length) {
+        LongVector total = LongVector.zero(SPECIES);
+        LongVector bytes = LongVector.zero(SPECIES);
+        int accumulated = 0;
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+            LongVector v = LongVector.fromArray(SPECIES, x, xOffset + i);
+            if (op != null)
+                v = v.lanewise(op, LongVector.fromArray(SPECIES, y, yOffset + i));
+            // bit counts per byte
+            v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+            v = v.and(0x3333333333333333L).add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+            bytes = bytes.add(v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL));
+            if (++accumulated == MAX_BYTE_ACCUMULATIONS) {
+                total = total.add(sumOfBytes(bytes));
+                bytes = LongVector.zero(SPECIES);
+                accumulated = 0;
+            }
+        }
+        int sum = (int) total.add(sumOfBytes(bytes)).reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            final long w = op == null ? x[xOffset + i] : scalar(op, x[xOffset + i], y[yOffset + i]);
+            sum += Long.bitCount(w);
+        }
+        return sum;
+    }
+
+    private static LongVector sumOfBytes(LongVector v) {
+        v = v.and(0x00FF00FF00FF00FFL).add(v.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF00FF00FFL));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 16));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 32));
+        return v.and(0xFFFFL);
+    }
+
+    private static long scalar(final VectorOperators.Binary op, final long x, final long y) {
+        if (op == VectorOperators.AND)
+            return x & y;
+        if (op == VectorOperators.AND_NOT)
+            return x & ~y;
+        if (op == VectorOperators.OR)
+            return x | y;
+        return x ^ y;
+    }
+}
@@ -0,0 +1,101 @@
+package com.googlecode.javaewah;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the aggregation cache.
+ */
+public class AggregationCacheTest {
+
+    @Test
+    public void testHitsAndOrder() {
+        final EWAHCompressedBitmap a = EWAHCompressedBitmap.bitmapOf(1, 2, 3, 1000);
+        final EWAHCompressedBitmap b = EWAHCompressedBitmap.bitmapOf(2, 3, 4, 2000);
+        final EWAHCompressedBitmap c = EWAHCompressedBitmap.bitmapOf(3, 4, 5);
+        final AggregationCache cache = new AggregationCache(1 << 20);
+        final EWAHCompressedBitmap abc = cache.and(a, b, c);
+        assertEquals(EWAHCompressedBitmap.bitmapOf(3), abc);
+        assertSame(abc, cache.and(c, a, b));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(a.or(b), cache.or(a, b));
+        assertEquals(a.xor(b), cache.xor(b, a));
+        assertEquals(a.andNot(b), cache.andNot(a, b));
+        assertEquals(b.andNot(a), cache.andNot(b, a));
+        assertEquals(5, cache.size());
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidation() {
+        final EWAHCompressedBitmap a = EWAHCompressedBitmap.bitmapOf(1, 2, 3);
+        final EWAHCompressedBitmap b = EWAHCompressedBitmap.bitmapOf(2, 3, 4);
+        final AggregationCache cache = new AggregationCache(1 << 20);
+        final EWAHCompressedBitmap first = cache.or(a, b);
+        a.set(100);
+        final EWAHCompressedBitmap second = cache.or(a, b);
+        assertNotSame(first, second);
+        assertEquals(EWAHCompressedBitmap.bitmapOf(1, 2, 3, 4, 100), second);
+        // modifying the cached result invalidates it as well
+        second.set(200);
+        assertEquals(EWAHCompressedBitmap.bitmapOf(1, 2, 3, 4, 100), cache.or(a, b));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testModificationCount() {
+        final EWAHCompressedBitmap a = new EWAHCompressedBitmap();
+        int count = a.getModificationCount();
+        a.set(10);
+        assertTrue(a.getModificationCount() != count);
+        count = a.getModificationCount();
+        a.not();
+        assertTrue(a.getModificationCount() != count);
+        count = a.getModificationCount();
+        a.setSizeInBits(1000, false);
+        assertTrue(a.getModificationCount() != count);
+        count = a.getModificationCount();
+        final EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+        a.swap(b);
+        assertTrue(a.getModificationCount() != count);
+        count = a.getModificationCount();
+        a.cardinality();
+        a.and(b);
+        assertEquals(count, a.getModificationCount());
+        a.clear();
+        assertTrue(a.getModificationCount() != count);
+    }
+
+    @Test
+    public void testEviction() {
+        final EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[10];
+        for (int k = 0; k < bitmaps.length; ++k) {
+            bitmaps[k] = new EWAHCompressedBitmap();
+            for (int i = k; i < 10000; i += 2 + k)
+                bitmaps[k].set(i);
+        }
+        final int oneResult = bitmaps[0].or(bitmaps[1]).sizeInBytes();
+        final AggregationCache cache = new AggregationCache(3L * oneResult);
+        for (int k = 1; k < bitmaps.length; ++k)
+            cache.or(bitmaps[0], bitmaps[k]);
+        assertTrue(cache.sizeInBytes() <= 3L * oneResult);
+        assertTrue(cache.size() < bitmaps.length - 1);
+        // the most recent result is still there
+        final long hits = cache.getHitCount();
+        cache.or(bitmaps[0], bitmaps[bitmaps.length - 1]);
+        assertEquals(hits + 1, cache.getHitCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.sizeInBytes());
+    }
+}
@@ -0,0 +1,168 @@
+package com.googlecode.javaewah;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class BitmapAppendLogTest {
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Test
+    public void appendAndRecover() throws IOException {
+        Random r = new Random(50);
+        File file = File.createTempFile("javaewah", "appendlog");
+        file.deleteOnExit();
+        EWAHCompressedBitmap reference = new EWAHCompressedBitmap();
+        int next = 0;
+        for (int session = 0; session < 5; ++session) {
+            FileChannel channel = open(file);
+            try {
+                BitmapAppendLog log = new BitmapAppendLog(channel);
+                EWAHCompressedBitmap bitmap = log.getBitmap();
+                Assert.assertEquals(reference, bitmap);
+                Assert.assertEquals(reference.sizeInBits(), bitmap.sizeInBits());
+                for (int batch = 0; batch < 20; ++batch) {
+                    // runs of ones, sparse bits and dense bits
+                    for (int k = 0; k < 100; ++k) {
+                        switch (r.nextInt(3)) {
+                            case 0:
+                                next += 1 + r.nextInt(2);
+                                break;
+                            case 1:
+                                next += 1 + r.nextInt(1000);
+                                break;
+                            default:
+                                next += 1 + r.nextInt(20);
+                        }
+                        bitmap.set(next);
+                        reference.set(next);
+                    }
+                    long before = log.sizeInBytes();
+                    log.checkpoint();
+                    // a checkpoint does not rewrite the bitmap
+                    if (session > 0 || batch > 0)
+                        Assert.assertTrue(log.sizeInBytes() - before < 100 * 8 + 64);
+                }
+                bitmap.setSizeInBits(bitmap.sizeInBits() + 100, false);
+                reference.setSizeInBits(reference.sizeInBits() + 100, false);
+                log.checkpoint();
+                Assert.assertTrue(bitmap.validate());
+            } finally {
+                channel.close();
+            }
+        }
+        FileChannel channel = open(file);
+        try {
+            Assert.assertEquals(reference, new BitmapAppendLog(channel).getBitmap());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        File file = File.createTempFile("javaewah", "appendlog");
+        file.deleteOnExit();
+        long complete;
+        FileChannel channel = open(file);
+        try {
+            BitmapAppendLog log = new BitmapAppendLog(channel);
+            log.getBitmap().set(10);
+            log.getBitmap().set(1000);
+            log.checkpoint();
+            complete = log.sizeInBytes();
+            log.getBitmap().set(5000);
+            log.checkpoint();
+            // a crash in the middle of the last record
+            channel.truncate(log.sizeInBytes() - 3);
+        } finally {
+            channel.close();
+        }
+        channel = open(file);
+        try {
+            BitmapAppendLog log = new BitmapAppendLog(channel);
+            Assert.assertEquals(EWAHCompressedBitmap.bitmapOf(10, 1000), log.getBitmap());
+            Assert.assertEquals(complete, channel.size());
+            log.getBitmap().set(6000);
+            log.checkpoint();
+        } finally {
+            channel.close();
+        }
+        channel = open(file);
+        try {
+            Assert.assertEquals(EWAHCompressedBitmap.bitmapOf(10, 1000, 6000),
+                    new BitmapAppendLog(channel).getBitmap());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void notALog() throws IOException {
+        File file = File.createTempFile("javaewah", "appendlog");
+        file.deleteOnExit();
+        byte[] content = new byte[100];
+        new Random(51).nextBytes(content);
+        for (int length : new int[]{3, content.length}) {
+            FileChannel channel = open(file);
+            try {
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(content, 0, length), 0);
+                try {
+                    new BitmapAppendLog(channel);
+                    Assert.fail("a file that is not a log was opened");
+                } catch (IOException e) {
+                    // expected
+                }
+                // the file is not destroyed
+                Assert.assertEquals(length, channel.size());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    @Test
+    public void fullCheckpoint() throws IOException {
+        File file = File.createTempFile("javaewah", "appendlog");
+        file.deleteOnExit();
+        FileChannel channel = open(file);
+        try {
+            BitmapAppendLog log = new BitmapAppendLog(channel);
+            EWAHCompressedBitmap bitmap = log.getBitmap();
+            for (int i = 0; i < 10000; i += 3)
+                bitmap.set(i);
+            log.checkpoint();
+            // not an append: the whole bitmap must be written
+            bitmap.clear(30);
+            bitmap.not();
+            log.fullCheckpoint();
+            bitmap.set(20000);
+            log.checkpoint();
+        } finally {
+            channel.close();
+        }
+        EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+        for (int i = 0; i < 10000; i += 3)
+            expected.set(i);
+        expected.clear(30);
+        expected.not();
+        expected.set(20000);
+        channel = open(file);
+        try {
+            Assert.assertEquals(expected, new BitmapAppendLog(channel).getBitmap());
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.googlecode.javaewah;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the lazily evaluated bitmap expressions.
+ */
+public class BitmapExpressionTest {
+
+    private static EWAHCompressedBitmap randomBitmap(final Random r, final int universe) {
+        final EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+        final double density = r.nextDouble() < 0.5 ? 0.005 : 0.5;
+        int pos = 0;
+        while (pos < universe) {
+            // alternate clean runs with noisy regions
+            final int run = r.nextInt(1000);
+            final boolean fill = r.nextBoolean();
+            for (int k = pos; k < Math.min(universe, pos + run); ++k)
+                if (fill ? r.nextDouble() < 0.99 : r.nextDouble() < density)
+                    answer.set(k);
+            pos += run;
+        }
+        return answer;
+    }
+
+    private static BitSet toBitSet(final EWAHCompressedBitmap b) {
+        final BitSet answer = new BitSet();
+        for (int i : b.toArray())
+            answer.set(i);
+        return answer;
+    }
+
+    private static void check(final BitSet expected, final int sizeInBits,
+                              final BitmapExpression e) {
+        final EWAHCompressedBitmap result = e.evaluate();
+        assertEquals(expected, toBitSet(result));
+        assertEquals(sizeInBits, result.sizeInBits());
+        assertEquals(expected.cardinality(), result.cardinality());
+    }
+
+    @Test
+    public void testOperators() {
+        final Random r = new Random(42);
+        for (int trial = 0; trial < 20; ++trial) {
+            final EWAHCompressedBitmap a = randomBitmap(r, 1 + r.nextInt(100000));
+            final EWAHCompressedBitmap b = randomBitmap(r, 1 + r.nextInt(100000));
+            final EWAHCompressedBitmap c = randomBitmap(r, 1 + r.nextInt(100000));
+            final int size = Math.max(a.sizeInBits(), Math.max(b.sizeInBits(), c.sizeInBits()));
+            final BitmapExpression ea = BitmapExpression.of(a);
+            final BitmapExpression eb = BitmapExpression.of(b);
+            final BitmapExpression ec = BitmapExpression.of(c);
+            final BitSet ba = toBitSet(a);
+            final BitSet bb = toBitSet(b);
+            final BitSet bc = toBitSet(c);
+
+            BitSet expected = (BitSet) ba.clone();
+            expected.and(bb);
+            expected.and(bc);
+            check(expected, size, BitmapExpression.and(ea, eb, ec));
+
+            expected = (BitSet) ba.clone();
+            expected.or(bb);
+            expected.or(bc);
+            check(expected, size, BitmapExpression.or(ea, eb, ec));
+
+            expected = (BitSet) ba.clone();
+            expected.xor(bb);
+            expected.xor(bc);
+            check(expected, size, BitmapExpression.xor(ea, eb, ec));
+
+            expected = (BitSet) ba.clone();
+            expected.andNot(bb);
+            check(expected, Math.max(a.sizeInBits(), b.sizeInBits()),
+                    BitmapExpression.andNot(ea, eb));
+
+            expected = (BitSet) ba.clone();
+            expected.flip(0, a.sizeInBits());
+            check(expected, a.sizeInBits(), BitmapExpression.not(ea));
+
+            // a and (b or c) and not (a xor c)
+            final BitSet bOrC = (BitSet) bb.clone();
+            bOrC.or(bc);
+            final BitSet aXorC = (BitSet) ba.clone();
+            aXorC.xor(bc);
+            expected = (BitSet) ba.clone();
+            expected.and(bOrC);
+            expected.andNot(aXorC);
+            check(expected, size, BitmapExpression.andNot(
+                    BitmapExpression.and(ea, BitmapExpression.or(eb, ec)),
+                    BitmapExpression.xor(ea, ec)));
+
+            // not (not a or b)
+            final BitSet notA = (BitSet) ba.clone();
+            notA.flip(0, size);
+            notA.or(bb);
+            expected = (BitSet) notA.clone();
+            expected.flip(0, size);
+            check(expected, Math.max(a.sizeInBits(), b.sizeInBits()),
+                    BitmapExpression.not(BitmapExpression.or(BitmapExpression.not(ea), eb)));
+        }
+    }
+
+    @Test
+    public void testSharedNodes() {
+        final Random r = new Random(7);
+        for (int trial = 0; trial < 10; ++trial) {
+            final EWAHCompressedBitmap a = randomBitmap(r, 1 + r.nextInt(50000));
+            final EWAHCompressedBitmap b = randomBitmap(r, 1 + r.nextInt(50000));
+            final EWAHCompressedBitmap c = randomBitmap(r, 1 + r.nextInt(50000));
+            final int size = Math.max(a.sizeInBits(), Math.max(b.sizeInBits(), c.sizeInBits()));
+            final BitmapExpression shared = BitmapExpression.not(
+                    BitmapExpression.or(BitmapExpression.of(a), BitmapExpression.of(b)));
+            final BitmapExpression e = BitmapExpression.xor(
+                    BitmapExpression.and(shared, BitmapExpression.of(c)),
+                    BitmapExpression.threshold(2, shared, BitmapExpression.of(c),
+                            BitmapExpression.of(a)),
+                    shared);
+            final BitSet sharedSet = toBitSet(a);
+            sharedSet.or(toBitSet(b));
+            // negation is relative to the size of the whole expression
+            sharedSet.flip(0, size);
+            final BitSet left = (BitSet) sharedSet.clone();
+            left.and(toBitSet(c));
+            final BitSet middle = new BitSet();
+            for (int k = 0; k < size; ++k) {
+                int count = (sharedSet.get(k) ? 1 : 0) + (c.get(k) ? 1 : 0)
+                        + (a.get(k) ? 1 : 0);
+                if (count >= 2)
+                    middle.set(k);
+            }
+            final BitSet expected = left;
+            expected.xor(middle);
+            expected.xor(sharedSet);
+            check(expected, size, e);
+            // evaluating twice gives the same result
+            check(expected, size, e);
+        }
+    }
+
+    @Test
+    public void testAndOrdering() {
+        final EWAHCompressedBitmap small = EWAHCompressedBitmap.bitmapOf(3, 1000, 99999);
+        final EWAHCompressedBitmap large = new EWAHCompressedBitmap();
+        for (int k = 0; k < 200000; k += 3)
+            large.set(k);
+        final BitmapExpression e = BitmapExpression.and(BitmapExpression.of(large),
+                BitmapExpression.of(small));
+        final BitmapExpression.Operator op = (BitmapExpression.Operator) e;
+        assertEquals(small.sizeInBytes() / 8, op.operands[0].estimatedSizeInWords());
+        assertEquals(EWAHCompressedBitmap.bitmapOf(3, 99999), e.evaluate().and(small));
+        assertEquals(199999, e.evaluate().sizeInBits());
+    }
+
+    @Test
+    public void testEmpty() {
+        final EWAHCompressedBitmap empty = new EWAHCompressedBitmap();
+        final EWAHCompressedBitmap a = EWAHCompressedBitmap.bitmapOf(3, 70);
+        check(new BitSet(), 71, BitmapExpression.and(BitmapExpression.of(empty),
+                BitmapExpression.of(a)));
+        check(toBitSet(a), 71, BitmapExpression.or(BitmapExpression.of(empty),
+                BitmapExpression.of(a)));
+        check(new BitSet(), 0, BitmapExpression.not(BitmapExpression.of(empty)));
+    }
+
+    @Test
+    public void testNegationUnderThreshold() {
+        // the negation extends to the size of the root, well beyond its operand
+        final BitmapExpression e = BitmapExpression.threshold(1,
+                BitmapExpression.not(BitmapExpression.of(EWAHCompressedBitmap.bitmapOf(1, 50))),
+                BitmapExpression.of(EWAHCompressedBitmap.bitmapOf(3, 9999)));
+        final BitSet expected = new BitSet();
+        expected.set(0, 10000);
+        expected.clear(1);
+        expected.clear(50);
+        check(expected, 10000, e);
+        // and the same with two thresholds
+        expected.clear(3);
+        check(expected, 10000, BitmapExpression.threshold(2, e,
+                BitmapExpression.not(BitmapExpression.of(EWAHCompressedBitmap.bitmapOf(3)))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoOperand() {
+        BitmapExpression.or();
+    }
+}
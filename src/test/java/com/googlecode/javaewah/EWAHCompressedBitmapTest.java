@@ -127,6 +127,43 @@ public class EWAHCompressedBitmapTest {
 		Assert.assertEquals(y.cardinality(),3);
 	}
 
+    @Test
+    public void inPlaceOperations() {
+        Random r = new Random(123);
+        EWAHCompressedBitmap acc = new EWAHCompressedBitmap();
+        EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+        for (int k = 0; k < 100; ++k) {
+            EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+            for (int j = 0; j < 100; ++j)
+                b.set(r.nextInt(1 + r.nextInt(100000)));
+            switch (k % 4) {
+                case 0:
+                    acc.orInPlace(b);
+                    expected = expected.or(b);
+                    break;
+                case 1:
+                    acc.xorInPlace(b);
+                    expected = expected.xor(b);
+                    break;
+                case 2:
+                    acc.andNotInPlace(b);
+                    expected = expected.andNot(b);
+                    break;
+                default:
+                    EWAHCompressedBitmap c = b.or(acc);
+                    acc.andInPlace(c);
+                    expected = expected.and(c);
+            }
+            Assert.assertEquals(expected, acc);
+            Assert.assertEquals(expected.sizeInBits(), acc.sizeInBits());
+        }
+        acc.trim();
+        acc.andInPlace(acc);
+        Assert.assertEquals(expected, acc);
+        acc.andNotInPlace(acc);
+        Assert.assertTrue(acc.isEmpty());
+    }
+
 
     @Test
     public void shiftByWordSizeBits() {
@@ -2878,6 +2915,211 @@ public class EWAHCompressedBitmapTest {
         Assert.assertEquals(ewah.cardinality(), 4 * (1<<20));
     }
     
+    @Test
+    public void testLongArrayConversions() {
+        Random r = new Random(43);
+        for (int trial = 0; trial < 50; ++trial) {
+            // words made of zeros, ones and random bits
+            long[] words = new long[r.nextInt(200)];
+            for (int k = 0; k < words.length; ++k) {
+                int kind = r.nextInt(4);
+                words[k] = kind == 0 ? 0 : kind == 1 ? ~0L : kind == 2 ? 0xFFFFFFFFL : r.nextLong();
+            }
+            java.util.BitSet expected = java.util.BitSet.valueOf(words);
+            EWAHCompressedBitmap ewah = EWAHCompressedBitmap.fromLongArray(words);
+            Assert.assertEquals(64 * words.length, ewah.sizeInBits());
+            Assert.assertEquals(expected.cardinality(), ewah.cardinality());
+            EWAHCompressedBitmap reference = new EWAHCompressedBitmap();
+            for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1))
+                reference.set(i);
+            Assert.assertEquals(reference, ewah);
+            Assert.assertEquals(reference, EWAHCompressedBitmap.fromBitSet(expected));
+            Assert.assertArrayEquals(words, ewah.toLongArray());
+            Assert.assertEquals(expected, java.util.BitSet.valueOf(reference.toLongArray()));
+            Assert.assertEquals(reference, EWAHCompressedBitmap.fromBitSet(reference.toBitSet()));
+            Assert.assertEquals(expected.cardinality(), reference.toBitSet().cardinality());
+        }
+        // the size in bits need not be a multiple of 64
+        EWAHCompressedBitmap ewah = EWAHCompressedBitmap.bitmapOf(1, 40, 99);
+        ewah.not();
+        long[] words = ewah.toLongArray();
+        Assert.assertEquals(2, words.length);
+        Assert.assertEquals(ewah.cardinality(), java.util.BitSet.valueOf(words).cardinality());
+    }
+
+    @Test
+    public void testLittleEndianSerialization() throws IOException {
+        Random r = new Random(47);
+        for (int trial = 0; trial < 20; ++trial) {
+            EWAHCompressedBitmap bitmap = new EWAHCompressedBitmap();
+            for (int i = r.nextInt(100); i < 100000; i += 1 + r.nextInt(trial % 2 == 0 ? 50 : 5000))
+                bitmap.set(i);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            bitmap.serializeLittleEndian(new DataOutputStream(bos));
+            byte[] little = bos.toByteArray();
+            Assert.assertEquals(bitmap.serializedSizeInBytesLittleEndian(), little.length);
+            bos = new ByteArrayOutputStream();
+            bitmap.serialize(new DataOutputStream(bos));
+            byte[] legacy = bos.toByteArray();
+            Assert.assertTrue(EWAHCompressedBitmap.isLittleEndianSerialization(ByteBuffer.wrap(little)));
+            Assert.assertFalse(EWAHCompressedBitmap.isLittleEndianSerialization(ByteBuffer.wrap(legacy)));
+            // both formats are recognized by deserialize
+            for (byte[] bytes : Arrays.asList(little, legacy)) {
+                EWAHCompressedBitmap copy = new EWAHCompressedBitmap();
+                copy.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+                Assert.assertEquals(bitmap, copy);
+            }
+            // and mapped without copying, also from a direct buffer at an offset
+            Assert.assertEquals(bitmap, new EWAHCompressedBitmap(ByteBuffer.wrap(little)));
+            Assert.assertEquals(bitmap, new EWAHCompressedBitmap(ByteBuffer.wrap(legacy)));
+            ByteBuffer direct = ByteBuffer.allocateDirect(little.length + 8);
+            direct.position(8);
+            direct.put(little);
+            direct.position(8);
+            EWAHCompressedBitmap mapped = new EWAHCompressedBitmap(direct);
+            Assert.assertEquals(bitmap, mapped);
+            Assert.assertEquals(bitmap.cardinality(), mapped.cardinality());
+            Assert.assertEquals(bitmap, mapped.or(new EWAHCompressedBitmap()));
+        }
+        // the header records the word size
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        com.googlecode.javaewah32.EWAHCompressedBitmap32.bitmapOf(1, 2, 3).serializeLittleEndian(new DataOutputStream(bos));
+        byte[] other = bos.toByteArray();
+        Assert.assertTrue(EWAHCompressedBitmap.isLittleEndianSerialization(ByteBuffer.wrap(other)));
+        try {
+            new EWAHCompressedBitmap().deserialize(new DataInputStream(new ByteArrayInputStream(other)));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            new EWAHCompressedBitmap(ByteBuffer.wrap(other));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testChecksummedSerialization() throws IOException, CloneNotSupportedException {
+        Random r = new Random(48);
+        for (int trial = 0; trial < 20; ++trial) {
+            EWAHCompressedBitmap a = new EWAHCompressedBitmap();
+            EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+            for (int i = r.nextInt(100); i < 50000; i += 1 + r.nextInt(trial % 2 == 0 ? 30 : 3000))
+                a.set(i);
+            for (int i = r.nextInt(100); i < 80000; i += 1 + r.nextInt(100))
+                b.set(i);
+            EWAHCompressedBitmap negated = b.clone();
+            negated.not();
+            EWAHCompressedBitmap extended = a.clone();
+            extended.setSizeInBits(100000, trial % 4 == 0);
+            EWAHCompressedBitmap emptied = a.clone();
+            emptied.clear();
+            for (EWAHCompressedBitmap bitmap : Arrays.asList(a, b, a.and(b), a.or(b), a.xor(b), a.andNot(b), negated, extended, emptied, new EWAHCompressedBitmap())) {
+                Assert.assertTrue(bitmap.validate());
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                bitmap.serializeWithChecksum(new DataOutputStream(bos));
+                byte[] bytes = bos.toByteArray();
+                Assert.assertEquals(bitmap.serializedSizeInBytesWithChecksum(), bytes.length);
+                Assert.assertTrue(EWAHCompressedBitmap.validate(ByteBuffer.wrap(bytes)));
+                // the footer does not get in the way of the usual readers
+                EWAHCompressedBitmap copy = new EWAHCompressedBitmap();
+                copy.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+                Assert.assertEquals(bitmap, copy);
+                Assert.assertEquals(bitmap, new EWAHCompressedBitmap(ByteBuffer.wrap(bytes)));
+                // truncation and corruption are detected
+                Assert.assertFalse(EWAHCompressedBitmap.validate(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 20))));
+                Assert.assertFalse(EWAHCompressedBitmap.validate(ByteBuffer.wrap(Arrays.copyOf(bytes, 6))));
+                byte[] corrupted = bytes.clone();
+                corrupted[8 + r.nextInt(bytes.length - 28)] ^= 1 << r.nextInt(8);
+                Assert.assertFalse(EWAHCompressedBitmap.validate(ByteBuffer.wrap(corrupted)));
+                // other formats are checked for consistency only
+                bos = new ByteArrayOutputStream();
+                bitmap.serializeLittleEndian(new DataOutputStream(bos));
+                Assert.assertTrue(EWAHCompressedBitmap.validate(ByteBuffer.wrap(bos.toByteArray())));
+            }
+        }
+        // without a checksum, a bad running length word is still caught
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        EWAHCompressedBitmap.bitmapOf(1, 1000, 100000).serialize(new DataOutputStream(bos));
+        byte[] bytes = bos.toByteArray();
+        Assert.assertTrue(EWAHCompressedBitmap.validate(ByteBuffer.wrap(bytes)));
+        bytes[8] = (byte) 0x7F;
+        Assert.assertFalse(EWAHCompressedBitmap.validate(ByteBuffer.wrap(bytes)));
+        Assert.assertFalse(new EWAHCompressedBitmap(ByteBuffer.wrap(bytes)).validate());
+    }
+
+    @Test
+    public void testCompactSerialization() throws IOException, CloneNotSupportedException {
+        Random r = new Random(49);
+        for (int trial = 0; trial < 20; ++trial) {
+            EWAHCompressedBitmap sparse = new EWAHCompressedBitmap();
+            for (int i = r.nextInt(100); i < 1000000; i += 1 + r.nextInt(trial % 2 == 0 ? 500 : 50000))
+                sparse.set(i);
+            EWAHCompressedBitmap dense = new EWAHCompressedBitmap();
+            for (int i = 0; i < 20000; ++i)
+                if (r.nextBoolean())
+                    dense.set(i);
+            EWAHCompressedBitmap negated = sparse.clone();
+            negated.not();
+            for (EWAHCompressedBitmap bitmap : Arrays.asList(sparse, dense, negated, sparse.or(dense), new EWAHCompressedBitmap())) {
+                for (boolean packLiterals : new boolean[]{true, false}) {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    bitmap.serializeCompact(new DataOutputStream(bos), packLiterals);
+                    byte[] bytes = bos.toByteArray();
+                    EWAHCompressedBitmap copy = new EWAHCompressedBitmap();
+                    copy.deserializeCompact(new DataInputStream(new ByteArrayInputStream(bytes)));
+                    Assert.assertEquals(bitmap, copy);
+                    Assert.assertEquals(bitmap.sizeInBits(), copy.sizeInBits());
+                    // the words can be streamed into any storage
+                    BitCounter counter = new BitCounter();
+                    EWAHCompressedBitmap.deserializeCompact(new DataInputStream(new ByteArrayInputStream(bytes)), counter);
+                    Assert.assertEquals(bitmap.cardinality(), counter.getCount());
+                    if (bitmap == sparse || bitmap == negated)
+                        Assert.assertTrue(bytes.length < bitmap.serializedSizeInBytes());
+                }
+            }
+        }
+        // the word size is recorded
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        com.googlecode.javaewah32.EWAHCompressedBitmap32.bitmapOf(1, 2, 3).serializeCompact(new DataOutputStream(bos), true);
+        try {
+            new EWAHCompressedBitmap().deserializeCompact(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompactSerializationCorrupt() {
+        byte[][] corrupt = {
+                // size in bits beyond int range: 2^31, 2^32 + 64 and 2^63
+                {1, 64, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 0},
+                {1, 64, 0, (byte) 0xC0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 0},
+                {1, 64, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                        (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 0},
+                // number of literal words beyond int range
+                {1, 64, 0, 0x40, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 0},
+                // running length of 2^60 words
+                {1, 64, 0, 0x40, (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                        (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 0, 0},
+                // more words than the size in bits allows: a running length
+                // of 100 words, then 3 literal words, in a bitmap of 64 bits
+                {1, 64, 0, 0x40, (byte) 0xC9, 0x01, 0, 0},
+                {1, 64, 0, 0x40, 1, 3, 0, 0, 0, 0},
+        };
+        for (byte[] bytes : corrupt) {
+            try {
+                new EWAHCompressedBitmap().deserializeCompact(new DataInputStream(new ByteArrayInputStream(bytes)));
+                Assert.fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
     /**
      * Convenience function to assess equality between an array and an
      * iterator over Integers
@@ -0,0 +1,86 @@
+package com.googlecode.javaewah;
+
+import static com.googlecode.javaewah.EWAHCompressedBitmap.maxSizeInBits;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.googlecode.javaewah.symmetric.IntervalFuncBitmap;
+import com.googlecode.javaewah.symmetric.RunningBitmapMerge;
+import com.googlecode.javaewah.symmetric.UpdateableBitmapFunction;
+
+@SuppressWarnings("javadoc")
+public class IntervalFuncBitmapTest {
+
+    private static EWAHCompressedBitmap[] randomBitmaps(Random r, int n) {
+        EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[n];
+        for (int k = 0; k < n; ++k) {
+            bitmaps[k] = new EWAHCompressedBitmap();
+            int universe = 1 + r.nextInt(20000);
+            for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 1000) % 5 * 30))
+                bitmaps[k].set(pos);
+            if (r.nextBoolean())
+                bitmaps[k].setSizeInBits(universe + 64 * r.nextInt(100), r.nextBoolean());
+        }
+        return bitmaps;
+    }
+
+    private static EWAHCompressedBitmap bruteForce(int min, int max, EWAHCompressedBitmap[] bitmaps) {
+        EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+        int size = maxSizeInBits(bitmaps);
+        for (int pos = 0; pos < size; ++pos) {
+            int count = 0;
+            for (EWAHCompressedBitmap b : bitmaps)
+                if (b.get(pos))
+                    ++count;
+            if (count >= min && count <= max)
+                answer.set(pos);
+        }
+        return answer;
+    }
+
+    private static EWAHCompressedBitmap compute(UpdateableBitmapFunction f, EWAHCompressedBitmap[] bitmaps) {
+        EWAHCompressedBitmap answer = new EWAHCompressedBitmap();
+        new RunningBitmapMerge().symmetric(f, answer, bitmaps);
+        int size = maxSizeInBits(bitmaps);
+        if (answer.sizeInBits() > size)
+            answer.setSizeInBitsWithinLastWord(size);
+        return answer;
+    }
+
+    @Test
+    public void randomtest() {
+        Random r = new Random(1);
+        for (int n = 1; n <= 9; n += 2) {
+            EWAHCompressedBitmap[] bitmaps = randomBitmaps(r, n);
+            for (int min = 0; min <= n; ++min) {
+                for (int max = min; max <= n + 1; ++max) {
+                    Assert.assertEquals(bruteForce(min, max, bitmaps),
+                            compute(IntervalFuncBitmap.between(min, max), bitmaps));
+                }
+                Assert.assertEquals(bruteForce(min, min, bitmaps),
+                        compute(IntervalFuncBitmap.exactly(min), bitmaps));
+                Assert.assertEquals(bruteForce(0, min, bitmaps),
+                        compute(IntervalFuncBitmap.atMost(min), bitmaps));
+            }
+            Assert.assertEquals(bruteForce(n / 2 + 1, n, bitmaps),
+                    compute(IntervalFuncBitmap.majority(), bitmaps));
+        }
+    }
+
+    @Test
+    public void thresholdtest() {
+        Random r = new Random(2);
+        EWAHCompressedBitmap[] bitmaps = randomBitmaps(r, 40);
+        for (int t = 1; t <= 41; t += 5)
+            Assert.assertEquals(compute(new com.googlecode.javaewah.symmetric.ThresholdFuncBitmap(t), bitmaps),
+                    compute(new IntervalFuncBitmap(t, Integer.MAX_VALUE), bitmaps));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badinterval() {
+        IntervalFuncBitmap.between(3, 2);
+    }
+}
@@ -0,0 +1,59 @@
+package com.googlecode.javaewah;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the lazy union.
+ */
+public class LazyOrAccumulatorTest {
+
+    @Test
+    public void testAgainstOr() {
+        for (int N = 1; N <= 64; N *= 4) {
+            Iterator<EWAHCompressedBitmap[]> i = IteratorAggregationTest.getCollections(N, 3);
+            while (i.hasNext()) {
+                final EWAHCompressedBitmap[] x = i.next();
+                final LazyOrAccumulator acc = new LazyOrAccumulator();
+                EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+                for (EWAHCompressedBitmap b : x) {
+                    acc.add(b);
+                    expected = expected.or(b);
+                }
+                final EWAHCompressedBitmap result = acc.finish();
+                assertEquals(expected, result);
+                assertEquals(expected.sizeInBits(), result.sizeInBits());
+                // the result is canonical
+                assertEquals(expected.sizeInBytes(), result.sizeInBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testFills() {
+        final LazyOrAccumulator acc = new LazyOrAccumulator();
+        final EWAHCompressedBitmap even = new EWAHCompressedBitmap();
+        final EWAHCompressedBitmap odd = new EWAHCompressedBitmap();
+        for (int k = 0; k < 64 * 100; ++k)
+            (k % 2 == 0 ? even : odd).set(k);
+        odd.set(10000);
+        acc.add(even);
+        acc.add(odd);
+        final EWAHCompressedBitmap result = acc.finish();
+        final EWAHCompressedBitmap expected = even.or(odd);
+        assertEquals(expected, result);
+        assertEquals(expected.sizeInBytes(), result.sizeInBytes());
+        assertEquals(10001, result.sizeInBits());
+        acc.clear();
+        assertEquals(new EWAHCompressedBitmap(), acc.finish());
+        assertEquals(0, acc.finish().sizeInBits());
+    }
+}
@@ -0,0 +1,91 @@
+package com.googlecode.javaewah;
+
+import static com.googlecode.javaewah.EWAHCompressedBitmap.maxSizeInBits;
+
+import com.googlecode.javaewah.symmetric.ParallelRunningBitmapMerge;
+import com.googlecode.javaewah.symmetric.SumFuncBitmap;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SumFuncBitmapTest {
+
+    @Test
+    public void randomtest() {
+        Random r = new Random(3);
+        for (int n = 1; n <= 40; n = 2 * n + 1) {
+            EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[n];
+            for (int k = 0; k < n; ++k) {
+                bitmaps[k] = new EWAHCompressedBitmap();
+                int universe = 1 + r.nextInt(50000);
+                for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 2000) % 4 * 40))
+                    bitmaps[k].set(pos);
+                if (k % 3 == 0)
+                    bitmaps[k].setSizeInBits(universe + 64 * 50, true);
+            }
+            EWAHCompressedBitmap[] slices = EWAHCompressedBitmap.sum(bitmaps);
+            Assert.assertEquals(32 - Integer.numberOfLeadingZeros(n), slices.length);
+            int size = maxSizeInBits(bitmaps);
+            for (EWAHCompressedBitmap slice : slices)
+                Assert.assertEquals(size, slice.sizeInBits());
+            for (int pos = 0; pos < size; ++pos) {
+                int count = 0;
+                for (EWAHCompressedBitmap b : bitmaps)
+                    if (b.get(pos))
+                        ++count;
+                int value = 0;
+                for (int j = 0; j < slices.length; ++j)
+                    if (slices[j].get(pos))
+                        value |= 1 << j;
+                Assert.assertEquals(count, value);
+            }
+        }
+    }
+
+    @Test
+    public void paralleltest() {
+        Random r = new Random(33);
+        EWAHCompressedBitmap[] bitmaps = new EWAHCompressedBitmap[5];
+        for (int k = 0; k < bitmaps.length; ++k) {
+            bitmaps[k] = new EWAHCompressedBitmap();
+            int universe = 2000000 + r.nextInt(2000000);
+            for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 20000) % 4 * 500))
+                bitmaps[k].set(pos);
+            if (k % 2 == 0)
+                bitmaps[k].setSizeInBits(universe + 64 * 5000, true);
+        }
+        EWAHCompressedBitmap[] expected = EWAHCompressedBitmap.sum(bitmaps);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            SumFuncBitmap f = new SumFuncBitmap();
+            EWAHCompressedBitmap out = new EWAHCompressedBitmap();
+            new ParallelRunningBitmapMerge(pool).symmetric(f, out, bitmaps);
+            Assert.assertTrue(out.isEmpty());
+            EWAHCompressedBitmap[] slices = f.getSlices();
+            Assert.assertEquals(expected.length, slices.length);
+            for (int j = 0; j < slices.length; ++j) {
+                slices[j].setSizeInBitsWithinLastWord(maxSizeInBits(bitmaps));
+                Assert.assertEquals(expected[j], slices[j]);
+                Assert.assertEquals(expected[j].cardinality(), slices[j].cardinality());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void filltest() {
+        EWAHCompressedBitmap ones = new EWAHCompressedBitmap();
+        ones.setSizeInBits(64 * 1000, true);
+        EWAHCompressedBitmap[] slices = EWAHCompressedBitmap.sum(ones, ones, ones);
+        Assert.assertEquals(2, slices.length);
+        Assert.assertEquals(64 * 1000, slices[0].cardinality());
+        Assert.assertEquals(64 * 1000, slices[1].cardinality());
+        // fills stay compressed
+        Assert.assertTrue(slices[0].sizeInBytes() < 64);
+        Assert.assertEquals(0, EWAHCompressedBitmap.sum().length);
+    }
+}
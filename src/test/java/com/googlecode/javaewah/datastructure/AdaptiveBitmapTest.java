@@ -0,0 +1,197 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+import com.googlecode.javaewah.datastructure.AdaptiveBitmap.Representation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class AdaptiveBitmapTest {
+
+    @Test
+    public void simpleExample() {
+        AdaptiveBitmap b = AdaptiveBitmap.bitmapOf(3, 1, 1000000, 3);
+        Assert.assertEquals(Representation.ARRAY, b.getRepresentation());
+        Assert.assertEquals(3, b.cardinality());
+        Assert.assertArrayEquals(new int[]{1, 3, 1000000}, b.toArray());
+        Assert.assertTrue(b.get(1000000));
+        Assert.assertFalse(b.get(2));
+        b.clear(3);
+        b.clear(4);
+        Assert.assertEquals(2, b.cardinality());
+        Assert.assertEquals("ARRAY{1,1000000}", b.toString());
+        Assert.assertTrue(AdaptiveBitmap.bitmapOf().isEmpty());
+    }
+
+    @Test
+    public void sparseStaysArray() {
+        AdaptiveBitmap b = new AdaptiveBitmap();
+        for (int i = 0; i < 1000; ++i)
+            b.set(i * 1000);
+        Assert.assertEquals(Representation.ARRAY, b.getRepresentation());
+        Assert.assertEquals(1000, b.cardinality());
+    }
+
+    @Test
+    public void denseRandomBecomesBitSet() {
+        Random r = new Random(1);
+        AdaptiveBitmap b = new AdaptiveBitmap();
+        java.util.BitSet reference = new java.util.BitSet();
+        for (int i = 0; i < 100000; ++i) {
+            if (r.nextBoolean()) {
+                b.set(i);
+                reference.set(i);
+            }
+        }
+        Assert.assertEquals(Representation.BITSET, b.getRepresentation());
+        assertSame(reference, b);
+    }
+
+    @Test
+    public void runsBecomeEWAH() {
+        AdaptiveBitmap b = new AdaptiveBitmap();
+        java.util.BitSet reference = new java.util.BitSet();
+        for (int i = 0; i < 100000; ++i) {
+            if ((i / 20000) % 2 == 0) {
+                b.set(i);
+                reference.set(i);
+            }
+        }
+        Assert.assertEquals(Representation.EWAH, b.getRepresentation());
+        assertSame(reference, b);
+        // clearing most bits makes the bitmap sparse again
+        for (int i = 0; i < 100000; ++i) {
+            if (i % 1000 != 0) {
+                b.clear(i);
+                reference.clear(i);
+            }
+        }
+        b.optimize();
+        Assert.assertEquals(Representation.ARRAY, b.getRepresentation());
+        assertSame(reference, b);
+    }
+
+    @Test
+    public void conversions() {
+        Random r = new Random(2);
+        java.util.BitSet reference = new java.util.BitSet();
+        AdaptiveBitmap b = new AdaptiveBitmap();
+        for (int i = 0; i < 500; ++i) {
+            int x = r.nextInt(5000);
+            b.set(x);
+            reference.set(x);
+        }
+        for (Representation from : Representation.values()) {
+            for (Representation to : Representation.values()) {
+                AdaptiveBitmap c = b.clone();
+                c.convertTo(from);
+                c.convertTo(to);
+                Assert.assertEquals(to, c.getRepresentation());
+                assertSame(reference, c);
+                Assert.assertEquals(b, c);
+                Assert.assertEquals(b.hashCode(), c.hashCode());
+                Assert.assertEquals(reference.cardinality(), c.toEWAHCompressedBitmap().cardinality());
+                Assert.assertEquals(reference.cardinality(), c.toBitSet().cardinality());
+            }
+        }
+        EWAHCompressedBitmap e = b.toEWAHCompressedBitmap();
+        Assert.assertEquals(b, AdaptiveBitmap.valueOf(e));
+    }
+
+    @Test
+    public void mutationsInEveryRepresentation() {
+        Random r = new Random(3);
+        for (Representation rep : Representation.values()) {
+            AdaptiveBitmap b = new AdaptiveBitmap();
+            b.convertTo(rep);
+            java.util.BitSet reference = new java.util.BitSet();
+            for (int i = 0; i < 20000; ++i) {
+                int x = r.nextInt(1 << (4 + i % 14));
+                if (r.nextInt(3) == 0) {
+                    b.clear(x);
+                    reference.clear(x);
+                } else {
+                    b.set(x);
+                    reference.set(x);
+                }
+                Assert.assertEquals(reference.cardinality(), b.cardinality());
+            }
+            assertSame(reference, b);
+        }
+    }
+
+    @Test
+    public void operationsAcrossRepresentations() {
+        Random r = new Random(4);
+        for (int trial = 0; trial < 5; ++trial) {
+            java.util.BitSet x = randomBitSet(r);
+            java.util.BitSet y = randomBitSet(r);
+            for (Representation rx : Representation.values()) {
+                for (Representation ry : Representation.values()) {
+                    AdaptiveBitmap a = toAdaptive(x, rx);
+                    AdaptiveBitmap b = toAdaptive(y, ry);
+                    java.util.BitSet expected = (java.util.BitSet) x.clone();
+                    expected.and(y);
+                    assertSame(expected, a.and(b));
+                    expected = (java.util.BitSet) x.clone();
+                    expected.or(y);
+                    assertSame(expected, a.or(b));
+                    expected = (java.util.BitSet) x.clone();
+                    expected.xor(y);
+                    assertSame(expected, a.xor(b));
+                    expected = (java.util.BitSet) x.clone();
+                    expected.andNot(y);
+                    assertSame(expected, a.andNot(b));
+                    // the inputs are not modified
+                    assertSame(x, a);
+                    assertSame(y, b);
+                    Assert.assertEquals(rx, a.getRepresentation());
+                }
+            }
+        }
+    }
+
+    private static java.util.BitSet randomBitSet(Random r) {
+        java.util.BitSet answer = new java.util.BitSet();
+        int max = 1 + r.nextInt(200000);
+        switch (r.nextInt(3)) {
+            case 0: // sparse
+                for (int i = 0; i < 100; ++i)
+                    answer.set(r.nextInt(max));
+                break;
+            case 1: // dense
+                for (int i = 0; i < max; ++i)
+                    if (r.nextBoolean())
+                        answer.set(i);
+                break;
+            default: // runs
+                for (int i = r.nextInt(1000); i < max; i += 1 + r.nextInt(5000)) {
+                    int end = Math.min(max, i + r.nextInt(5000));
+                    answer.set(i, end);
+                    i = end;
+                }
+        }
+        return answer;
+    }
+
+    private static AdaptiveBitmap toAdaptive(java.util.BitSet b, Representation r) {
+        AdaptiveBitmap answer = new AdaptiveBitmap();
+        for (int i = b.nextSetBit(0); i >= 0; i = b.nextSetBit(i + 1))
+            answer.set(i);
+        answer.convertTo(r);
+        return answer;
+    }
+
+    private static void assertSame(java.util.BitSet expected, AdaptiveBitmap b) {
+        Assert.assertEquals(expected.cardinality(), b.cardinality());
+        IntIterator i = b.intIterator();
+        for (int x = expected.nextSetBit(0); x >= 0; x = expected.nextSetBit(x + 1)) {
+            Assert.assertTrue(i.hasNext());
+            Assert.assertEquals(x, i.next());
+            Assert.assertTrue(b.get(x));
+        }
+        Assert.assertFalse(i.hasNext());
+    }
+}
@@ -17,6 +17,7 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 
+import com.googlecode.javaewah.EWAHCompressedBitmap;
 import com.googlecode.javaewah.IntIterator;
 
 
@@ -221,4 +222,184 @@ public class BitSetTest
 
 	}
 
+	private static BitSet randomBitSet(java.util.Random r, int words) {
+		BitSet b = new BitSet(words * 64);
+		for (int k = 0; k < words * 64; ++k)
+			if (r.nextInt(3) == 0)
+				b.set(k);
+		return b;
+	}
+
+	private static java.util.BitSet toJavaBitSet(BitSet b) {
+		java.util.BitSet answer = new java.util.BitSet();
+		for (int i : b)
+			answer.set(i);
+		return answer;
+	}
+
+	@Test
+	public void testWordOperations() throws IOException {
+		java.util.Random r = new java.util.Random(40);
+		for (int trial = 0; trial < 20; ++trial) {
+			// and/andNot only consider the words common to both bitmaps
+			int words = r.nextInt(100);
+			BitSet a = randomBitSet(r, words);
+			BitSet b = randomBitSet(r, words + r.nextInt(30));
+			java.util.BitSet ja = toJavaBitSet(a);
+			java.util.BitSet jb = toJavaBitSet(b);
+			// the other bitmap is a BitSet or another kind of WordArray
+			for (WordArray other : new WordArray[] { b, toImmutableBitSet(b) }) {
+				java.util.BitSet expected = (java.util.BitSet) ja.clone();
+				expected.and(jb);
+				assertEquals(expected.cardinality(), a.andcardinality(other));
+				BitSet x = a.clone();
+				x.and(other);
+				assertEquals(expected, toJavaBitSet(x));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.andNot(jb);
+				assertEquals(expected.cardinality(), a.andNotcardinality(other));
+				x = a.clone();
+				x.andNot(other);
+				assertEquals(expected, toJavaBitSet(x));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.or(jb);
+				assertEquals(expected.cardinality(), a.orcardinality(other));
+				x = a.clone();
+				x.or(other);
+				assertEquals(expected, toJavaBitSet(x));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.xor(jb);
+				assertEquals(expected.cardinality(), a.xorcardinality(other));
+				x = a.clone();
+				x.xor(other);
+				assertEquals(expected, toJavaBitSet(x));
+			}
+			assertEquals(ja.cardinality(), a.cardinality());
+		}
+	}
+
+	@Test
+	public void testImmutableOperations() throws IOException {
+		java.util.Random r = new java.util.Random(46);
+		for (int trial = 0; trial < 10; ++trial) {
+			// long enough to span several chunks
+			BitSet a = randomBitSet(r, r.nextInt(3000));
+			BitSet b = randomBitSet(r, r.nextInt(3000));
+			ImmutableBitSet ia = toImmutableBitSet(a);
+			java.util.BitSet ja = toJavaBitSet(a);
+			java.util.BitSet jb = toJavaBitSet(b);
+			assertEquals(ja.cardinality(), ia.cardinality());
+			final BitSet bb = b;
+			// a plain WordArray goes through getWord
+			WordArray plain = new WordArray() {
+				@Override
+				public int getNumberOfWords() {
+					return bb.getNumberOfWords();
+				}
+
+				@Override
+				public long getWord(int index) {
+					return bb.getWord(index);
+				}
+			};
+			for (WordArray other : new WordArray[] { b, toImmutableBitSet(b), plain }) {
+				java.util.BitSet expected = (java.util.BitSet) ja.clone();
+				expected.and(jb);
+				assertEquals(expected.cardinality(), ia.andcardinality(other));
+				assertEquals(expected, toJavaBitSet(ia.and(other)));
+				assertEquals(!expected.isEmpty(), ia.intersects(other));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.andNot(jb);
+				assertEquals(expected.cardinality(), ia.andNotcardinality(other));
+				assertEquals(expected, toJavaBitSet(ia.andNot(other)));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.or(jb);
+				assertEquals(expected.cardinality(), ia.orcardinality(other));
+				assertEquals(expected, toJavaBitSet(ia.or(other)));
+
+				expected = (java.util.BitSet) ja.clone();
+				expected.xor(jb);
+				assertEquals(expected.cardinality(), ia.xorcardinality(other));
+				assertEquals(expected, toJavaBitSet(ia.xor(other)));
+			}
+		}
+	}
+
+	@Test
+	public void testEWAHOperations() throws IOException {
+		java.util.Random r = new java.util.Random(42);
+		for (int trial = 0; trial < 20; ++trial) {
+			BitSet a = randomBitSet(r, r.nextInt(100));
+			java.util.BitSet ja = toJavaBitSet(a);
+			// a compressed bitmap with runs of zeros, runs of ones and literals
+			EWAHCompressedBitmap e = new EWAHCompressedBitmap();
+			java.util.BitSet je = new java.util.BitSet();
+			int words = r.nextInt(130);
+			for (int k = 0; k < words; ++k) {
+				int kind = r.nextInt(3);
+				long w = kind == 0 ? 0 : kind == 1 ? ~0L : r.nextLong();
+				e.addWord(w);
+				for (int j = 0; j < 64; ++j)
+					if ((w & (1L << j)) != 0)
+						je.set(k * 64 + j);
+			}
+			for (WordArray other : new WordArray[] { a, toImmutableBitSet(a) }) {
+				java.util.BitSet expected = (java.util.BitSet) je.clone();
+				expected.and(ja);
+				assertEquals(expected.cardinality(), e.andCardinality(other));
+				assertEquals(!expected.isEmpty(), e.intersects(other));
+				assertEquals(expected, toJavaBitSet(e.and(other)));
+
+				expected = (java.util.BitSet) je.clone();
+				expected.andNot(ja);
+				assertEquals(expected, toJavaBitSet(e.andNot(other)));
+
+				expected = (java.util.BitSet) je.clone();
+				expected.or(ja);
+				EWAHCompressedBitmap or = e.or(other);
+				assertEquals(expected, toJavaBitSet(or));
+				assertEquals(Math.max(e.sizeInBits(), a.size()), or.sizeInBits());
+			}
+			// in-place updates of the uncompressed bitmap
+			java.util.BitSet expected = (java.util.BitSet) ja.clone();
+			expected.and(je);
+			assertEquals(expected.cardinality(), a.andcardinality(e));
+			assertEquals(!expected.isEmpty(), a.intersects(e));
+			BitSet x = a.clone();
+			x.and(e);
+			assertEquals(expected, toJavaBitSet(x));
+
+			expected = (java.util.BitSet) ja.clone();
+			expected.andNot(je);
+			x = a.clone();
+			x.andNot(e);
+			assertEquals(expected, toJavaBitSet(x));
+
+			expected = (java.util.BitSet) ja.clone();
+			expected.or(je);
+			x = a.clone();
+			x.or(e);
+			assertEquals(expected, toJavaBitSet(x));
+
+			expected = (java.util.BitSet) ja.clone();
+			expected.xor(je);
+			x = a.clone();
+			x.xor(e);
+			assertEquals(expected, toJavaBitSet(x));
+		}
+	}
+
+	private static java.util.BitSet toJavaBitSet(EWAHCompressedBitmap e) {
+		java.util.BitSet answer = new java.util.BitSet();
+		IntIterator i = e.intIterator();
+		while (i.hasNext())
+			answer.set(i.next());
+		return answer;
+	}
+
 }
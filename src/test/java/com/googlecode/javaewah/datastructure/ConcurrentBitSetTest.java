@@ -0,0 +1,103 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentBitSetTest {
+
+    @Test
+    public void simpleExample() {
+        ConcurrentBitSet b = new ConcurrentBitSet(100);
+        Assert.assertEquals(128, b.size());
+        Assert.assertFalse(b.getAndSet(3, true));
+        Assert.assertTrue(b.getAndSet(3, true));
+        b.set(99);
+        Assert.assertTrue(b.flip(64));
+        Assert.assertFalse(b.flip(64));
+        b.clear(3);
+        Assert.assertFalse(b.get(3));
+        Assert.assertTrue(b.get(99));
+        Assert.assertEquals(1, b.cardinality());
+        Assert.assertEquals(BitSet.bitmapOf(99), b.snapshot());
+        Assert.assertEquals(EWAHCompressedBitmap.bitmapOf(99), b.toEWAHCompressedBitmap());
+        ConcurrentBitSet c = new ConcurrentBitSet(BitSet.bitmapOf(1, 70));
+        Assert.assertEquals("{1,70}", c.toString());
+    }
+
+    @Test
+    public void concurrentUpdates() throws InterruptedException {
+        final int threads = 8;
+        final int size = 1 << 16;
+        final ConcurrentBitSet b = new ConcurrentBitSet(size);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t;
+            // neighbouring bits (in the same words) belong to different threads
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < size; i += threads)
+                        b.set(i);
+                    for (int i = offset; i < size; i += 2 * threads)
+                        b.flip(i);
+                }
+            });
+        }
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        Assert.assertEquals(size / 2, b.cardinality());
+        for (int i = 0; i < size; ++i)
+            Assert.assertEquals((i / threads) % 2 == 1, b.get(i));
+    }
+
+    @Test
+    public void consistentSnapshots() throws InterruptedException {
+        final int threads = 4;
+        final int size = 1 << 15;
+        final ConcurrentBitSet b = new ConcurrentBitSet(size);
+        final AtomicInteger done = new AtomicInteger();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t;
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    // each thread sets its bits in increasing order
+                    for (int i = offset; i < size; i += threads)
+                        b.set(i);
+                    done.incrementAndGet();
+                }
+            });
+        }
+        for (Thread w : workers)
+            w.start();
+        int snapshots = 0;
+        while (done.get() < threads || snapshots < 10) {
+            BitSet s = snapshot(b, snapshots++);
+            // the bits of each thread form a prefix of its sequence
+            for (int t = 0; t < threads; ++t) {
+                int i = t;
+                while (i < size && s.get(i))
+                    i += threads;
+                for (; i < size; i += threads)
+                    Assert.assertFalse(s.get(i));
+            }
+        }
+        for (Thread w : workers)
+            w.join();
+        Assert.assertEquals(size, b.cardinality());
+    }
+
+    private static BitSet snapshot(ConcurrentBitSet b, int k) {
+        if (k % 2 == 0)
+            return b.snapshot();
+        return b.toEWAHCompressedBitmap().toBitSet();
+    }
+}
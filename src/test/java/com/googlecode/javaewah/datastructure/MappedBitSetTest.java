@@ -0,0 +1,166 @@
+package com.googlecode.javaewah.datastructure;
+
+import com.googlecode.javaewah.IntIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class MappedBitSetTest {
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Test
+    public void persistence() throws IOException {
+        File file = File.createTempFile("javaewah", "mappedbitset");
+        file.deleteOnExit();
+        FileChannel channel = open(file);
+        try {
+            MappedBitSet b = new MappedBitSet(channel, 1000);
+            Assert.assertEquals(1024, b.size());
+            Assert.assertTrue(b.empty());
+            b.set(0);
+            b.set(55);
+            b.set(64, 130);
+            b.set(999);
+            b.force();
+        } finally {
+            channel.close();
+        }
+        channel = open(file);
+        try {
+            MappedBitSet b = new MappedBitSet(channel);
+            Assert.assertEquals(1024, b.size());
+            Assert.assertEquals(69, b.cardinality());
+            Assert.assertTrue(b.get(55));
+            Assert.assertTrue(b.get(129));
+            Assert.assertFalse(b.get(130));
+            // the file can also be read as a BitSet or an ImmutableBitSet
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            BitSet copy = new BitSet();
+            copy.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+            Assert.assertEquals(copy, b);
+            Assert.assertEquals(b.asBitSet(), copy);
+            ImmutableBitSet immutable = new ImmutableBitSet(ByteBuffer.wrap(bytes).asLongBuffer());
+            Assert.assertEquals(copy.cardinality(), immutable.cardinality());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void resizing() throws IOException {
+        File file = File.createTempFile("javaewah", "mappedbitset");
+        file.deleteOnExit();
+        FileChannel channel = open(file);
+        try {
+            MappedBitSet b = new MappedBitSet(channel);
+            Assert.assertEquals(0, b.size());
+            b.resize(640);
+            b.set(0, 640);
+            Assert.assertEquals(640, b.cardinality());
+            b.resize(64);
+            Assert.assertEquals(64, b.cardinality());
+            // the words beyond the smaller size do not come back
+            b.resize(6400);
+            Assert.assertEquals(64, b.cardinality());
+            Assert.assertEquals(64, b.nextUnsetBit(0));
+            Assert.assertEquals(-1, b.nextSetBit(64));
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void randomOperations() throws IOException {
+        Random r = new Random(44);
+        File file = File.createTempFile("javaewah", "mappedbitset");
+        file.deleteOnExit();
+        FileChannel channel = open(file);
+        try {
+            MappedBitSet b = new MappedBitSet(channel, 10000);
+            BitSet reference = new BitSet(10000);
+            for (int i = 0; i < 2000; ++i) {
+                int x = r.nextInt(10000);
+                int y = x + r.nextInt(10000 - x + 1);
+                switch (r.nextInt(6)) {
+                    case 0:
+                        b.set(x);
+                        reference.set(x);
+                        break;
+                    case 1:
+                        b.unset(x);
+                        reference.unset(x);
+                        break;
+                    case 2:
+                        b.flip(x);
+                        reference.flip(x);
+                        break;
+                    case 3:
+                        b.set(x, y);
+                        reference.set(x, y);
+                        break;
+                    case 4:
+                        b.clear(x, y);
+                        reference.clear(x, y);
+                        break;
+                    default:
+                        b.flip(x, y);
+                        reference.flip(x, y);
+                }
+            }
+            Assert.assertEquals(reference, b);
+            Assert.assertEquals(reference.cardinality(), b.cardinality());
+            Assert.assertEquals(reference.hashCode(), b.hashCode());
+            Assert.assertEquals(reference.toString(), b.toString());
+            IntIterator i = b.intIterator();
+            IntIterator j = reference.intIterator();
+            while (j.hasNext())
+                Assert.assertEquals(j.next(), i.next());
+            Assert.assertFalse(i.hasNext());
+            i = b.unsetIntIterator();
+            j = reference.unsetIntIterator();
+            while (j.hasNext())
+                Assert.assertEquals(j.next(), i.next());
+            Assert.assertFalse(i.hasNext());
+
+            // logical operations with other word arrays
+            BitSet other = new BitSet(20000);
+            for (int k = 0; k < 5000; ++k)
+                other.set(r.nextInt(20000));
+            Assert.assertEquals(reference.andcardinality(other), b.andcardinality(other));
+            Assert.assertEquals(reference.andNotcardinality(other), b.andNotcardinality(other));
+            Assert.assertEquals(reference.orcardinality(other), b.orcardinality(other));
+            Assert.assertEquals(reference.xorcardinality(other), b.xorcardinality(other));
+            Assert.assertEquals(reference.intersects(other), b.intersects(other));
+            b.xor(other);
+            reference.xor(other);
+            Assert.assertEquals(reference, b);
+            Assert.assertEquals(20032, b.size());
+            b.andNot(other);
+            reference.andNot(other);
+            Assert.assertEquals(reference, b);
+            b.or(other);
+            reference.or(other);
+            Assert.assertEquals(reference, b);
+            b.and(other);
+            reference.and(other);
+            Assert.assertEquals(reference, b);
+            b.clear();
+            Assert.assertTrue(b.empty());
+        } finally {
+            channel.close();
+        }
+    }
+}
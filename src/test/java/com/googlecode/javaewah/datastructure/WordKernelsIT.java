@@ -0,0 +1,93 @@
+package com.googlecode.javaewah.datastructure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Checks the packaged multi-release jar on Java 17 (mvn verify with the
+ * java17 profile): the word kernels must take the vector path and agree
+ * with the portable loops.
+ */
+public class WordKernelsIT {
+
+    @Test
+    public void vectorPathIsUsed() {
+        final String location = WordKernels.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        assertTrue("not loaded from the jar: " + location, location.endsWith(".jar"));
+        assertTrue(WordKernels.isVectorized());
+    }
+
+    @Test
+    public void vectorPathMatchesPortableLoops() {
+        final Random r = new Random(40);
+        for (int length : new int[]{0, 1, 15, 16, 17, 31, 64, 100, 1000, 5000}) {
+            for (int trial = 0; trial < 5; ++trial) {
+                final int xOffset = r.nextInt(8);
+                final int yOffset = r.nextInt(8);
+                final long[] x = randomWords(r, xOffset + length + r.nextInt(8), trial);
+                final long[] y = randomWords(r, yOffset + length + r.nextInt(8), trial + 1);
+                final String message = length + " words at " + xOffset + ", " + yOffset;
+
+                int expected = 0, and = 0, andNot = 0, or = 0, xor = 0;
+                for (int i = 0; i < length; ++i) {
+                    final long a = x[xOffset + i], b = y[yOffset + i];
+                    expected += Long.bitCount(a);
+                    and += Long.bitCount(a & b);
+                    andNot += Long.bitCount(a & ~b);
+                    or += Long.bitCount(a | b);
+                    xor += Long.bitCount(a ^ b);
+                }
+                assertEquals(message, expected, WordKernels.cardinality(x, xOffset, length));
+                assertEquals(message, and, WordKernels.andCardinality(x, xOffset, y, yOffset, length));
+                assertEquals(message, andNot, WordKernels.andNotCardinality(x, xOffset, y, yOffset, length));
+                assertEquals(message, or, WordKernels.orCardinality(x, xOffset, y, yOffset, length));
+                assertEquals(message, xor, WordKernels.xorCardinality(x, xOffset, y, yOffset, length));
+
+                for (int op = 0; op < 4; ++op) {
+                    final long[] actual = Arrays.copyOf(x, x.length);
+                    final long[] reference = Arrays.copyOf(x, x.length);
+                    for (int i = 0; i < length; ++i) {
+                        final long b = y[yOffset + i];
+                        switch (op) {
+                            case 0: reference[xOffset + i] &= b; break;
+                            case 1: reference[xOffset + i] &= ~b; break;
+                            case 2: reference[xOffset + i] |= b; break;
+                            default: reference[xOffset + i] ^= b;
+                        }
+                    }
+                    switch (op) {
+                        case 0: WordKernels.and(actual, xOffset, y, yOffset, length); break;
+                        case 1: WordKernels.andNot(actual, xOffset, y, yOffset, length); break;
+                        case 2: WordKernels.or(actual, xOffset, y, yOffset, length); break;
+                        default: WordKernels.xor(actual, xOffset, y, yOffset, length);
+                    }
+                    assertArrayEquals(message + " op " + op, reference, actual);
+                }
+            }
+        }
+    }
+
+    // sparse, dense or full words
+    private static long[] randomWords(final Random r, final int length, final int kind) {
+        final long[] words = new long[length];
+        for (int i = 0; i < length; ++i) {
+            switch (kind % 3) {
+                case 0: words[i] = r.nextLong() & r.nextLong() & r.nextLong(); break;
+                case 1: words[i] = r.nextLong(); break;
+                default: words[i] = r.nextInt(4) == 0 ? 0 : ~0L;
+            }
+        }
+        return words;
+    }
+}
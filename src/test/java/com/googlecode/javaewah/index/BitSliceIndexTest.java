@@ -0,0 +1,151 @@
+package com.googlecode.javaewah.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.index.BitSliceIndex.Operation;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the bit-sliced index.
+ */
+public class BitSliceIndexTest {
+
+    private static final int ROWS = 5000;
+
+    private static long[] randomValues(final Random r) {
+        final long[] values = new long[ROWS];
+        for (int i = 0; i < ROWS; ++i)
+            values[i] = r.nextInt(4) == 0 ? r.nextInt(1000000) : r.nextInt(100);
+        return values;
+    }
+
+    private static boolean matches(final Operation op, final long v, final long c) {
+        switch (op) {
+            case LT: return v < c;
+            case LE: return v <= c;
+            case EQ: return v == c;
+            case NEQ: return v != c;
+            case GT: return v > c;
+            default: return v >= c;
+        }
+    }
+
+    @Test
+    public void testCompare() {
+        final Random r = new Random(5);
+        final long[] values = randomValues(r);
+        final BitSliceIndex bsi = BitSliceIndex.of(values);
+        final EWAHCompressedBitmap foundSet = new EWAHCompressedBitmap();
+        for (int i = 0; i < ROWS; i += 1 + r.nextInt(3))
+            foundSet.set(i);
+        final long[] constants = {-1, 0, 1, 50, 99, 100, 12345, 999999, 1L << 40};
+        for (Operation op : Operation.values()) {
+            for (long c : constants) {
+                final EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+                final EWAHCompressedBitmap expectedInFoundSet = new EWAHCompressedBitmap();
+                for (int i = 0; i < ROWS; ++i) {
+                    if (matches(op, values[i], c)) {
+                        expected.set(i);
+                        if (foundSet.get(i))
+                            expectedInFoundSet.set(i);
+                    }
+                }
+                assertEquals(op + " " + c, expected, bsi.compare(op, c, null));
+                assertEquals(op + " " + c, expectedInFoundSet, bsi.compare(op, c, foundSet));
+            }
+        }
+        final EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+        for (int i = 0; i < ROWS; ++i)
+            if (values[i] >= 10 && values[i] <= 60)
+                expected.set(i);
+        assertEquals(expected, bsi.between(10, 60, null));
+        for (int i = 0; i < ROWS; i += 97)
+            assertEquals(values[i], bsi.getValue(i));
+    }
+
+    @Test
+    public void testMissingRows() {
+        final BitSliceIndex bsi = BitSliceIndex.of(new int[]{2, 5, 100}, new long[]{7, 0, 3});
+        assertEquals(EWAHCompressedBitmap.bitmapOf(5, 100), bsi.compare(Operation.LT, 7, null));
+        assertEquals(EWAHCompressedBitmap.bitmapOf(2, 5, 100), bsi.compare(Operation.NEQ, 8, null));
+        assertEquals(-1, bsi.getValue(3));
+        assertEquals(10, bsi.sum(null));
+    }
+
+    @Test
+    public void testSum() {
+        final Random r = new Random(6);
+        final long[] values = randomValues(r);
+        final BitSliceIndex bsi = BitSliceIndex.of(values);
+        final EWAHCompressedBitmap foundSet = new EWAHCompressedBitmap();
+        long expected = 0;
+        for (int i = 0; i < ROWS; i += 1 + r.nextInt(5)) {
+            foundSet.set(i);
+            expected += values[i];
+        }
+        long total = 0;
+        for (long v : values)
+            total += v;
+        assertEquals(total, bsi.sum(null));
+        assertEquals(expected, bsi.sum(foundSet));
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            assertEquals(expected, bsi.sum(pool, foundSet));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        final Random r = new Random(7);
+        final long[] values = randomValues(r);
+        final BitSliceIndex bsi = BitSliceIndex.of(values);
+        for (int k : new int[]{1, 10, 1000, ROWS, ROWS + 10}) {
+            final EWAHCompressedBitmap top = bsi.topK(k, null);
+            assertEquals(Math.min(k, ROWS), top.cardinality());
+            // every selected value is at least as large as every other value
+            long smallestSelected = Long.MAX_VALUE;
+            long largestOther = -1;
+            for (int i = 0; i < ROWS; ++i) {
+                if (top.get(i))
+                    smallestSelected = Math.min(smallestSelected, values[i]);
+                else
+                    largestOther = Math.max(largestOther, values[i]);
+            }
+            assertEquals(true, largestOther <= smallestSelected);
+        }
+        final EWAHCompressedBitmap foundSet = EWAHCompressedBitmap.bitmapOf(1, 2, 3, 4);
+        assertEquals(2, bsi.topK(2, foundSet).cardinality());
+        assertEquals(0, bsi.topK(0, foundSet).cardinality());
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        final BitSliceIndex bsi = BitSliceIndex.of(randomValues(new Random(8)));
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bsi.serialize(new DataOutputStream(bos));
+        final BitSliceIndex copy = BitSliceIndex.deserialize(
+                new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(bsi.getBitDepth(), copy.getBitDepth());
+        assertEquals(bsi.getExistenceBitmap(), copy.getExistenceBitmap());
+        for (int j = 0; j < bsi.getBitDepth(); ++j)
+            assertEquals(bsi.getSlice(j), copy.getSlice(j));
+        assertEquals(bsi.sum(null), copy.sum(null));
+    }
+}
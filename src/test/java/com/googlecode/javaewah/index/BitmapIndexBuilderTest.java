@@ -0,0 +1,85 @@
+package com.googlecode.javaewah.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the streaming bitmap index builder.
+ */
+public class BitmapIndexBuilderTest {
+
+    @Test
+    public void testAgainstSet() {
+        final Random r = new Random(31);
+        final BitmapIndexBuilder<String> builder = new BitmapIndexBuilder<String>();
+        final EWAHCompressedBitmap[] expected = new EWAHCompressedBitmap[50];
+        for (int v = 0; v < expected.length; ++v)
+            expected[v] = new EWAHCompressedBitmap();
+        int row = 0;
+        for (int i = 0; i < 20000; ++i) {
+            // skewed values, long gaps and runs
+            row += r.nextInt(20) == 0 ? r.nextInt(1000) : r.nextInt(2);
+            final int v = r.nextInt(5) == 0 ? r.nextInt(expected.length) : r.nextInt(3);
+            builder.add(row, "v" + v);
+            expected[v].set(row);
+        }
+        final int rows = row + 130;
+        final BitmapIndex<String> index = builder.freeze(rows);
+        assertEquals(rows, index.getNumberOfRows());
+        int total = 0;
+        for (int v = 0; v < expected.length; ++v) {
+            final EWAHCompressedBitmap b = index.getBitmap("v" + v);
+            if (expected[v].isEmpty()) {
+                assertNull(b);
+                continue;
+            }
+            expected[v].setSizeInBits(rows, false);
+            assertEquals(expected[v], b);
+            assertEquals(rows, b.sizeInBits());
+            assertEquals("v" + v, index.getDictionary().get(index.getCode("v" + v)));
+            ++total;
+        }
+        assertEquals(total, index.getCardinality());
+        assertEquals(-1, index.getCode("missing"));
+    }
+
+    @Test
+    public void testRunsOfOnes() {
+        final BitmapIndexBuilder<Integer> builder = new BitmapIndexBuilder<Integer>();
+        for (int row = 0; row < 1000; ++row)
+            builder.add(row, row < 640 ? 0 : 1);
+        final BitmapIndex<Integer> index = builder.freeze();
+        final EWAHCompressedBitmap zero = new EWAHCompressedBitmap();
+        zero.setSizeInBits(640, true);
+        zero.setSizeInBits(1000, false);
+        assertEquals(zero, index.getBitmap(Integer.valueOf(0)));
+        assertEquals(index.getBitmap(0).sizeInBytes(), zero.sizeInBytes());
+        assertEquals(360, index.getBitmap(1).cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowOrder() {
+        final BitmapIndexBuilder<String> builder = new BitmapIndexBuilder<String>();
+        builder.add(10, "a");
+        builder.add(9, "b");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozen() {
+        final BitmapIndexBuilder<String> builder = new BitmapIndexBuilder<String>();
+        builder.add(10, "a");
+        builder.freeze();
+        builder.add(11, "a");
+    }
+}
@@ -0,0 +1,148 @@
+package com.googlecode.javaewah.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.index.BitSliceIndex.Operation;
+import com.googlecode.javaewah.index.EncodedBitmapIndex.Encoding;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the range-encoded and interval-encoded bitmap indexes.
+ */
+public class EncodedBitmapIndexTest {
+
+    private static int[] randomValues(final Random r, final int rows, final int cardinality) {
+        final int[] values = new int[rows];
+        for (int i = 0; i < rows; ++i)
+            values[i] = r.nextInt(10) == 0 ? -1 : r.nextInt(cardinality);
+        return values;
+    }
+
+    @Test
+    public void testBetween() {
+        final Random r = new Random(11);
+        for (Encoding encoding : Encoding.values()) {
+            for (int c : new int[]{1, 2, 3, 4, 7, 10, 33}) {
+                final int[] values = randomValues(r, 3000, c);
+                final EncodedBitmapIndex index = EncodedBitmapIndex.of(encoding, c, values);
+                for (int lo = -1; lo <= c; ++lo) {
+                    for (int hi = lo - 1; hi <= c; ++hi) {
+                        final EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+                        for (int i = 0; i < values.length; ++i)
+                            if (values[i] >= 0 && values[i] >= lo && values[i] <= hi)
+                                expected.set(i);
+                        assertEquals(encoding + " " + c + " [" + lo + "," + hi + "]",
+                                expected, index.between(lo, hi, null));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompare() {
+        final Random r = new Random(12);
+        final int c = 20;
+        final int[] values = randomValues(r, 2000, c);
+        final EWAHCompressedBitmap foundSet = new EWAHCompressedBitmap();
+        for (int i = 0; i < values.length; i += 1 + r.nextInt(3))
+            foundSet.set(i);
+        final long[] longValues = new long[values.length];
+        for (int i = 0; i < values.length; ++i)
+            longValues[i] = Math.max(values[i], 0);
+        for (Encoding encoding : Encoding.values()) {
+            final EncodedBitmapIndex index = EncodedBitmapIndex.of(encoding, c, values);
+            for (Operation op : Operation.values()) {
+                for (long v = -1; v <= c; ++v) {
+                    final EWAHCompressedBitmap expected = new EWAHCompressedBitmap();
+                    for (int i = 0; i < values.length; ++i) {
+                        if (values[i] < 0 || !foundSet.get(i))
+                            continue;
+                        final boolean match;
+                        switch (op) {
+                            case LT: match = values[i] < v; break;
+                            case LE: match = values[i] <= v; break;
+                            case EQ: match = values[i] == v; break;
+                            case NEQ: match = values[i] != v; break;
+                            case GT: match = values[i] > v; break;
+                            default: match = values[i] >= v;
+                        }
+                        if (match)
+                            expected.set(i);
+                    }
+                    assertEquals(encoding + " " + op + " " + v, expected,
+                            index.compare(op, v, foundSet));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompareBeyondIntRange() {
+        final int c = 10;
+        final int[] values = randomValues(new Random(15), 1000, c);
+        final EWAHCompressedBitmap none = new EWAHCompressedBitmap();
+        for (Encoding encoding : Encoding.values()) {
+            final EncodedBitmapIndex index = EncodedBitmapIndex.of(encoding, c, values);
+            final EWAHCompressedBitmap all = index.getExistenceBitmap();
+            for (long v : new long[]{1L << 32, (1L << 32) + 3, Long.MAX_VALUE}) {
+                assertEquals(encoding + " " + v, none, index.compare(Operation.EQ, v, null));
+                assertEquals(encoding + " " + v, none, index.compare(Operation.GE, v, null));
+                assertEquals(encoding + " " + v, none, index.compare(Operation.GT, v, null));
+                assertEquals(encoding + " " + v, all, index.compare(Operation.LT, v, null));
+                assertEquals(encoding + " " + v, all, index.compare(Operation.LE, v, null));
+                assertEquals(encoding + " " + v, all, index.compare(Operation.NEQ, v, null));
+                assertEquals(encoding + " " + v, none, index.between(v, v, null));
+                assertEquals(encoding + " " + v, all, index.between(0, v, null));
+                assertEquals(encoding + " " + v, none, index.between(-v, -1, null));
+            }
+            for (long v : new long[]{-(1L << 32), -(1L << 32) + 3, Long.MIN_VALUE}) {
+                assertEquals(encoding + " " + v, none, index.compare(Operation.EQ, v, null));
+                assertEquals(encoding + " " + v, none, index.compare(Operation.LE, v, null));
+                assertEquals(encoding + " " + v, none, index.compare(Operation.LT, v, null));
+                assertEquals(encoding + " " + v, all, index.compare(Operation.GE, v, null));
+                assertEquals(encoding + " " + v, all, index.compare(Operation.GT, v, null));
+                assertEquals(encoding + " " + v, all, index.between(v, Long.MAX_VALUE, null));
+            }
+        }
+    }
+
+    @Test
+    public void testNumberOfBitmaps() {
+        final int[] values = randomValues(new Random(13), 100, 10);
+        assertEquals(9, EncodedBitmapIndex.of(Encoding.RANGE, 10, values).getNumberOfBitmaps());
+        assertEquals(6, EncodedBitmapIndex.of(Encoding.INTERVAL, 10, values).getNumberOfBitmaps());
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        final int[] values = randomValues(new Random(14), 1000, 17);
+        for (Encoding encoding : Encoding.values()) {
+            final EncodedBitmapIndex index = EncodedBitmapIndex.of(encoding, 17, values);
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            index.serialize(new DataOutputStream(bos));
+            final EncodedBitmapIndex copy = EncodedBitmapIndex.deserialize(
+                    new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+            assertEquals(encoding, copy.getEncoding());
+            assertEquals(17, copy.getCardinality());
+            assertEquals(index.getExistenceBitmap(), copy.getExistenceBitmap());
+            for (int i = 0; i < index.getNumberOfBitmaps(); ++i)
+                assertEquals(index.getBitmap(i), copy.getBitmap(i));
+            assertEquals(index.between(3, 9, null), copy.between(3, 9, null));
+        }
+    }
+}
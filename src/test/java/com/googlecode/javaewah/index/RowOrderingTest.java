@@ -0,0 +1,104 @@
+package com.googlecode.javaewah.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.index.RowOrdering.Order;
+
+/*
+ * Copyright 2009-2016, Daniel Lemire, Cliff Moon, David McIntosh, Robert Becho, Google Inc., Veronika Zenz, Owen Kaser, Gregory Ssi-Yan-Kai, Rory Graves
+ * Licensed under the Apache License, Version 2.0.
+ */
+
+/**
+ * Tests for the row-reordering utility.
+ */
+public class RowOrderingTest {
+
+    private static int[][] randomTable(final Random r, final int rows, final int... cardinalities) {
+        final int[][] columns = new int[cardinalities.length][rows];
+        for (int c = 0; c < cardinalities.length; ++c)
+            for (int i = 0; i < rows; ++i)
+                columns[c][i] = r.nextInt(cardinalities[c]);
+        return columns;
+    }
+
+    // rank of a tuple in reflected mixed-radix Gray-code order
+    private static long grayRank(final int[] tuple, final int[] radices) {
+        long rank = 0;
+        boolean reversed = false;
+        for (int d = 0; d < tuple.length; ++d) {
+            final int position = reversed ? radices[d] - 1 - tuple[d] : tuple[d];
+            rank = rank * radices[d] + position;
+            reversed = (rank & 1) != 0;
+        }
+        return rank;
+    }
+
+    private static void check(final Order order, final int[][] columns, final RowOrdering o) {
+        final int rows = columns[0].length;
+        final int[] perm = o.getPermutation();
+        final int[] columnOrder = o.getColumnOrder();
+        final boolean[] seen = new boolean[rows];
+        for (int p : perm) {
+            assertTrue(!seen[p]);
+            seen[p] = true;
+        }
+        final int[] radices = new int[columnOrder.length];
+        for (int d = 0; d < columnOrder.length; ++d)
+            radices[d] = o.getBitmaps(columnOrder[d]).length;
+        long previous = -1;
+        for (int i = 0; i < rows; ++i) {
+            final int[] tuple = new int[columnOrder.length];
+            for (int d = 0; d < columnOrder.length; ++d)
+                tuple[d] = columns[columnOrder[d]][perm[i]];
+            long rank = 0;
+            if (order == Order.GRAY_CODE) {
+                rank = grayRank(tuple, radices);
+            } else {
+                for (int d = 0; d < tuple.length; ++d)
+                    rank = rank * radices[d] + tuple[d];
+            }
+            assertTrue(previous <= rank);
+            previous = rank;
+        }
+        for (int c = 0; c < columns.length; ++c) {
+            final EWAHCompressedBitmap[] bitmaps = o.getBitmaps(c);
+            for (int i = 0; i < rows; ++i)
+                for (int v = 0; v < bitmaps.length; ++v)
+                    assertEquals(columns[c][perm[i]] == v, bitmaps[v].get(i));
+        }
+    }
+
+    @Test
+    public void testOrders() {
+        final Random r = new Random(21);
+        for (Order order : Order.values()) {
+            final int[][] columns = randomTable(r, 3000, 7, 2, 50, 3);
+            final RowOrdering o = RowOrdering.sort(order, columns);
+            assertArrayEquals(new int[]{1, 3, 0, 2}, o.getColumnOrder());
+            check(order, columns, o);
+            // many values and few rows
+            final int[][] sparse = randomTable(r, 200, 1000, 5000);
+            check(order, sparse, RowOrdering.sort(order, new int[]{1, 0}, sparse));
+        }
+    }
+
+    @Test
+    public void testCompression() {
+        final Random r = new Random(22);
+        final int[][] columns = randomTable(r, 20000, 4, 10, 100);
+        long unsorted = 0;
+        for (int[] column : columns)
+            for (EWAHCompressedBitmap b : RowOrdering.sort(Order.LEXICOGRAPHIC, new int[0], new int[][]{column}).getBitmaps(0))
+                unsorted += b.sizeInBytes();
+        for (Order order : Order.values())
+            assertTrue(RowOrdering.sort(order, columns).sizeInBytes() < unsorted);
+    }
+}
@@ -0,0 +1,86 @@
+package com.googlecode.javaewah32;
+
+import static com.googlecode.javaewah32.EWAHCompressedBitmap32.maxSizeInBits;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.googlecode.javaewah32.symmetric.IntervalFuncBitmap32;
+import com.googlecode.javaewah32.symmetric.RunningBitmapMerge32;
+import com.googlecode.javaewah32.symmetric.UpdateableBitmapFunction32;
+
+@SuppressWarnings("javadoc")
+public class IntervalFuncBitmap32Test {
+
+    private static EWAHCompressedBitmap32[] randomBitmaps(Random r, int n) {
+        EWAHCompressedBitmap32[] bitmaps = new EWAHCompressedBitmap32[n];
+        for (int k = 0; k < n; ++k) {
+            bitmaps[k] = new EWAHCompressedBitmap32();
+            int universe = 1 + r.nextInt(20000);
+            for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 1000) % 5 * 30))
+                bitmaps[k].set(pos);
+            if (r.nextBoolean())
+                bitmaps[k].setSizeInBits(universe + 32 * r.nextInt(100), r.nextBoolean());
+        }
+        return bitmaps;
+    }
+
+    private static EWAHCompressedBitmap32 bruteForce(int min, int max, EWAHCompressedBitmap32[] bitmaps) {
+        EWAHCompressedBitmap32 answer = new EWAHCompressedBitmap32();
+        int size = maxSizeInBits(bitmaps);
+        for (int pos = 0; pos < size; ++pos) {
+            int count = 0;
+            for (EWAHCompressedBitmap32 b : bitmaps)
+                if (b.get(pos))
+                    ++count;
+            if (count >= min && count <= max)
+                answer.set(pos);
+        }
+        return answer;
+    }
+
+    private static EWAHCompressedBitmap32 compute(UpdateableBitmapFunction32 f, EWAHCompressedBitmap32[] bitmaps) {
+        EWAHCompressedBitmap32 answer = new EWAHCompressedBitmap32();
+        new RunningBitmapMerge32().symmetric(f, answer, bitmaps);
+        int size = maxSizeInBits(bitmaps);
+        if (answer.sizeInBits() > size)
+            answer.setSizeInBitsWithinLastWord(size);
+        return answer;
+    }
+
+    @Test
+    public void randomtest() {
+        Random r = new Random(1);
+        for (int n = 1; n <= 9; n += 2) {
+            EWAHCompressedBitmap32[] bitmaps = randomBitmaps(r, n);
+            for (int min = 0; min <= n; ++min) {
+                for (int max = min; max <= n + 1; ++max) {
+                    Assert.assertEquals(bruteForce(min, max, bitmaps),
+                            compute(IntervalFuncBitmap32.between(min, max), bitmaps));
+                }
+                Assert.assertEquals(bruteForce(min, min, bitmaps),
+                        compute(IntervalFuncBitmap32.exactly(min), bitmaps));
+                Assert.assertEquals(bruteForce(0, min, bitmaps),
+                        compute(IntervalFuncBitmap32.atMost(min), bitmaps));
+            }
+            Assert.assertEquals(bruteForce(n / 2 + 1, n, bitmaps),
+                    compute(IntervalFuncBitmap32.majority(), bitmaps));
+        }
+    }
+
+    @Test
+    public void thresholdtest() {
+        Random r = new Random(2);
+        EWAHCompressedBitmap32[] bitmaps = randomBitmaps(r, 40);
+        for (int t = 1; t <= 41; t += 5)
+            Assert.assertEquals(compute(new com.googlecode.javaewah32.symmetric.ThresholdFuncBitmap32(t), bitmaps),
+                    compute(new IntervalFuncBitmap32(t, Integer.MAX_VALUE), bitmaps));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badinterval() {
+        IntervalFuncBitmap32.between(3, 2);
+    }
+}
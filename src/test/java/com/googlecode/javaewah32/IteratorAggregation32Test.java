@@ -145,6 +145,124 @@ public class IteratorAggregation32Test {
         }
     }
 
+    /**
+     *
+     */
+    @Test
+    public void testAdaptive() {
+        System.out.println("testAdaptive");
+        for (int N = 2; N < 200; N *= 3) {
+            Iterator<EWAHCompressedBitmap32[]> i = getCollections(N, 6);
+            while (i.hasNext()) {
+                EWAHCompressedBitmap32[] x = i.next();
+                assertTrue(FastAggregation32.adaptiveor(x).equals(FastAggregation32.or(x)));
+                assertTrue(FastAggregation32.adaptivexor(x).equals(FastAggregation32.xor(x)));
+            }
+        }
+        EWAHCompressedBitmap32[] dense = new EWAHCompressedBitmap32[100];
+        EWAHCompressedBitmap32[] sparse = new EWAHCompressedBitmap32[100];
+        for (int k = 0; k < dense.length; ++k) {
+            dense[k] = new EWAHCompressedBitmap32();
+            for (int j = k % 3; j < 1 << 16; j += 3)
+                dense[k].set(j);
+            sparse[k] = EWAHCompressedBitmap32.bitmapOf(k * 160000);
+        }
+        assertTrue(FastAggregation32.adaptiveBufferSize(dense) > 0);
+        assertTrue(FastAggregation32.adaptiveBufferSize(sparse) == 0);
+        assertTrue(FastAggregation32.adaptiveor(dense).equals(FastAggregation32.or(dense)));
+        assertTrue(FastAggregation32.adaptivexor(dense).equals(FastAggregation32.xor(dense)));
+        assertTrue(FastAggregation32.adaptiveor(sparse).equals(FastAggregation32.or(sparse)));
+        EWAHCompressedBitmap32 container = EWAHCompressedBitmap32.bitmapOf(1, 2, 3);
+        FastAggregation32.adaptiveorWithContainer(container, dense);
+        assertTrue(container.equals(FastAggregation32.or(dense)));
+        assertTrue(container.sizeInBits() == FastAggregation32.or(dense).sizeInBits());
+    }
+
+    /**
+     * Compare topK against the intersection counts.
+     */
+    @Test
+    public void testTopK() {
+        System.out.println("testTopK");
+        final java.util.Random r = new java.util.Random(41);
+        for (int trial = 0; trial < 20; ++trial) {
+            final EWAHCompressedBitmap32[] values = new EWAHCompressedBitmap32[1 + r.nextInt(60)];
+            for (int v = 0; v < values.length; ++v) {
+                values[v] = new EWAHCompressedBitmap32();
+                final int density = 1 + r.nextInt(200);
+                for (int j = r.nextInt(density); j < 20000; j += 1 + r.nextInt(density))
+                    values[v].set(j);
+            }
+            final EWAHCompressedBitmap32 filter = new EWAHCompressedBitmap32();
+            for (int j = r.nextInt(10); j < 20000; j += 1 + r.nextInt(10))
+                filter.set(j);
+            for (int k : new int[]{0, 1, 3, 10, 100}) {
+                final int[] top = FastAggregation32.topK(k, filter, values);
+                // brute force: sort by decreasing count, then increasing index
+                final Integer[] order = new Integer[values.length];
+                for (int v = 0; v < order.length; ++v)
+                    order[v] = v;
+                final int[] counts = new int[values.length];
+                for (int v = 0; v < order.length; ++v)
+                    counts[v] = values[v].andCardinality(filter);
+                java.util.Arrays.sort(order, new java.util.Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return counts[a] != counts[b] ? counts[b] - counts[a] : a - b;
+                    }
+                });
+                int expected = 0;
+                while (expected < Math.min(k, order.length) && counts[order[expected]] > 0)
+                    ++expected;
+                assertTrue(top.length == expected);
+                for (int j = 0; j < top.length; ++j)
+                    assertTrue(top[j] == order[j]);
+            }
+        }
+    }
+
+    /**
+     * Compare andCardinalities against andCardinality.
+     */
+    @Test
+    public void testAndCardinalities() {
+        System.out.println("testAndCardinalities");
+        final java.util.Random r = new java.util.Random(42);
+        for (int trial = 0; trial < 30; ++trial) {
+            final EWAHCompressedBitmap32[] groups = new EWAHCompressedBitmap32[r.nextInt(40)];
+            for (int g = 0; g < groups.length; ++g) {
+                groups[g] = new EWAHCompressedBitmap32();
+                final int density = 1 + r.nextInt(300);
+                for (int j = r.nextInt(density); j < 30000; j += 1 + r.nextInt(density)) {
+                    if (r.nextInt(50) == 0) {
+                        // a run of ones
+                        final int end = j + r.nextInt(2000);
+                        for (; j < end; ++j)
+                            groups[g].set(j);
+                    } else {
+                        groups[g].set(j);
+                    }
+                }
+            }
+            final EWAHCompressedBitmap32 filter = new EWAHCompressedBitmap32();
+            final int density = 1 + r.nextInt(100);
+            for (int j = r.nextInt(density); j < 30000; j += 1 + r.nextInt(density)) {
+                if (r.nextInt(20) == 0)
+                    j += r.nextInt(3000);
+                filter.set(j);
+                if (r.nextInt(30) == 0)
+                    for (final int end = j + r.nextInt(1000); j < end; ++j)
+                        filter.set(j);
+            }
+            final int[] counts = FastAggregation32.andCardinalities(filter, groups);
+            assertTrue(counts.length == groups.length);
+            for (int g = 0; g < groups.length; ++g)
+                assertTrue(counts[g] == groups[g].andCardinality(filter));
+        }
+        assertTrue(FastAggregation32.andCardinalities(new EWAHCompressedBitmap32(),
+                EWAHCompressedBitmap32.bitmapOf(1, 2)).length == 1);
+    }
+
     /**
      *
      */
@@ -0,0 +1,91 @@
+package com.googlecode.javaewah32;
+
+import static com.googlecode.javaewah32.EWAHCompressedBitmap32.maxSizeInBits;
+
+import com.googlecode.javaewah32.symmetric.ParallelRunningBitmapMerge32;
+import com.googlecode.javaewah32.symmetric.SumFuncBitmap32;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class SumFuncBitmap32Test {
+
+    @Test
+    public void randomtest() {
+        Random r = new Random(3);
+        for (int n = 1; n <= 40; n = 2 * n + 1) {
+            EWAHCompressedBitmap32[] bitmaps = new EWAHCompressedBitmap32[n];
+            for (int k = 0; k < n; ++k) {
+                bitmaps[k] = new EWAHCompressedBitmap32();
+                int universe = 1 + r.nextInt(50000);
+                for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 2000) % 4 * 40))
+                    bitmaps[k].set(pos);
+                if (k % 3 == 0)
+                    bitmaps[k].setSizeInBits(universe + 32 * 50, true);
+            }
+            EWAHCompressedBitmap32[] slices = EWAHCompressedBitmap32.sum(bitmaps);
+            Assert.assertEquals(32 - Integer.numberOfLeadingZeros(n), slices.length);
+            int size = maxSizeInBits(bitmaps);
+            for (EWAHCompressedBitmap32 slice : slices)
+                Assert.assertEquals(size, slice.sizeInBits());
+            for (int pos = 0; pos < size; ++pos) {
+                int count = 0;
+                for (EWAHCompressedBitmap32 b : bitmaps)
+                    if (b.get(pos))
+                        ++count;
+                int value = 0;
+                for (int j = 0; j < slices.length; ++j)
+                    if (slices[j].get(pos))
+                        value |= 1 << j;
+                Assert.assertEquals(count, value);
+            }
+        }
+    }
+
+    @Test
+    public void paralleltest() {
+        Random r = new Random(33);
+        EWAHCompressedBitmap32[] bitmaps = new EWAHCompressedBitmap32[5];
+        for (int k = 0; k < bitmaps.length; ++k) {
+            bitmaps[k] = new EWAHCompressedBitmap32();
+            int universe = 2000000 + r.nextInt(2000000);
+            for (int pos = r.nextInt(100); pos < universe; pos += 1 + r.nextInt(1 + (pos / 20000) % 4 * 500))
+                bitmaps[k].set(pos);
+            if (k % 2 == 0)
+                bitmaps[k].setSizeInBits(universe + 64 * 5000, true);
+        }
+        EWAHCompressedBitmap32[] expected = EWAHCompressedBitmap32.sum(bitmaps);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            SumFuncBitmap32 f = new SumFuncBitmap32();
+            EWAHCompressedBitmap32 out = new EWAHCompressedBitmap32();
+            new ParallelRunningBitmapMerge32(pool).symmetric(f, out, bitmaps);
+            Assert.assertTrue(out.isEmpty());
+            EWAHCompressedBitmap32[] slices = f.getSlices();
+            Assert.assertEquals(expected.length, slices.length);
+            for (int j = 0; j < slices.length; ++j) {
+                slices[j].setSizeInBitsWithinLastWord(maxSizeInBits(bitmaps));
+                Assert.assertEquals(expected[j], slices[j]);
+                Assert.assertEquals(expected[j].cardinality(), slices[j].cardinality());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void filltest() {
+        EWAHCompressedBitmap32 ones = new EWAHCompressedBitmap32();
+        ones.setSizeInBits(32 * 1000, true);
+        EWAHCompressedBitmap32[] slices = EWAHCompressedBitmap32.sum(ones, ones, ones);
+        Assert.assertEquals(2, slices.length);
+        Assert.assertEquals(32 * 1000, slices[0].cardinality());
+        Assert.assertEquals(32 * 1000, slices[1].cardinality());
+        // fills stay compressed
+        Assert.assertTrue(slices[0].sizeInBytes() < 32);
+        Assert.assertEquals(0, EWAHCompressedBitmap32.sum().length);
+    }
+}
@@ -65,4 +65,37 @@ public class ThresholdFuncBitmap32Test {
         Assert.assertTrue(ewahmajth.equals(ewahtruemaj));
     }
 
+    @Test
+    public void paralleltest() {
+        java.util.Random r = new java.util.Random(42);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            EWAHCompressedBitmap32[] bitmaps = new EWAHCompressedBitmap32[50];
+            for (int k = 0; k < bitmaps.length; ++k) {
+                bitmaps[k] = new EWAHCompressedBitmap32();
+                int universe = 1 + r.nextInt(3000000);
+                int pos = r.nextInt(1000);
+                while (pos < universe) {
+                    // alternate dense and sparse regions
+                    if ((pos / 100000) % 2 == 0)
+                        pos += 1 + r.nextInt(3);
+                    else
+                        pos += 1 + r.nextInt(5000);
+                    bitmaps[k].set(pos);
+                }
+            }
+            for (int t = 1; t <= bitmaps.length + 1; t += 7) {
+                EWAHCompressedBitmap32 expected = EWAHCompressedBitmap32.threshold(t, bitmaps);
+                EWAHCompressedBitmap32 result = EWAHCompressedBitmap32.threshold(pool, t, bitmaps);
+                Assert.assertEquals(expected, result);
+                Assert.assertEquals(expected.sizeInBits(), result.sizeInBits());
+                Assert.assertEquals(expected.sizeInBytes(), result.sizeInBytes());
+            }
+            // small inputs fall back to the sequential algorithm
+            EWAHCompressedBitmap32 small = EWAHCompressedBitmap32.bitmapOf(1, 2, 3);
+            Assert.assertEquals(small, EWAHCompressedBitmap32.threshold(pool, 1, small, small));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }